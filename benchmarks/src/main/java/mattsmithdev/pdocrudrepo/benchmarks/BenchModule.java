@@ -0,0 +1,105 @@
+package mattsmithdev.pdocrudrepo.benchmarks;
+
+/**
+ * entity used by the benchmarks - one property of each mapped type
+ */
+public class BenchModule
+{
+    private int id;
+    private String title;
+    private String description;
+    private double price;
+    private float rating;
+    private int credits;
+    private boolean core;
+
+    /**
+     * create count new (unsaved) modules with varied values
+     */
+    public static BenchModule[] generate(int count)
+    {
+        BenchModule[] modules = new BenchModule[count];
+        for(int i = 0; i < count; i++){
+            BenchModule module = new BenchModule();
+            module.setTitle("module " + i);
+            module.setDescription("description of module " + i + " - with a 'quote' in it");
+            module.setPrice(i * 0.5);
+            module.setRating(i % 5);
+            module.setCredits(5 + (i % 3) * 5);
+            module.setCore(i % 2 == 0);
+            modules[i] = module;
+        }
+
+        return modules;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public void setId(int id)
+    {
+        this.id = id;
+    }
+
+    public String getTitle()
+    {
+        return title;
+    }
+
+    public void setTitle(String title)
+    {
+        this.title = title;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    public void setDescription(String description)
+    {
+        this.description = description;
+    }
+
+    public double getPrice()
+    {
+        return price;
+    }
+
+    public void setPrice(double price)
+    {
+        this.price = price;
+    }
+
+    public float getRating()
+    {
+        return rating;
+    }
+
+    public void setRating(float rating)
+    {
+        this.rating = rating;
+    }
+
+    public int getCredits()
+    {
+        return credits;
+    }
+
+    public void setCredits(int credits)
+    {
+        this.credits = credits;
+    }
+
+    public boolean getCore()
+    {
+        return core;
+    }
+
+    public void setCore(boolean core)
+    {
+        this.core = core;
+    }
+}
@@ -0,0 +1,10 @@
+package mattsmithdev.pdocrudrepo.benchmarks;
+
+import mattsmithdev.pdocrudrepo.DatabaseTableRepository;
+
+/**
+ * repository for table 'benchmodule'
+ */
+public class BenchModuleRepository extends DatabaseTableRepository
+{
+}
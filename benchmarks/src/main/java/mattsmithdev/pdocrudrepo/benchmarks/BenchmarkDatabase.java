@@ -0,0 +1,71 @@
+package mattsmithdev.pdocrudrepo.benchmarks;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import mattsmithdev.pdocrudrepo.DatabaseConfig;
+import mattsmithdev.pdocrudrepo.DatabaseManager;
+
+/**
+ * points DatabaseManager at the database used by the benchmarks
+ *
+ * by default an embedded MariaDB server is started (on a free port) - no network or local install needed;
+ * to use a running MySQL/MariaDB server instead, pass its host as a system property, e.g.
+ *
+ *      java -Dbenchmark.mysql.host=127.0.0.1 -Dbenchmark.mysql.port=3306 \
+ *           -Dbenchmark.mysql.user=root -Dbenchmark.mysql.password=passpass \
+ *           -jar benchmarks/target/benchmarks.jar
+ *
+ * (JMH passes system properties on to forked JVMs with -jvmArgsAppend)
+ */
+public class BenchmarkDatabase
+{
+    private static DB embeddedDb;
+    private static boolean started = false;
+
+    public static synchronized void start() throws Exception
+    {
+        if(started){
+            return;
+        }
+
+        DatabaseConfig config = new DatabaseConfig();
+        String host = System.getProperty("benchmark.mysql.host");
+
+        if(host == null){
+            DBConfigurationBuilder builder = DBConfigurationBuilder.newBuilder();
+            builder.setPort(0);
+            if("root".equals(System.getProperty("user.name"))){
+                // mysqld refuses to run as root unless told to
+                builder.addArg("--user=root");
+            }
+            embeddedDb = DB.newEmbeddedDB(builder.build());
+            embeddedDb.start();
+
+            config.setHost("127.0.0.1");
+            config.setPort(String.valueOf(builder.getPort()));
+            config.setUser("root");
+            config.setPass("");
+        } else {
+            config.setHost(host);
+            config.setPort(System.getProperty("benchmark.mysql.port", "3306"));
+            config.setUser(System.getProperty("benchmark.mysql.user", "root"));
+            config.setPass(System.getProperty("benchmark.mysql.password", ""));
+        }
+
+        config.setDbname(System.getProperty("benchmark.mysql.database", "crud_benchmarks"));
+        config.setRewriteBatchedStatements(Boolean.parseBoolean(System.getProperty("benchmark.rewriteBatchedStatements", "true")));
+
+        DatabaseManager.configure(config);
+        started = true;
+    }
+
+    public static synchronized void stop() throws Exception
+    {
+        DatabaseManager.shutdown();
+        if(embeddedDb != null){
+            embeddedDb.stop();
+            embeddedDb = null;
+        }
+        started = false;
+    }
+}
@@ -0,0 +1,101 @@
+package mattsmithdev.pdocrudrepo.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * single-row CRUD operations, and insertMany(), against a table of 10,000 rows
+ *
+ * e.g.
+ *      java -jar benchmarks/target/benchmarks.jar CrudBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrudBenchmark
+{
+    private static final int TABLE_ROWS = 10000;
+
+    @Param({"1000"})
+    public int insertManyRows;
+
+    private BenchModuleRepository repository;
+    private BenchModule[] manyModules;
+    private BenchModule moduleToUpdate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkDatabase.start();
+
+        this.repository = new BenchModuleRepository();
+        this.repository.resetTable();
+        this.repository.insertMany(BenchModule.generate(TABLE_ROWS));
+
+        this.manyModules = BenchModule.generate(this.insertManyRows);
+        this.moduleToUpdate = this.repository.find(BenchModule.class, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        this.repository.dropTable();
+        BenchmarkDatabase.stop();
+    }
+
+    @Benchmark
+    public BenchModule find()
+    {
+        int id = ThreadLocalRandom.current().nextInt(1, TABLE_ROWS + 1);
+        return this.repository.find(BenchModule.class, id);
+    }
+
+    @Benchmark
+    public boolean insert()
+    {
+        BenchModule module = BenchModule.generate(1)[0];
+        return this.repository.insert(module);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean[] insertMany()
+    {
+        return this.repository.insertMany(this.manyModules);
+    }
+
+    @Benchmark
+    public void update()
+    {
+        this.moduleToUpdate.setPrice(this.moduleToUpdate.getPrice() + 1);
+        this.repository.update(this.moduleToUpdate);
+    }
+
+    /**
+     * state for delete() - a fresh row to delete is inserted before each invocation
+     */
+    @State(Scope.Thread)
+    public static class RowToDelete
+    {
+        int id;
+
+        @Setup(Level.Invocation)
+        public void insertRow(CrudBenchmark benchmark)
+        {
+            BenchModule module = BenchModule.generate(1)[0];
+            benchmark.repository.insert(module);
+            this.id = module.getId();
+        }
+    }
+
+    @Benchmark
+    public void delete(RowToDelete row)
+    {
+        this.repository.delete(row.id);
+    }
+}
@@ -0,0 +1,49 @@
+package mattsmithdev.pdocrudrepo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * findAll() over tables of 1k / 100k / 1M rows
+ *
+ * e.g.
+ *      java -jar benchmarks/target/benchmarks.jar FindAllBenchmark -p rows=1000 -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindAllBenchmark
+{
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private BenchModuleRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkDatabase.start();
+
+        this.repository = new BenchModuleRepository();
+        this.repository.resetTable();
+        this.repository.setBatchSize(5000);
+        this.repository.insertMany(BenchModule.generate(this.rows));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        this.repository.dropTable();
+        BenchmarkDatabase.stop();
+    }
+
+    @Benchmark
+    public BenchModule[] findAll() throws Exception
+    {
+        return this.repository.findAll(BenchModule.class);
+    }
+}
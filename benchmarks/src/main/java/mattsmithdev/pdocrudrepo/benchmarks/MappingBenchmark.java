@@ -0,0 +1,157 @@
+package mattsmithdev.pdocrudrepo.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import mattsmithdev.pdocrudrepo.DatabaseUtility;
+import mattsmithdev.pdocrudrepo.RowMapper;
+import mattsmithdev.pdocrudrepo.RowMappers;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * micro-benchmarks of the object <-> row conversion code (no database needed)
+ *
+ * run with the GC profiler to see allocation per operation:
+ *      java -jar benchmarks/target/benchmarks.jar MappingBenchmark -prof gc
+ *
+ * the row benchmarks read from an in-memory (proxy) ResultSet, so their absolute times include
+ * the proxy overhead - compare them with each other rather than with real query times
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark
+{
+    private static final String[] LABELS = {"id", "title", "description", "price", "rating", "credits", "core"};
+    private static final Object[] VALUES = {42, "module 42", "description of module 42", 21.0, 2.0f, 10, 1};
+
+    private BenchModule module;
+    private DatabaseUtility dbUtility;
+    private ResultSet resultset;
+    private RowMapper<BenchModule> rowMapper;
+
+    @Setup
+    public void setUp() throws SQLException
+    {
+        this.module = BenchModule.generate(1)[0];
+        this.dbUtility = new DatabaseUtility();
+        this.resultset = fakeResultSet();
+        this.rowMapper = RowMappers.forResultSet(BenchModule.class, this.resultset);
+    }
+
+    @Benchmark
+    public LinkedHashMap<String, String> objectToMapLessId()
+    {
+        return DatabaseUtility.objectToMapLessId(this.module);
+    }
+
+    @Benchmark
+    public String setterMethodName()
+    {
+        return this.dbUtility.setterMethodName("description");
+    }
+
+    /**
+     * the original per-row mapping code: getDeclaredFields(), setter name building, getMethod() and invoke() for every field
+     */
+    @Benchmark
+    public BenchModule reflectiveSetterLoop() throws Exception
+    {
+        Class<BenchModule> clazz = BenchModule.class;
+        BenchModule object = clazz.getDeclaredConstructor().newInstance();
+        DatabaseUtility dbUtility = new DatabaseUtility();
+
+        for (Field field : clazz.getDeclaredFields()) {
+            String fieldName = field.getName();
+            Object fieldType = field.getType();
+            String setterMethodName = dbUtility.setterMethodName(fieldName);
+            Method setterMethod;
+
+            if(fieldType.equals(Double.TYPE)){
+                setterMethod = clazz.getMethod(setterMethodName, double.class);
+                setterMethod.invoke(object, this.resultset.getDouble(fieldName));
+            }
+            if(fieldType.equals(Float.TYPE)){
+                setterMethod = clazz.getMethod(setterMethodName, float.class);
+                setterMethod.invoke(object, this.resultset.getFloat(fieldName));
+            }
+            if(fieldType.equals(Boolean.TYPE)){
+                setterMethod = clazz.getMethod(setterMethodName, boolean.class);
+                setterMethod.invoke(object, this.resultset.getInt(fieldName) == 1);
+            }
+            if(fieldType.equals(Integer.TYPE)){
+                setterMethod = clazz.getMethod(setterMethodName, int.class);
+                setterMethod.invoke(object, this.resultset.getInt(fieldName));
+            }
+            if(fieldType.equals(String.class)){
+                setterMethod = clazz.getMethod(setterMethodName, String.class);
+                setterMethod.invoke(object, this.resultset.getString(fieldName));
+            }
+        }
+
+        return object;
+    }
+
+    /**
+     * the generated row mapper used by findAll() / find()
+     */
+    @Benchmark
+    public BenchModule generatedRowMapper() throws SQLException
+    {
+        return this.rowMapper.mapRow(this.resultset);
+    }
+
+    /**
+     * a one-row ResultSet answering by column index or label
+     */
+    private static ResultSet fakeResultSet()
+    {
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+                MappingBenchmark.class.getClassLoader(), new Class<?>[]{ ResultSetMetaData.class },
+                (proxy, method, args) -> {
+                    if(method.getName().equals("getColumnCount")){
+                        return LABELS.length;
+                    }
+                    return LABELS[(int) args[0] - 1];
+                });
+
+        return (ResultSet) Proxy.newProxyInstance(
+                MappingBenchmark.class.getClassLoader(), new Class<?>[]{ ResultSet.class },
+                (proxy, method, args) -> {
+                    if(method.getName().equals("getMetaData")){
+                        return metaData;
+                    }
+
+                    Object value = VALUES[columnIndex(args[0])];
+                    switch(method.getName()){
+                        case "getInt": return ((Number) value).intValue();
+                        case "getDouble": return ((Number) value).doubleValue();
+                        case "getFloat": return ((Number) value).floatValue();
+                        default: return value;
+                    }
+                });
+    }
+
+    private static int columnIndex(Object column)
+    {
+        if(column instanceof Integer){
+            return (Integer) column - 1;
+        }
+
+        for(int i = 0; i < LABELS.length; i++){
+            if(LABELS[i].equals(column)){
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("no column " + column);
+    }
+}
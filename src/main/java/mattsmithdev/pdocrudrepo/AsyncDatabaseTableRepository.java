@@ -0,0 +1,256 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * non-blocking front end to a DatabaseTableRepository - every method returns straight away with a CompletableFuture
+ *
+ * the queries run on an executor (virtual threads on JDK 21+, otherwise a bounded pool of platform threads)
+ * and at most maxConcurrency of them run at once (by default the connection pool's max size) -
+ * any others wait in a queue, without holding a thread, until a query finishes
+ *
+ * e.g.
+ *      AsyncDatabaseTableRepository async = new AsyncDatabaseTableRepository(moduleRepository);
+ *      async.findAsync(Module.class, 3)
+ *          .thenAccept(module -> System.out.println(module.getTitle()));
+ */
+public class AsyncDatabaseTableRepository
+{
+    /**
+     * how many waiting queries (per async repository) before new ones are rejected
+     */
+    public static final int DEFAULT_MAX_QUEUED = 10000;
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private final DatabaseTableRepository repository;
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final int maxQueued;
+
+    private final ConcurrentLinkedQueue<QueuedWork<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * default executor, with concurrency limited to the connection pool's max size
+     */
+    public AsyncDatabaseTableRepository(DatabaseTableRepository repository)
+    {
+        this(repository, AsyncDatabaseTableRepository.getDefaultExecutor(), DatabaseManager.getConfig().getPoolMaxSize());
+    }
+
+    public AsyncDatabaseTableRepository(DatabaseTableRepository repository, Executor executor, int maxConcurrency)
+    {
+        this(repository, executor, maxConcurrency, DEFAULT_MAX_QUEUED);
+    }
+
+    public AsyncDatabaseTableRepository(DatabaseTableRepository repository, Executor executor, int maxConcurrency, int maxQueued)
+    {
+        this.repository = repository;
+        this.executor = executor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxQueued = Math.max(0, maxQueued);
+    }
+
+    /**
+     * shared executor used when none is given:
+     * one virtual thread per task on JDK 21+, otherwise a fixed pool of daemon threads sized to the connection pool
+     */
+    public static ExecutorService getDefaultExecutor()
+    {
+        ExecutorService current = defaultExecutor;
+        if(current != null){
+            return current;
+        }
+
+        synchronized (AsyncDatabaseTableRepository.class) {
+            if(defaultExecutor == null){
+                defaultExecutor = AsyncDatabaseTableRepository.newVirtualThreadExecutor();
+                if(defaultExecutor == null){
+                    defaultExecutor = Executors.newFixedThreadPool(DatabaseManager.getConfig().getPoolMaxSize(), runnable -> {
+                        Thread thread = new Thread(runnable, "pdocrudrepo-async");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+
+            return defaultExecutor;
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() via reflection (this library is built for Java 8),
+     * or null if the JVM has no virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor()
+    {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public <T> CompletableFuture<T> findAsync(Class<T> clazz, int id)
+    {
+        return this.submit(() -> this.repository.find(clazz, id));
+    }
+
+    public <T> CompletableFuture<T[]> findAllAsync(Class<T> clazz)
+    {
+        return this.submit(() -> this.repository.findAll(clazz));
+    }
+
+    public <T> CompletableFuture<T[]> findByIdsAsync(Class<T> clazz, int[] ids)
+    {
+        return this.submit(() -> this.repository.findByIds(clazz, ids));
+    }
+
+    public <T> CompletableFuture<Page<T>> findPageAsync(Class<T> clazz, String cursor, int limit)
+    {
+        return this.submit(() -> this.repository.findPage(clazz, cursor, limit));
+    }
+
+    public <T> CompletableFuture<Boolean> insertAsync(T object)
+    {
+        return this.submit(() -> this.repository.insert(object));
+    }
+
+    public <T> CompletableFuture<boolean[]> insertManyAsync(T[] objects)
+    {
+        return this.submit(() -> this.repository.insertMany(objects));
+    }
+
+    public <T> CompletableFuture<Void> updateAsync(T object)
+    {
+        return this.submit(() -> {
+            this.repository.update(object);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteAsync(int id)
+    {
+        return this.submit(() -> {
+            this.repository.delete(id);
+            return null;
+        });
+    }
+
+    /**
+     * run any other repository work under the same concurrency limit
+     *
+     * e.g.
+     *      async.submit(() -> moduleRepository.findPage(Module.class, 0, 100));
+     */
+    public <R> CompletableFuture<R> submit(Callable<R> work)
+    {
+        CompletableFuture<R> future = new CompletableFuture<>();
+
+        if(this.queued.incrementAndGet() > this.maxQueued && this.running.get() >= this.maxConcurrency){
+            this.queued.decrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException("too many queued queries (max " + this.maxQueued + ")"));
+            return future;
+        }
+
+        this.queue.add(new QueuedWork<>(work, future));
+        this.dispatch();
+
+        return future;
+    }
+
+    /**
+     * start queued work while there is spare concurrency
+     */
+    private void dispatch()
+    {
+        while(true){
+            int current = this.running.get();
+            if(current >= this.maxConcurrency){
+                return;
+            }
+            if(!this.running.compareAndSet(current, current + 1)){
+                continue;
+            }
+
+            QueuedWork<?> task = this.queue.poll();
+            if(task == null){
+                this.running.decrementAndGet();
+                // work may have been queued after poll() but before the decrement
+                if(this.queue.isEmpty()){
+                    return;
+                }
+                continue;
+            }
+            this.queued.decrementAndGet();
+
+            try {
+                this.executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        this.running.decrementAndGet();
+                        this.dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // e.g. executor shut down
+                this.running.decrementAndGet();
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * queries running now
+     */
+    public int getRunningCount()
+    {
+        return running.get();
+    }
+
+    /**
+     * queries waiting for a free slot
+     */
+    public int getQueuedCount()
+    {
+        return queued.get();
+    }
+
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    public DatabaseTableRepository getRepository()
+    {
+        return repository;
+    }
+
+    private static class QueuedWork<R> implements Runnable
+    {
+        private final Callable<R> work;
+        private final CompletableFuture<R> future;
+
+        QueuedWork(Callable<R> work, CompletableFuture<R> future)
+        {
+            this.work = work;
+            this.future = future;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                this.future.complete(this.work.call());
+            } catch (Throwable e) {
+                this.future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package mattsmithdev.pdocrudrepo;
+
+import com.mysql.cj.conf.PropertySet;
+import com.mysql.cj.protocol.StandardSocketFactory;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Connector/J socket factory that counts the bytes each thread sends and receives,
+ * so OperationTimer can report the network bytes of each repository operation
+ *
+ * installed (via the driver's socketFactory property) when DatabaseConfig.isCountBytes() is on, e.g. in .env:
+ *      MYSQL_COUNT_BYTES=true
+ *
+ * JDBC calls do their network I/O on the calling thread, so a per-thread running total is enough:
+ *      long before = ByteCountingSocketFactory.threadBytes();
+ *      repo.findAll(Module.class);
+ *      long bytes = ByteCountingSocketFactory.threadBytes() - before;
+ */
+public class ByteCountingSocketFactory extends StandardSocketFactory
+{
+    /**
+     * bytes sent + received by each thread, over all connections
+     */
+    private static final ThreadLocal<long[]> THREAD_BYTES = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * bytes sent and received so far by the current thread (0 if the factory isn't installed)
+     */
+    public static long threadBytes()
+    {
+        return THREAD_BYTES.get()[0];
+    }
+
+    @Override
+    protected Socket createSocket(PropertySet props)
+    {
+        return new CountingSocket();
+    }
+
+    private static void count(int bytes)
+    {
+        if(bytes > 0){
+            THREAD_BYTES.get()[0] += bytes;
+        }
+    }
+
+    /**
+     * plain socket whose streams count bytes (TLS, if used, is layered on top of these streams)
+     */
+    private static class CountingSocket extends Socket
+    {
+        private InputStream input;
+        private OutputStream output;
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException
+        {
+            if(this.input == null){
+                this.input = new FilterInputStream(super.getInputStream())
+                {
+                    @Override
+                    public int read() throws IOException
+                    {
+                        int value = super.read();
+                        if(value >= 0){
+                            count(1);
+                        }
+                        return value;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException
+                    {
+                        int read = super.read(buffer, offset, length);
+                        count(read);
+                        return read;
+                    }
+                };
+            }
+
+            return this.input;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException
+        {
+            if(this.output == null){
+                this.output = new FilterOutputStream(super.getOutputStream())
+                {
+                    @Override
+                    public void write(int value) throws IOException
+                    {
+                        this.out.write(value);
+                        count(1);
+                    }
+
+                    @Override
+                    public void write(byte[] buffer, int offset, int length) throws IOException
+                    {
+                        // (FilterOutputStream would write one byte at a time)
+                        this.out.write(buffer, offset, length);
+                        count(length);
+                    }
+                };
+            }
+
+            return this.output;
+        }
+    }
+}
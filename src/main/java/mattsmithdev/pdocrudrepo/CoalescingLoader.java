@@ -0,0 +1,203 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * dataloader-style batching of find(id) calls
+ *
+ * the first load() starts a short window (windowMillis) - every load() made during that window,
+ * from any thread, is fetched together with one DatabaseTableRepository.findByIds() call
+ * (the window closes early if maxBatchSize ids are waiting)
+ *
+ * the future for a missing id completes with null - if the query fails, every future in the batch completes with its exception
+ *
+ * batches are fetched on the given executor - by default a shared pool with no more threads than the connection pool's
+ * max size (each fetch holds a pooled connection), so a burst of batches queues up rather than starting a thread each
+ *
+ * e.g.
+ *      CoalescingLoader<Module> loader = repo.coalescingLoader(Module.class, 2);
+ *      CompletableFuture<Module> a = loader.load(3);
+ *      CompletableFuture<Module> b = loader.load(7);   // same query as id 3
+ */
+public class CoalescingLoader<T>
+{
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pdocrudrepo-loader-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile ExecutorService defaultFetchers;
+
+    private final DatabaseTableRepository repository;
+    private final Class<T> clazz;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Executor fetchers;
+
+    /**
+     * ids waiting for the current window to close, with the futures of everyone who asked for them
+     */
+    private Map<Integer, List<CompletableFuture<T>>> pending = new LinkedHashMap<>();
+
+    public CoalescingLoader(DatabaseTableRepository repository, Class<T> clazz, long windowMillis, int maxBatchSize)
+    {
+        this(repository, clazz, windowMillis, maxBatchSize, CoalescingLoader.getDefaultFetchers());
+    }
+
+    public CoalescingLoader(DatabaseTableRepository repository, Class<T> clazz, long windowMillis, int maxBatchSize, Executor fetchers)
+    {
+        this.repository = repository;
+        this.clazz = clazz;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.fetchers = fetchers;
+    }
+
+    /**
+     * shared executor used when none is given: up to the connection pool's max size of daemon threads
+     * (which stop when idle for a minute)
+     */
+    public static ExecutorService getDefaultFetchers()
+    {
+        ExecutorService current = defaultFetchers;
+        if(current != null){
+            return current;
+        }
+
+        synchronized (CoalescingLoader.class) {
+            if(defaultFetchers == null){
+                int threads = Math.max(1, DatabaseManager.getConfig().getPoolMaxSize());
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), runnable -> {
+                            Thread thread = new Thread(runnable, "pdocrudrepo-loader-fetch");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                executor.allowCoreThreadTimeOut(true);
+                defaultFetchers = executor;
+            }
+
+            return defaultFetchers;
+        }
+    }
+
+    /**
+     * queue the id for the next batch
+     */
+    public CompletableFuture<T> load(int id)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Map<Integer, List<CompletableFuture<T>>> batchToFetch = null;
+
+        synchronized (this) {
+            boolean firstInWindow = this.pending.isEmpty();
+            this.pending.computeIfAbsent(id, key -> new ArrayList<>()).add(future);
+
+            if(this.pending.size() >= this.maxBatchSize){
+                batchToFetch = this.takePending();
+            } else if(firstInWindow){
+                Map<Integer, List<CompletableFuture<T>>> window = this.pending;
+                TIMER.schedule(() -> this.windowClosed(window), this.windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if(batchToFetch != null){
+            this.fetchAsync(batchToFetch);
+        }
+
+        return future;
+    }
+
+    /**
+     * fetch whatever is waiting now, without waiting for the window to close
+     */
+    public void flush()
+    {
+        Map<Integer, List<CompletableFuture<T>>> batchToFetch;
+        synchronized (this) {
+            batchToFetch = this.takePending();
+        }
+
+        if(!batchToFetch.isEmpty()){
+            this.fetchAsync(batchToFetch);
+        }
+    }
+
+    /**
+     * a window's timer - fetch it, unless it has been fetched already (it filled up, or flush() was called),
+     * so the timer doesn't cut short the window after it
+     */
+    private void windowClosed(Map<Integer, List<CompletableFuture<T>>> window)
+    {
+        Map<Integer, List<CompletableFuture<T>>> batchToFetch;
+        synchronized (this) {
+            if(this.pending != window){
+                return;
+            }
+            batchToFetch = this.takePending();
+        }
+
+        this.fetchAsync(batchToFetch);
+    }
+
+    private Map<Integer, List<CompletableFuture<T>>> takePending()
+    {
+        Map<Integer, List<CompletableFuture<T>>> batch = this.pending;
+        this.pending = new LinkedHashMap<>();
+        return batch;
+    }
+
+    private void fetchAsync(Map<Integer, List<CompletableFuture<T>>> batch)
+    {
+        try {
+            this.fetchers.execute(() -> this.fetch(batch));
+        } catch (RejectedExecutionException e) {
+            // e.g. executor shut down
+            CoalescingLoader.fail(batch, e);
+        }
+    }
+
+    private void fetch(Map<Integer, List<CompletableFuture<T>>> batch)
+    {
+        int[] ids = new int[batch.size()];
+        int i = 0;
+        for(Integer id : batch.keySet()){
+            ids[i++] = id;
+        }
+
+        try {
+            T[] results = this.repository.findByIds(this.clazz, ids);
+            EntityMetadata<T> metadata = EntityMetadata.of(this.clazz);
+
+            for(i = 0; i < ids.length; i++){
+                List<CompletableFuture<T>> futures = batch.get(ids[i]);
+                for(int f = 0; f < futures.size(); f++){
+                    // each caller gets its own object
+                    T result = (results[i] == null || f == 0) ? results[i] : metadata.copy(results[i]);
+                    futures.get(f).complete(result);
+                }
+            }
+        } catch (RuntimeException e) {
+            CoalescingLoader.fail(batch, e);
+        }
+    }
+
+    private static <T> void fail(Map<Integer, List<CompletableFuture<T>>> batch, Throwable e)
+    {
+        for(List<CompletableFuture<T>> futures : batch.values()){
+            for(CompletableFuture<T> future : futures){
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * optional schema settings for an entity property, used by createTable() and ensureIndexes()
+ *
+ * e.g.
+ *      @Column(length = 20, unique = true)
+ *      private String code;        // code varchar(20), UNIQUE KEY uq_code (code)
+ *
+ *      @Column(index = true)
+ *      private String title;       // title varchar(255), KEY idx_title (title)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Column
+{
+    /**
+     * for a String property, create a varchar(length) column instead of text (0 = default)
+     */
+    int length() default 0;
+
+    /**
+     * add a unique index on just this column
+     */
+    boolean unique() default false;
+
+    /**
+     * add a (non-unique) index on just this column
+     */
+    boolean index() default false;
+}
@@ -0,0 +1,140 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * one persisted property of an entity class - DB column name, Java type and its get/set methods
+ *
+ * e.g. for property 'price' of class Module:
+ *      name = "price"
+ *      type = double.class
+ *      getter = Module.getPrice()
+ *      setter = Module.setPrice(double)
+ */
+public class ColumnMetadata
+{
+    private final String name;
+    private final Class<?> type;
+    private final Method getter;
+    private final Method setter;
+    private final int index;
+    private final int length;
+
+    public ColumnMetadata(String name, Class<?> type, Method getter, Method setter, int index)
+    {
+        this(name, type, getter, setter, index, 0);
+    }
+
+    /**
+     * length - for a String property, the varchar length from @Column(length) (0 = text)
+     */
+    public ColumnMetadata(String name, Class<?> type, Method getter, Method setter, int index, int length)
+    {
+        this.name = name;
+        this.type = type;
+        this.getter = getter;
+        this.setter = setter;
+        this.index = index;
+        this.length = length;
+    }
+
+    /**
+     * invoke the getter on the given entity
+     */
+    public Object get(Object entity)
+    {
+        try {
+            return this.getter.invoke(entity);
+        } catch (Exception e) {
+            throw new MappingException("unable to invoke " + this.getter.getName() + "() on " + entity, e);
+        }
+    }
+
+    /**
+     * invoke the setter on the given entity
+     */
+    public void set(Object entity, Object value)
+    {
+        try {
+            this.setter.invoke(entity, value);
+        } catch (Exception e) {
+            throw new MappingException("unable to invoke " + this.setter.getName() + "() on " + entity, e);
+        }
+    }
+
+    /**
+     * read this property from the entity and bind it, by type, to the given '?' parameter of the statement
+     *
+     * (see TypeConverters - e.g. booleans are stored as tinyint 1/0)
+     */
+    public void bind(PreparedStatement statement, int parameterIndex, Object entity) throws SQLException
+    {
+        this.bindValue(statement, parameterIndex, this.get(entity));
+    }
+
+    /**
+     * bind an already-read value of this property to the given '?' parameter of the statement
+     */
+    @SuppressWarnings("unchecked")
+    public void bindValue(PreparedStatement statement, int parameterIndex, Object value) throws SQLException
+    {
+        TypeConverter<Object> converter = TypeConverters.forType((Class<Object>) this.type);
+        if(converter != null){
+            converter.bind(statement, parameterIndex, value);
+        } else if(value == null){
+            statement.setNull(parameterIndex, Types.VARCHAR);
+        } else {
+            // not a mapped type - store its text form (as the column is created as text)
+            statement.setString(parameterIndex, value.toString());
+        }
+    }
+
+    public boolean isId()
+    {
+        return "id".equals(this.name);
+    }
+
+    public boolean isWritable()
+    {
+        return this.setter != null;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Class<?> getType()
+    {
+        return type;
+    }
+
+    public Method getGetter()
+    {
+        return getter;
+    }
+
+    public Method getSetter()
+    {
+        return setter;
+    }
+
+    /**
+     * position of this column in EntityMetadata.getColumns() (0-based)
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * varchar length from @Column(length), or 0 if not set
+     */
+    public int getLength()
+    {
+        return length;
+    }
+}
@@ -0,0 +1,254 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * simple bounded JDBC connection pool
+ *
+ * - at most poolMaxSize physical connections are ever open (borrowers wait up to connectionTimeoutMillis)
+ * - idle connections beyond poolMinSize are closed after idleTimeoutMillis
+ * - connections idle for more than validationSkipMillis are validated (isValid()) when borrowed
+ * - if leakDetectionThresholdMillis > 0, connections held longer than that are reported,
+ *   along with the stack trace of where they were borrowed
+ *
+ * e.g.
+ *      try (Connection connection = pool.getConnection()) {
+ *          ...
+ *      } // close() returns the connection to the pool
+ */
+public class ConnectionPool
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * SQLSTATE of the pool's own "no connection to give you" errors (class 08 = connection exception)
+     */
+    static final String SQLSTATE_NO_CONNECTION = "08001";
+
+    /**
+     * no connection became free in time - the pool is busy, rather than its DB being unreachable
+     */
+    static class PoolExhaustedException extends SQLTimeoutException
+    {
+        private static final long serialVersionUID = 1L;
+
+        PoolExhaustedException(String reason)
+        {
+            super(reason, SQLSTATE_NO_CONNECTION);
+        }
+    }
+
+    private final String dsn;
+    private final Properties connectionProperties;
+    private final DatabaseConfig config;
+
+    /**
+     * idle connections - most recently used at the head (LIFO keeps a small set of connections warm)
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String dsn, Properties connectionProperties, DatabaseConfig config)
+    {
+        this.dsn = dsn;
+        this.connectionProperties = connectionProperties;
+        this.config = config;
+        this.permits = new Semaphore(Math.max(1, config.getPoolMaxSize()), true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pdocrudrepo-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = config.getHousekeepingIntervalMillis();
+        this.housekeeper.scheduleWithFixedDelay(this::housekeeping, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * borrow a connection - close() it to return it to the pool
+     */
+    public Connection getConnection() throws SQLException
+    {
+        return this.getConnection(this.config.getConnectionTimeoutMillis());
+    }
+
+    /**
+     * borrow a connection, waiting at most timeoutMillis for one to become free (0 = don't wait)
+     */
+    public Connection getConnection(long timeoutMillis) throws SQLException
+    {
+        if(this.closed){
+            throw new SQLException("connection pool has been shut down", SQLSTATE_NO_CONNECTION);
+        }
+
+        try {
+            if(!this.permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)){
+                throw new PoolExhaustedException("timed out after " + timeoutMillis
+                        + "ms waiting for a connection (pool max size = " + this.config.getPoolMaxSize() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a connection", SQLSTATE_NO_CONNECTION, e);
+        }
+
+        try {
+            PooledConnection pooledConnection = this.takeIdleConnection();
+            if(pooledConnection == null){
+                pooledConnection = this.createConnection();
+            }
+
+            this.borrowed.add(pooledConnection);
+            return pooledConnection.borrow(this.config.getLeakDetectionThresholdMillis() > 0);
+        } catch (SQLException | RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * called when a borrower closes its connection proxy
+     */
+    void release(PooledConnection pooledConnection)
+    {
+        this.borrowed.remove(pooledConnection);
+        pooledConnection.resetAfterBorrow();
+
+        if(this.closed || pooledConnection.isBroken()){
+            this.discard(pooledConnection);
+        } else {
+            this.idle.offerFirst(pooledConnection);
+        }
+
+        this.permits.release();
+    }
+
+    /**
+     * close all idle connections and stop housekeeping
+     * (borrowed connections are closed as they are returned)
+     */
+    public void close()
+    {
+        this.closed = true;
+        this.housekeeper.shutdownNow();
+
+        PooledConnection pooledConnection;
+        while((pooledConnection = this.idle.pollFirst()) != null){
+            this.discard(pooledConnection);
+        }
+    }
+
+    public int getTotalConnections()
+    {
+        return this.totalConnections.get();
+    }
+
+    public int getIdleConnections()
+    {
+        return this.idle.size();
+    }
+
+    public int getActiveConnections()
+    {
+        return this.borrowed.size();
+    }
+
+    public int getMaxSize()
+    {
+        return this.config.getPoolMaxSize();
+    }
+
+    /**
+     * pop idle connections until we find one that is still usable
+     */
+    private PooledConnection takeIdleConnection()
+    {
+        PooledConnection pooledConnection;
+        while((pooledConnection = this.idle.pollFirst()) != null){
+            long idleFor = System.currentTimeMillis() - pooledConnection.getLastUsedAt();
+            if(idleFor <= this.config.getValidationSkipMillis()
+                    || pooledConnection.isValid(this.config.getValidationTimeoutSeconds())){
+                return pooledConnection;
+            }
+
+            this.discard(pooledConnection);
+        }
+
+        return null;
+    }
+
+    private PooledConnection createConnection() throws SQLException
+    {
+        Connection physical = DriverManager.getConnection(this.dsn, this.connectionProperties);
+        this.totalConnections.incrementAndGet();
+
+        return new PooledConnection(this, physical);
+    }
+
+    private void discard(PooledConnection pooledConnection)
+    {
+        pooledConnection.closePhysical();
+        this.totalConnections.decrementAndGet();
+    }
+
+    /**
+     * periodic task - evict idle connections, top the pool back up to its minimum size, report leaks
+     */
+    private void housekeeping()
+    {
+        long now = System.currentTimeMillis();
+
+        // -- evict idle (oldest are at the tail) --
+        for(PooledConnection pooledConnection : this.idle){
+            boolean expired = (now - pooledConnection.getLastUsedAt()) > this.config.getIdleTimeoutMillis();
+            if(expired && this.totalConnections.get() > this.config.getPoolMinSize()
+                    && this.idle.removeLastOccurrence(pooledConnection)){
+                this.discard(pooledConnection);
+            }
+        }
+
+        // -- fill up to min size --
+        while(!this.closed && this.totalConnections.get() < this.config.getPoolMinSize()){
+            try {
+                this.idle.offerLast(this.createConnection());
+            } catch (SQLException e) {
+                LOG.warn("unable to open connection :: {}", e.getMessage());
+                break;
+            }
+        }
+
+        // -- leak detection --
+        long threshold = this.config.getLeakDetectionThresholdMillis();
+        if(threshold > 0){
+            for(PooledConnection pooledConnection : this.borrowed){
+                long heldFor = now - pooledConnection.getBorrowedAt();
+                if(heldFor > threshold && !pooledConnection.isLeakReported()){
+                    pooledConnection.setLeakReported(true);
+                    // (the stack trace of where it was borrowed, if recorded, is logged too)
+                    LOG.warn("possible connection leak - connection borrowed {}ms ago and not yet closed",
+                            heldFor, pooledConnection.getBorrowStack());
+                }
+            }
+        }
+    }
+}
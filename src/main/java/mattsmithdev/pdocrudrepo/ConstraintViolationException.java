@@ -0,0 +1,15 @@
+package mattsmithdev.pdocrudrepo;
+
+/**
+ * a write broke a constraint - e.g. a duplicate value in a UNIQUE column, or a foreign key with no matching row
+ * (see getErrorCode() for which, e.g. MySQL's 1062 = duplicate key)
+ */
+public class ConstraintViolationException extends DatabaseException
+{
+    private static final long serialVersionUID = 1L;
+
+    public ConstraintViolationException(String message, String sql, Throwable cause)
+    {
+        super(message, sql, cause);
+    }
+}
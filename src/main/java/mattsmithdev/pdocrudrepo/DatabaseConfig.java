@@ -0,0 +1,539 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import io.github.cdimascio.dotenv.Dotenv;
+
+/**
+ * connection settings (database, credentials + connection pool sizing) used by DatabaseManager
+ *
+ * by default these are read from the .env file (or environment variables), e.g.
+ *
+ *      MYSQL_USER=root
+ *      MYSQL_PASSWORD=passpass
+ *      MYSQL_HOST=127.0.0.1
+ *      MYSQL_PORT=3306
+ *      MYSQL_DATABASE=evote
+ *
+ * optional pool settings (times in milliseconds):
+ *
+ *      MYSQL_POOL_MIN_SIZE=2
+ *      MYSQL_POOL_MAX_SIZE=10
+ *      MYSQL_POOL_IDLE_TIMEOUT=600000
+ *      MYSQL_POOL_CONNECTION_TIMEOUT=30000
+ *      MYSQL_POOL_LEAK_DETECTION_THRESHOLD=0     (0 = leak detection off)
+ *
+ * optional prepared statement settings (Connector/J keeps an LRU cache of prepared statements per connection):
+ *
+ *      MYSQL_CACHE_PREPARED_STATEMENTS=true
+ *      MYSQL_PREPARED_STATEMENT_CACHE_SIZE=250
+ *      MYSQL_PREPARED_STATEMENT_CACHE_SQL_LIMIT=2048
+ *      MYSQL_USE_SERVER_PREPARED_STATEMENTS=false   (true = statements parsed/planned once by the server)
+ *
+ * optional batching setting (driver rewrites each JDBC batch of INSERTs into one multi-row INSERT ... VALUES (...),(...)):
+ *
+ *      MYSQL_REWRITE_BATCHED_STATEMENTS=false
+ *
+ * optional streaming settings for DatabaseTableRepository.stream() / forEach():
+ *
+ *      MYSQL_USE_CURSOR_FETCH=false     (false = row-by-row streaming, true = server-side cursor)
+ *      MYSQL_CURSOR_FETCH_SIZE=1000     (rows fetched per round trip when using a cursor)
+ *
+ * optional bulk load setting (DatabaseTableRepository.bulkLoad() sends rows with LOAD DATA LOCAL INFILE -
+ * the server needs local_infile=ON too; otherwise bulkLoad() uses batched INSERTs):
+ *
+ *      MYSQL_ALLOW_LOAD_LOCAL_INFILE=false
+ *
+ * optional instrumentation setting (count the network bytes of each operation - see ByteCountingSocketFactory):
+ *
+ *      MYSQL_COUNT_BYTES=false
+ *
+ * optional read replicas (repository reads go to a replica, writes and transactions to MYSQL_HOST - see ReplicaRouter):
+ *
+ *      MYSQL_REPLICAS=127.0.0.1:3307,127.0.0.1:3308     (host:port, comma separated - port defaults to 3306)
+ *      MYSQL_REPLICA_SELECTION=ROUND_ROBIN               (or LEAST_LATENCY)
+ *      MYSQL_REPLICA_HEALTH_CHECK_INTERVAL=5000
+ *      MYSQL_READ_YOUR_WRITES=0     (after a thread writes, its reads stay on the primary this long - 0 = off)
+ *
+ * or, for an embedded SQLite database instead of MySQL (see SqliteDialect - the MYSQL_ settings are then ignored):
+ *
+ *      SQLITE_FILE=data/evote.db
+ *      SQLITE_BUSY_TIMEOUT=5000     (how long a writer waits for another to finish)
+ */
+public class DatabaseConfig
+{
+    private Dialect dialect = Dialect.MYSQL;
+    private String sqliteFile;
+    private long sqliteBusyTimeoutMillis = 5000;
+
+    private String host;
+    private String port;
+    private String user;
+    private String pass;
+    private String dbname;
+
+    private int poolMinSize = 2;
+    private int poolMaxSize = 10;
+    private long idleTimeoutMillis = 600000;
+    private long connectionTimeoutMillis = 30000;
+    private long leakDetectionThresholdMillis = 0;
+    private long housekeepingIntervalMillis = 30000;
+    private int validationTimeoutSeconds = 5;
+
+    /**
+     * connections used more recently than this are not re-validated when borrowed
+     */
+    private long validationSkipMillis = 500;
+
+    private boolean cachePreparedStatements = true;
+    private int preparedStatementCacheSize = 250;
+    private int preparedStatementCacheSqlLimit = 2048;
+    private boolean useServerPreparedStatements = false;
+    private boolean rewriteBatchedStatements = false;
+    private boolean useCursorFetch = false;
+    private int cursorFetchSize = 1000;
+    private boolean countBytes = false;
+    private boolean allowLoadLocalInfile = false;
+
+    private List<String> replicas = Collections.emptyList();
+    private ReplicaRouter.Selection replicaSelection = ReplicaRouter.Selection.ROUND_ROBIN;
+    private long replicaHealthCheckIntervalMillis = 5000;
+    private long readYourWritesMillis = 0;
+
+    /**
+     * load settings from .env (falling back to real environment variables if there is no .env file)
+     */
+    public static DatabaseConfig fromDotEnv()
+    {
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+
+        DatabaseConfig config = new DatabaseConfig();
+        config.setUser(dotenv.get("MYSQL_USER"));
+        config.setPass(dotenv.get("MYSQL_PASSWORD"));
+        config.setHost(dotenv.get("MYSQL_HOST"));
+        config.setPort(dotenv.get("MYSQL_PORT"));
+        config.setDbname(dotenv.get("MYSQL_DATABASE"));
+
+        config.setPoolMinSize(intValue(dotenv.get("MYSQL_POOL_MIN_SIZE"), config.getPoolMinSize()));
+        config.setPoolMaxSize(intValue(dotenv.get("MYSQL_POOL_MAX_SIZE"), config.getPoolMaxSize()));
+        config.setIdleTimeoutMillis(longValue(dotenv.get("MYSQL_POOL_IDLE_TIMEOUT"), config.getIdleTimeoutMillis()));
+        config.setConnectionTimeoutMillis(longValue(dotenv.get("MYSQL_POOL_CONNECTION_TIMEOUT"), config.getConnectionTimeoutMillis()));
+        config.setLeakDetectionThresholdMillis(longValue(dotenv.get("MYSQL_POOL_LEAK_DETECTION_THRESHOLD"), config.getLeakDetectionThresholdMillis()));
+
+        config.setCachePreparedStatements(booleanValue(dotenv.get("MYSQL_CACHE_PREPARED_STATEMENTS"), config.isCachePreparedStatements()));
+        config.setPreparedStatementCacheSize(intValue(dotenv.get("MYSQL_PREPARED_STATEMENT_CACHE_SIZE"), config.getPreparedStatementCacheSize()));
+        config.setPreparedStatementCacheSqlLimit(intValue(dotenv.get("MYSQL_PREPARED_STATEMENT_CACHE_SQL_LIMIT"), config.getPreparedStatementCacheSqlLimit()));
+        config.setUseServerPreparedStatements(booleanValue(dotenv.get("MYSQL_USE_SERVER_PREPARED_STATEMENTS"), config.isUseServerPreparedStatements()));
+        config.setRewriteBatchedStatements(booleanValue(dotenv.get("MYSQL_REWRITE_BATCHED_STATEMENTS"), config.isRewriteBatchedStatements()));
+        config.setUseCursorFetch(booleanValue(dotenv.get("MYSQL_USE_CURSOR_FETCH"), config.isUseCursorFetch()));
+        config.setCursorFetchSize(intValue(dotenv.get("MYSQL_CURSOR_FETCH_SIZE"), config.getCursorFetchSize()));
+        config.setAllowLoadLocalInfile(booleanValue(dotenv.get("MYSQL_ALLOW_LOAD_LOCAL_INFILE"), config.isAllowLoadLocalInfile()));
+        config.setCountBytes(booleanValue(dotenv.get("MYSQL_COUNT_BYTES"), config.isCountBytes()));
+
+        config.setReplicas(listValue(dotenv.get("MYSQL_REPLICAS")));
+        String selection = dotenv.get("MYSQL_REPLICA_SELECTION");
+        if(selection != null && !selection.trim().isEmpty()){
+            config.setReplicaSelection(ReplicaRouter.Selection.valueOf(selection.trim().toUpperCase()));
+        }
+        config.setReplicaHealthCheckIntervalMillis(longValue(dotenv.get("MYSQL_REPLICA_HEALTH_CHECK_INTERVAL"), config.getReplicaHealthCheckIntervalMillis()));
+        config.setReadYourWritesMillis(longValue(dotenv.get("MYSQL_READ_YOUR_WRITES"), config.getReadYourWritesMillis()));
+
+        String sqliteFile = dotenv.get("SQLITE_FILE");
+        if(sqliteFile != null && !sqliteFile.trim().isEmpty()){
+            config.setSqliteFile(sqliteFile.trim());
+            config.setDialect(Dialect.SQLITE);
+        }
+        config.setSqliteBusyTimeoutMillis(longValue(dotenv.get("SQLITE_BUSY_TIMEOUT"), config.getSqliteBusyTimeoutMillis()));
+
+        return config;
+    }
+
+    /**
+     * DSN for the DB server only (no database selected) - used to CREATE the database if needed
+     * e.g. jdbc:mysql://127.0.0.1:3306/
+     */
+    public String getServerDsn()
+    {
+        return this.dialect.getServerDsn(this);
+    }
+
+    /**
+     * DSN for the application database
+     * e.g. jdbc:mysql://127.0.0.1:3306/evote, jdbc:sqlite:data/evote.db
+     */
+    public String getDsn()
+    {
+        return this.dialect.getDsn(this);
+    }
+
+    /**
+     * DSN for the application database on a replica endpoint (port 3306 if none given)
+     * e.g. "127.0.0.1:3307" => jdbc:mysql://127.0.0.1:3307/evote
+     */
+    public String getReplicaDsn(String endpoint)
+    {
+        return this.dialect.getReplicaDsn(this, endpoint);
+    }
+
+    /**
+     * driver properties for each connection (see Dialect.getConnectionProperties())
+     */
+    public Properties getConnectionProperties()
+    {
+        return this.dialect.getConnectionProperties(this);
+    }
+
+    /**
+     * fetch size to set on statements whose results are streamed rather than buffered (see Dialect.getStreamingFetchSize())
+     */
+    public int getStreamingFetchSize()
+    {
+        return this.dialect.getStreamingFetchSize(this);
+    }
+
+    private static int intValue(String value, int defaultValue)
+    {
+        if(value == null || value.trim().isEmpty()){
+            return defaultValue;
+        }
+
+        return Integer.parseInt(value.trim());
+    }
+
+    private static List<String> listValue(String value)
+    {
+        List<String> values = new ArrayList<>();
+        if(value != null){
+            for(String item : value.split(",")){
+                if(!item.trim().isEmpty()){
+                    values.add(item.trim());
+                }
+            }
+        }
+
+        return values;
+    }
+
+    private static boolean booleanValue(String value, boolean defaultValue)
+    {
+        if(value == null || value.trim().isEmpty()){
+            return defaultValue;
+        }
+
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    private static long longValue(String value, long defaultValue)
+    {
+        if(value == null || value.trim().isEmpty()){
+            return defaultValue;
+        }
+
+        return Long.parseLong(value.trim());
+    }
+
+    public Dialect getDialect()
+    {
+        return dialect;
+    }
+
+    /**
+     * e.g. Dialect.SQLITE (Dialect.MYSQL by default)
+     */
+    public void setDialect(Dialect dialect)
+    {
+        this.dialect = dialect;
+    }
+
+    public String getSqliteFile()
+    {
+        return sqliteFile;
+    }
+
+    /**
+     * path of the SQLite database file, e.g. "data/evote.db" (created if it doesn't exist)
+     */
+    public void setSqliteFile(String sqliteFile)
+    {
+        this.sqliteFile = sqliteFile;
+    }
+
+    public long getSqliteBusyTimeoutMillis()
+    {
+        return sqliteBusyTimeoutMillis;
+    }
+
+    public void setSqliteBusyTimeoutMillis(long sqliteBusyTimeoutMillis)
+    {
+        this.sqliteBusyTimeoutMillis = sqliteBusyTimeoutMillis;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public void setHost(String host)
+    {
+        this.host = host;
+    }
+
+    public String getPort()
+    {
+        return port;
+    }
+
+    public void setPort(String port)
+    {
+        this.port = port;
+    }
+
+    public String getUser()
+    {
+        return user;
+    }
+
+    public void setUser(String user)
+    {
+        this.user = user;
+    }
+
+    public String getPass()
+    {
+        return pass;
+    }
+
+    public void setPass(String pass)
+    {
+        this.pass = pass;
+    }
+
+    public String getDbname()
+    {
+        return dbname;
+    }
+
+    public void setDbname(String dbname)
+    {
+        this.dbname = dbname;
+    }
+
+    public int getPoolMinSize()
+    {
+        return poolMinSize;
+    }
+
+    public void setPoolMinSize(int poolMinSize)
+    {
+        this.poolMinSize = poolMinSize;
+    }
+
+    public int getPoolMaxSize()
+    {
+        return poolMaxSize;
+    }
+
+    public void setPoolMaxSize(int poolMaxSize)
+    {
+        this.poolMaxSize = poolMaxSize;
+    }
+
+    public long getIdleTimeoutMillis()
+    {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis)
+    {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getConnectionTimeoutMillis()
+    {
+        return connectionTimeoutMillis;
+    }
+
+    public void setConnectionTimeoutMillis(long connectionTimeoutMillis)
+    {
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+    }
+
+    public long getLeakDetectionThresholdMillis()
+    {
+        return leakDetectionThresholdMillis;
+    }
+
+    public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis)
+    {
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+    }
+
+    public long getHousekeepingIntervalMillis()
+    {
+        return housekeepingIntervalMillis;
+    }
+
+    public void setHousekeepingIntervalMillis(long housekeepingIntervalMillis)
+    {
+        this.housekeepingIntervalMillis = housekeepingIntervalMillis;
+    }
+
+    public int getValidationTimeoutSeconds()
+    {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds)
+    {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    public long getValidationSkipMillis()
+    {
+        return validationSkipMillis;
+    }
+
+    public void setValidationSkipMillis(long validationSkipMillis)
+    {
+        this.validationSkipMillis = validationSkipMillis;
+    }
+
+    public boolean isCachePreparedStatements()
+    {
+        return cachePreparedStatements;
+    }
+
+    public void setCachePreparedStatements(boolean cachePreparedStatements)
+    {
+        this.cachePreparedStatements = cachePreparedStatements;
+    }
+
+    public int getPreparedStatementCacheSize()
+    {
+        return preparedStatementCacheSize;
+    }
+
+    public void setPreparedStatementCacheSize(int preparedStatementCacheSize)
+    {
+        this.preparedStatementCacheSize = preparedStatementCacheSize;
+    }
+
+    public int getPreparedStatementCacheSqlLimit()
+    {
+        return preparedStatementCacheSqlLimit;
+    }
+
+    public void setPreparedStatementCacheSqlLimit(int preparedStatementCacheSqlLimit)
+    {
+        this.preparedStatementCacheSqlLimit = preparedStatementCacheSqlLimit;
+    }
+
+    public boolean isUseServerPreparedStatements()
+    {
+        return useServerPreparedStatements;
+    }
+
+    public void setUseServerPreparedStatements(boolean useServerPreparedStatements)
+    {
+        this.useServerPreparedStatements = useServerPreparedStatements;
+    }
+
+    public boolean isRewriteBatchedStatements()
+    {
+        return rewriteBatchedStatements;
+    }
+
+    public void setRewriteBatchedStatements(boolean rewriteBatchedStatements)
+    {
+        this.rewriteBatchedStatements = rewriteBatchedStatements;
+    }
+
+    public boolean isUseCursorFetch()
+    {
+        return useCursorFetch;
+    }
+
+    public void setUseCursorFetch(boolean useCursorFetch)
+    {
+        this.useCursorFetch = useCursorFetch;
+    }
+
+    public int getCursorFetchSize()
+    {
+        return cursorFetchSize;
+    }
+
+    public void setCursorFetchSize(int cursorFetchSize)
+    {
+        this.cursorFetchSize = cursorFetchSize;
+    }
+
+    public boolean isCountBytes()
+    {
+        return countBytes;
+    }
+
+    public void setCountBytes(boolean countBytes)
+    {
+        this.countBytes = countBytes;
+    }
+
+    public boolean isAllowLoadLocalInfile()
+    {
+        return allowLoadLocalInfile;
+    }
+
+    public void setAllowLoadLocalInfile(boolean allowLoadLocalInfile)
+    {
+        this.allowLoadLocalInfile = allowLoadLocalInfile;
+    }
+
+    public List<String> getReplicas()
+    {
+        return replicas;
+    }
+
+    /**
+     * read replica endpoints, e.g. "127.0.0.1:3307" (empty = all reads from the primary)
+     */
+    public void setReplicas(List<String> replicas)
+    {
+        this.replicas = (replicas == null) ? Collections.<String>emptyList() : new ArrayList<>(replicas);
+    }
+
+    public ReplicaRouter.Selection getReplicaSelection()
+    {
+        return replicaSelection;
+    }
+
+    public void setReplicaSelection(ReplicaRouter.Selection replicaSelection)
+    {
+        this.replicaSelection = replicaSelection;
+    }
+
+    public long getReplicaHealthCheckIntervalMillis()
+    {
+        return replicaHealthCheckIntervalMillis;
+    }
+
+    public void setReplicaHealthCheckIntervalMillis(long replicaHealthCheckIntervalMillis)
+    {
+        this.replicaHealthCheckIntervalMillis = replicaHealthCheckIntervalMillis;
+    }
+
+    public long getReadYourWritesMillis()
+    {
+        return readYourWritesMillis;
+    }
+
+    /**
+     * after a thread writes, its reads go to the primary for this long - so it sees its own writes
+     * even if the replicas lag behind (0 = off)
+     */
+    public void setReadYourWritesMillis(long readYourWritesMillis)
+    {
+        this.readYourWritesMillis = readYourWritesMillis;
+    }
+}
@@ -0,0 +1,20 @@
+package mattsmithdev.pdocrudrepo;
+
+/**
+ * the database couldn't be reached, the connection was lost,
+ * or no pooled connection became free within the connection timeout
+ */
+public class DatabaseConnectionException extends DatabaseException
+{
+    private static final long serialVersionUID = 1L;
+
+    public DatabaseConnectionException(String message, String sql, Throwable cause)
+    {
+        super(message, sql, cause);
+    }
+
+    public DatabaseConnectionException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
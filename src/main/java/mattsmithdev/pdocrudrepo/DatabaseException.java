@@ -0,0 +1,120 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * thrown by repository methods when a database operation fails
+ * (unchecked, so callers only catch the failures they can do something about)
+ *
+ * subclasses say what kind of failure it was:
+ *      DatabaseConnectionException     the DB couldn't be reached (or no pooled connection became free in time)
+ *      ConstraintViolationException    e.g. a duplicate key, or a foreign key with no matching row
+ *      MappingException                an entity class can't be mapped to/from rows (e.g. no no-args constructor)
+ *
+ * e.g.
+ *      try {
+ *          repo.insert(module);
+ *      } catch (ConstraintViolationException e) {
+ *          // module code already taken
+ *      }
+ */
+public class DatabaseException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * SQLite result codes (its driver gives no SQLSTATE) - the low byte of the error code, e.g. 2067 = SQLITE_CONSTRAINT_UNIQUE
+     */
+    private static final int SQLITE_CANTOPEN = 14;
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    private final String sql;
+
+    public DatabaseException(String message, String sql, Throwable cause)
+    {
+        super(message, cause);
+        this.sql = sql;
+    }
+
+    public DatabaseException(String message, Throwable cause)
+    {
+        this(message, null, cause);
+    }
+
+    public DatabaseException(String message)
+    {
+        this(message, null, null);
+    }
+
+    /**
+     * the SQL being run (with '?' placeholders - parameter values are never included), or null
+     */
+    public String getSql()
+    {
+        return sql;
+    }
+
+    /**
+     * the SQLSTATE of the underlying SQLException (e.g. "23000"), or null
+     */
+    public String getSqlState()
+    {
+        Throwable cause = this.getCause();
+        return (cause instanceof SQLException) ? ((SQLException) cause).getSQLState() : null;
+    }
+
+    /**
+     * the vendor error code of the underlying SQLException (e.g. MySQL's 1062 for a duplicate key), or 0
+     */
+    public int getErrorCode()
+    {
+        Throwable cause = this.getCause();
+        return (cause instanceof SQLException) ? ((SQLException) cause).getErrorCode() : 0;
+    }
+
+    /**
+     * the exception to throw for a failure while doing something (e.g. "trying to INSERT into table module"):
+     *      - DatabaseExceptions, and RuntimeExceptions not from the DB (e.g. IllegalArgumentException), as they are
+     *      - SQLExceptions as the matching DatabaseException subclass (by type, then by SQLSTATE class, or SQLite result code)
+     *      - anything else wrapped in a DatabaseException
+     */
+    public static RuntimeException translate(String action, String sql, Throwable e)
+    {
+        if(e instanceof DatabaseException){
+            return (DatabaseException) e;
+        }
+        if(e instanceof RuntimeException){
+            return (RuntimeException) e;
+        }
+
+        String message = action + " :: " + e.getMessage();
+        if(e instanceof ReflectiveOperationException){
+            return new MappingException(message, e);
+        }
+
+        if(e instanceof SQLException){
+            SQLException sqlException = (SQLException) e;
+            String sqlState = (sqlException.getSQLState() == null) ? "" : sqlException.getSQLState();
+            int sqliteCode = sqlState.isEmpty() ? (sqlException.getErrorCode() & 0xff) : -1;
+
+            if(e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+                    || sqlState.startsWith("08") || sqliteCode == SQLITE_CANTOPEN){
+                return new DatabaseConnectionException(message, sql, e);
+            }
+            if(e instanceof SQLIntegrityConstraintViolationException || sqlState.startsWith("23") || sqliteCode == SQLITE_CONSTRAINT){
+                return new ConstraintViolationException(message, sql, e);
+            }
+        }
+
+        return new DatabaseException(message, sql, e);
+    }
+
+    @Override
+    public String toString()
+    {
+        return (this.sql == null) ? super.toString() : super.toString() + " [SQL = " + this.sql + "]";
+    }
+}
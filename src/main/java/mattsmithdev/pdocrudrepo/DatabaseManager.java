@@ -4,121 +4,332 @@ package mattsmithdev.pdocrudrepo;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.ResultSet;
-import io.github.cdimascio.dotenv.Dotenv;
-import io.github.cdimascio.dotenv.DotenvEntry;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+
+/**
+ * owns the (one per process) connection pool
+ *
+ * the first time a connection is needed, the settings are loaded from .env,
+ * the database is created if it does not already exist (see Dialect), and the pool is started
+ *
+ * e.g.
+ *      try (Connection connection = DatabaseManager.getConnection(true)) {
+ *          ...
+ *      } // connection goes back to the pool
+ *
+ * with read replicas configured, repository reads borrow from a replica instead - see getReadConnection()
+ *
+ * it also runs transactions spanning many repository calls - see inTransaction(),
+ * and holds the Instrumentation that repository operations report their timings to - see setInstrumentation()
+ */
 public class DatabaseManager
 {
-    static final int SQL_EXCEPTION_CODE_DATABASE_EXISTS = 1007;
+    private static final Logger LOG = LoggerFactory.getLogger(DatabaseManager.class);
+
+    private static final Object LOCK = new Object();
+    private static volatile ConnectionPool pool;
+    private static volatile ReplicaRouter replicaRouter;
+    private static DatabaseConfig config;
+
+    /**
+     * bumped by each configure() - so repositories know to rebuild SQL built for the previous config's dialect
+     */
+    private static volatile long configGeneration = 0;
+
+    /**
+     * the transaction (if any) the current thread is inside
+     */
+    private static final ThreadLocal<Transaction> TRANSACTION = new ThreadLocal<>();
+
+    /**
+     * when the current thread last borrowed a primary connection (for read-your-writes)
+     */
+    private static final ThreadLocal<long[]> LAST_WRITE = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static volatile Instrumentation instrumentation = Instrumentation.NONE;
 
-    private String host;
-    private String port;
-    private String user;
-    private String pass;
-    private String dbname;
     private Connection dbh;
     private String error;
 
+    /**
+     * legacy API - opens a connection of its own (outside the pool, so it holds no pool permit,
+     * and a caller that never closes getDbh() can't start the pool of connections)
+     *
+     * @deprecated each call opens a new physical connection - use DatabaseManager.getConnection() instead,
+     * and close() it to give it back to the pool
+     */
+    @Deprecated
     public DatabaseManager(boolean silent)
     {
-        this.loadCredentialsFromDotEnv();
-
-        boolean success = false;
-        Connection conn = null;
-        Statement statement = null;
-        ResultSet resultset = null;
-
-//        try {
-//
-//            conn = DriverManager.getConnection("jdbc:mysql://" + this.host + ":" + this.port + "/?" +
-//                    "user=" + this.user + "&password=" + this.pass);
-//
-//            // truy to create schema
-//            statement = conn.createStatement();
-//            int Result= statement.executeUpdate("CREATE DATABASE " + this.dbname);
-//
-//        } catch (SQLException ex) {
-//            // handle any errors
-//            System.out.println("SQLException: " + ex.getMessage());
-//            System.out.println("SQLState: " + ex.getSQLState());
-//            System.out.println("VendorError: " + ex.getErrorCode());
-//        }
-
-
-        // -- first -- create DB connection with no DB selected, and try to create it --
         try {
-            // DSN - the Data Source Name - requred by the PDO to connect
-            String dsn = "jdbc:mysql://" + this.host + ":" + this.port + "/?" +
-                    "user=" + this.user + "&password=" + this.pass;
-            conn = DriverManager.getConnection(dsn);
-            
-            String sql = "CREATE DATABASE " + this.dbname;
-            statement = conn.createStatement();
-            statement.executeUpdate(sql);
+            DatabaseManager.getPool(silent);
+            DatabaseConfig databaseConfig = DatabaseManager.getConfig();
+            this.dbh = DriverManager.getConnection(databaseConfig.getDsn(), databaseConfig.getConnectionProperties());
+        } catch (SQLException e) {
+            this.error = e.getMessage();
+            LOG.error("unable to get a database connection :: {}", e.getMessage());
+        }
+    }
 
+    /**
+     * borrow a connection from the shared (primary) pool (starting the pool if needed)
+     *
+     * inside inTransaction() this is instead the transaction's connection (close() leaves it open)
+     */
+    public static Connection getConnection(boolean silent) throws SQLException
+    {
+        Transaction transaction = TRANSACTION.get();
+        if(transaction != null){
+            return transaction.getConnection();
+        }
 
+        ConnectionPool primary = DatabaseManager.getPool(silent);
+        DatabaseManager.wrote();
 
-        } catch (SQLException e) {
-            if(this.databaseExistsSQLException(e)){
-                // database already exists - all good
-                if(!silent){
-                    System.out.println("(DatabaseManager) using database '" + this.dbname + "'");
-                }
-                success = true;
-
-            } else {
-                // some other error
-                this.error = e.getMessage();
-                System.out.println("sorry - a database error occurred - please contact the site administrator ...");
-                System.out.println("<br>");
-                System.out.println(e.getMessage());
+        return primary.getConnection();
+    }
+
+    /**
+     * borrow a connection for reading - from a read replica if any are configured and healthy, otherwise the primary
+     *
+     * reads stay on the primary:
+     *      - inside inTransaction() (the transaction's connection)
+     *      - for readYourWritesMillis after this thread last used the primary (if set - see DatabaseConfig)
+     *      - when no replica can give a connection
+     */
+    public static Connection getReadConnection(boolean silent) throws SQLException
+    {
+        Transaction transaction = TRANSACTION.get();
+        if(transaction != null){
+            return transaction.getConnection();
+        }
+
+        ConnectionPool primary = DatabaseManager.getPool(silent);
+        ReplicaRouter router = replicaRouter;
+        if(router != null && !DatabaseManager.recentlyWrote(router)){
+            Connection connection = router.getConnection();
+            if(connection != null){
+                return connection;
             }
         }
 
-        if(!success){
-            System.out.println("database '" + this.dbname + "' did not exist, so new schema created \n");
+        return primary.getConnection();
+    }
+
+    /**
+     * note the time, for read-your-writes (only when it is on)
+     */
+    private static void wrote()
+    {
+        ReplicaRouter router = replicaRouter;
+        if(router != null && router.getReadYourWritesMillis() > 0){
+            LAST_WRITE.get()[0] = System.currentTimeMillis();
+        }
+    }
+
+    private static boolean recentlyWrote(ReplicaRouter router)
+    {
+        long window = router.getReadYourWritesMillis();
+        return window > 0 && (System.currentTimeMillis() - LAST_WRITE.get()[0]) < window;
+    }
+
+    /**
+     * run the work inside one transaction - every repository call it makes (on this thread) shares
+     * one connection, and everything is committed together at the end
+     *
+     * the transaction is rolled back (and the exception rethrown) if the work throws an exception,
+     * or rolled back with an SQLException if any statement inside it failed
+     *
+     * calling inTransaction() inside another just joins the outer transaction
+     *
+     * NOTE: DDL (e.g. createTable(), dropTable(), deleteAll()) makes MySQL commit straight away
+     *
+     * e.g.
+     *      DatabaseManager.inTransaction(tx -> {
+     *          moduleRepository.insert(module);
+     *          studentRepository.update(student);
+     *      });
+     */
+    public static void inTransaction(TransactionWork work) throws SQLException
+    {
+        Transaction outer = TRANSACTION.get();
+        if(outer != null){
+            try {
+                work.run(outer);
+            } catch (Exception e) {
+                outer.setRollbackOnly();
+                throw DatabaseManager.asSQLException(e);
+            }
+            return;
         }
 
-        // -- second -- now DB exists should be able to connect to it
-        try {
-            // DSN - the Data Source Name - requred by the PDO to connect
-            String dsn = "jdbc:mysql://" + this.host + ":" + this.port + "/" + this.dbname + "?" +
-                    "user=" + this.user + "&password=" + this.pass;
-            this.dbh = DriverManager.getConnection(dsn);
-            
-        } catch (SQLException e) {
-            this.error = e.getMessage();
-            System.out.println("sorry - a database error occured - please contact the site administrator ...");
-            System.out.println("<br>");
-            System.out.println(e.getMessage());
+        try (Connection connection = DatabaseManager.getPool(true).getConnection()) {
+            connection.setAutoCommit(false);
+            Transaction transaction = new Transaction(connection);
+            TRANSACTION.set(transaction);
+
+            try {
+                work.run(transaction);
+                transaction.flush();
+            } catch (Exception e) {
+                transaction.rollback();
+                throw DatabaseManager.asSQLException(e);
+            } finally {
+                TRANSACTION.remove();
+            }
+
+            if(transaction.isRollbackOnly()){
+                transaction.rollback();
+                SQLException failure = transaction.getFailure();
+                throw (failure == null)
+                        ? new SQLException("transaction rolled back")
+                        : new SQLException("transaction rolled back - a statement failed: " + failure.getMessage(), failure);
+            }
+
+            try {
+                transaction.commit();
+                DatabaseManager.wrote();
+            } catch (SQLException e) {
+                transaction.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         }
     }
 
+    /**
+     * the transaction the current thread is inside, or null
+     */
+    public static Transaction currentTransaction()
+    {
+        return TRANSACTION.get();
+    }
+
+    /**
+     * the instrumentation every repository operation reports to (Instrumentation.NONE by default)
+     */
+    public static Instrumentation getInstrumentation()
+    {
+        return instrumentation;
+    }
+
+    /**
+     * report the timings of every repository operation to the given instrumentation (null = none)
+     *
+     * e.g.
+     *      DatabaseManager.setInstrumentation(new InMemoryInstrumentation(500));
+     */
+    public static void setInstrumentation(Instrumentation newInstrumentation)
+    {
+        instrumentation = (newInstrumentation == null) ? Instrumentation.NONE : newInstrumentation;
+    }
+
+    private static SQLException asSQLException(Exception e)
+    {
+        if(e instanceof SQLException){
+            return (SQLException) e;
+        }
+        if(e instanceof RuntimeException){
+            throw (RuntimeException) e;
+        }
+
+        return new SQLException("transaction rolled back: " + e.getMessage(), e);
+    }
+
+    /**
+     * the shared pool - the database is bootstrapped only once per process, when the pool is first created
+     */
+    public static ConnectionPool getPool(boolean silent)
+    {
+        ConnectionPool current = pool;
+        if(current != null){
+            return current;
+        }
+
+        synchronized (LOCK) {
+            if(pool == null){
+                DatabaseConfig databaseConfig = DatabaseManager.getConfig();
+                databaseConfig.getDialect().createDatabaseIfNotExists(databaseConfig, silent);
+                // (replicas first, so a config the dialect can't route to replicas fails every time, not just once)
+                ReplicaRouter router = databaseConfig.getReplicas().isEmpty() ? null : new ReplicaRouter(databaseConfig);
+                pool = new ConnectionPool(databaseConfig.getDsn(), databaseConfig.getConnectionProperties(), databaseConfig);
+                replicaRouter = router;
+            }
 
+            return pool;
+        }
+    }
+
+    /**
+     * the read replicas (null if none are configured, or the pool has not started yet)
+     */
+    public static ReplicaRouter getReplicaRouter()
+    {
+        return replicaRouter;
+    }
 
-    private boolean databaseExistsSQLException(SQLException e)
+    /**
+     * the SQL dialect of the configured database (e.g. Dialect.MYSQL)
+     */
+    public static Dialect getDialect()
     {
-        int errorCode = e.getErrorCode();
-        return (SQL_EXCEPTION_CODE_DATABASE_EXISTS == errorCode);
+        return DatabaseManager.getConfig().getDialect();
     }
 
-    private void loadCredentialsFromDotEnv()
+    /**
+     * the settings in use (loaded from .env if not yet configured)
+     */
+    public static DatabaseConfig getConfig()
     {
-        Dotenv dotenv = Dotenv.load();
-        this.user = dotenv.get("MYSQL_USER");
-        this.pass = dotenv.get("MYSQL_PASSWORD");
-        this.host = dotenv.get("MYSQL_HOST");
-        this.port = dotenv.get("MYSQL_PORT");
-        this.dbname = dotenv.get("MYSQL_DATABASE");
+        synchronized (LOCK) {
+            if(config == null){
+                config = DatabaseConfig.fromDotEnv();
+            }
 
-//        if(!this.host){
-//            throw new Exception("\n\n ********** missing MYSQL_HOST environment value - or perhaps missing .env file altogether ...\n\n");
-//        }
+            return config;
+        }
+    }
 
-        
+    /**
+     * use the given settings instead of those from .env
+     * (any existing pool is shut down - the next getConnection() starts a new one)
+     */
+    public static void configure(DatabaseConfig databaseConfig)
+    {
+        synchronized (LOCK) {
+            DatabaseManager.shutdown();
+            config = databaseConfig;
+            configGeneration++;
+        }
+    }
+
+    /**
+     * how many times configure() has been called
+     */
+    static long getConfigGeneration()
+    {
+        return configGeneration;
+    }
+
+    /**
+     * close the shared pool (and any replica pools)
+     */
+    public static void shutdown()
+    {
+        synchronized (LOCK) {
+            if(replicaRouter != null){
+                replicaRouter.close();
+                replicaRouter = null;
+            }
+            if(pool != null){
+                pool.close();
+                pool = null;
+            }
+        }
     }
 
     public Connection getDbh()
@@ -1,19 +1,27 @@
 package mattsmithdev.pdocrudrepo;
 
 
-import com.mysql.cj.jdbc.result.ResultSetImpl;
-
 import java.lang.reflect.Array;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 import java.util.stream.*;
 import java.lang.reflect.*;
 
+import com.mysql.cj.jdbc.JdbcStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * for the future
- * @TODO: SQLITE
- * https://www.sqlitetutorial.net/sqlite-java/create-table/
- *
  * @TODO: DB testing
  * https://blog.testproject.io/2021/03/08/jdbctemplate-for-java-automated-database-tests/
  *
@@ -26,8 +34,30 @@ import java.lang.reflect.*;
 
 public abstract class DatabaseTableRepository
 {
+    private static final Logger LOG = LoggerFactory.getLogger(DatabaseTableRepository.class);
+
     private boolean silent = true;
 
+    /**
+     * number of rows per JDBC batch
+     */
+    private int batchSize = 1000;
+
+    /**
+     * max number of ids in each WHERE id IN (...) query made by findByIds()
+     */
+    private int idsPerQuery = 500;
+
+    /**
+     * max number of rows sent by each LOAD DATA statement of bulkLoad()
+     */
+    private int rowsPerBulkLoad = 100000;
+
+    /**
+     * number of rows fetched per query by parallelScan() and parallelStream()
+     */
+    private int scanPageSize = 1000;
+
     public void setSilent()
     {
         silent = true;
@@ -51,6 +81,28 @@ public abstract class DatabaseTableRepository
      */
     private String tableName;
 
+    /**
+     * SQL templates for each entity class stored in this table
+     * (in the dialect of the DatabaseManager config generation they were built for)
+     */
+    private final Map<Class<?>, SqlTemplates> sqlTemplatesCache = new ConcurrentHashMap<>();
+    private volatile long sqlTemplatesGeneration = DatabaseManager.getConfigGeneration();
+
+    /**
+     * optional read-through cache in front of find() - null when disabled
+     */
+    private volatile EntityCache cache;
+
+    /**
+     * snapshots of loaded entities, so update() only writes changed columns - null when disabled (the default)
+     */
+    private volatile DirtyTracker dirtyTracker;
+
+    /**
+     * indexes declared with addIndex(), rather than by annotations
+     */
+    private final List<IndexDefinition> addedIndexes = new CopyOnWriteArrayList<>();
+
     /**
      * DatabaseTableRepository constructor.
      *
@@ -121,6 +173,8 @@ public abstract class DatabaseTableRepository
     public void setTableName(String tableName)
     {
         this.tableName = tableName;
+        this.sqlTemplatesCache.clear();
+        this.clearCache();
     }
 
     /**
@@ -129,443 +183,1615 @@ public abstract class DatabaseTableRepository
     public <T> T[] entityObjects(Class<T> clazz, Object[] objects)
     {
         int size = objects.length;
-        T[] entities = (T[])Array.newInstance(clazz, size);
+        T[] entities = newArray(clazz, size);
 
         for(int i = 0; i < size; i++ ){
-            entities[i] = (T)objects[i];
+            entities[i] = clazz.cast(objects[i]);
         }
 
         return entities;
     }
 
     /**
-     * return an array of objects for the class given as the parameter
-     *
-     * e.g.
-     * Module modules = repo.findAll(Module.class)
+     * a new T[] - Array.newInstance() returns Object, but for a (non-primitive) Class<T> it is always a T[]
      */
-    public <T> T[] findAll(Class<T> clazz) throws Exception
+    @SuppressWarnings("unchecked")
+    private static <T> T[] newArray(Class<T> clazz, int length)
     {
-        Object[] objects = new Object[1000];
-        DatabaseManager dataBaseManager = new DatabaseManager(silent);
-        Connection connection = dataBaseManager.getDbh();
-
-        String sql = "";
-        PreparedStatement statement;
-
-        try {
-            sql = "SELECT * from :table";
-            sql = sql.replace(":table", this.tableName);
-            statement = connection.prepareStatement(sql);
-            statement.execute(sql);
-
-//            sql = statement.toString();
-            ResultSet resultset = statement.executeQuery();
-            //----- RS to objects ----
-            ArrayList<T> objectArrayList = new ArrayList<T>();
-
-            while(resultset.next()){
-                T object = clazz.getDeclaredConstructor().newInstance();
+        return (T[]) Array.newInstance(clazz, length);
+    }
 
-                // "set" each field from RS
-                Field[] fields = clazz.getDeclaredFields();
+    /**
+     * turn on the entity cache for find(id) - up to maxSize entities, each kept for up to ttlMillis (<= 0 = no expiry)
+     * insert/update/delete keep the cache up to date
+     */
+    public void enableCache(int maxSize, long ttlMillis)
+    {
+        this.cache = new EntityCache(maxSize, ttlMillis);
+    }
 
-                DatabaseUtility dbUtility = new DatabaseUtility();
+    public void disableCache()
+    {
+        this.cache = null;
+    }
 
-                for (Field field : fields) {
-                    String fieldName = field.getName();
-                    Object fieldType = field.getType();
-                    String setterMethodName = dbUtility.setterMethodName(fieldName);
-                    Method setterMethod;
+    private void clearCache()
+    {
+        EntityCache entityCache = this.cache;
+        if(entityCache != null){
+            entityCache.clear();
+        }
+    }
 
+    /**
+     * the entity cache (for its hit/miss/eviction counts) - null if not enabled
+     */
+    public EntityCache getCache()
+    {
+        return this.cache;
+    }
 
-//                    String mySQLtype = dbUtility.dbDataType(fieldType);
+    /**
+     * dirty tracking (off by default): entities loaded by find(), findAll(), findByIds(), findPage() and query().list(),
+     * or saved by insert/update, remember their column values - update() then sets only the columns changed since,
+     * and sends nothing at all if none have
+     *
+     * NOTE: tracked reads are mapped a column at a time (boxed), plus a snapshot per row,
+     * rather than by the generated row mappers - so only turn it on for tables with wide rows and narrow updates
+     *
+     * rows read by stream(), forEach(), parallelScan(), parallelStream() and exportTo() are not tracked
+     * (their entities are written back with every column)
+     */
+    public void setDirtyTracking(boolean enabled)
+    {
+        this.dirtyTracker = enabled ? new DirtyTracker() : null;
+    }
 
-                    if(fieldType.equals(Double.TYPE))
-                    {
-                        double value = resultset.getDouble(fieldName);
-                        setterMethod = clazz.getMethod(setterMethodName, double.class);
-                        setterMethod.invoke(object, value);
-                    }
+    public boolean isDirtyTracking()
+    {
+        return this.dirtyTracker != null;
+    }
 
-                    if(fieldType.equals(Float.TYPE))
-                    {
-                        float value = resultset.getFloat(fieldName);
-                        setterMethod = clazz.getMethod(setterMethodName, float.class);
-                        setterMethod.invoke(object, value);
-                    }
+    /**
+     * the dirty tracker (e.g. for its size()) - null if not enabled
+     */
+    public DirtyTracker getDirtyTracker()
+    {
+        return this.dirtyTracker;
+    }
 
-                    if(fieldType.equals(Boolean.TYPE))
-                    {
-                        int valueInt = resultset.getInt(fieldName);
-                        boolean value = (valueInt == 1);
-                        setterMethod = clazz.getMethod(setterMethodName, boolean.class);
-                        setterMethod.invoke(object, value);
-                    }
+    private void track(Object object)
+    {
+        DirtyTracker tracker = this.dirtyTracker;
+        if(tracker != null && object != null){
+            tracker.snapshot(object);
+        }
+    }
 
-                    if(fieldType.equals(Integer.TYPE))
-                    {
-                        int value = resultset.getInt(fieldName);
-                        setterMethod = clazz.getMethod(setterMethodName, int.class);
-                        setterMethod.invoke(object, value);
-                    }
+    /**
+     * the exception to throw for a failed operation, e.g. error("trying to SELECT from", sql, e)
+     * - a DatabaseException (or subclass) for DB/mapping failures, see DatabaseException.translate()
+     */
+    private RuntimeException error(String action, String sql, Exception e)
+    {
+        return DatabaseException.translate(action + " table " + this.tableName, sql, e);
+    }
 
-                    if(fieldType.equals(String.class))
-                    {
-                        String value = resultset.getString(fieldName);
-                        setterMethod = clazz.getMethod(setterMethodName, String.class);
-                        setterMethod.invoke(object, value);
-                    }
-                }
-                
-                objectArrayList.add(object);
-            }
+    /**
+     * start timing an operation for the instrumentation set in DatabaseManager (see OperationTimer)
+     */
+    private OperationTimer timer(String operation)
+    {
+        return OperationTimer.start(DatabaseManager.getInstrumentation(), this.tableName, operation);
+    }
 
-            objects = objectArrayList.toArray();
+    /**
+     * the parameterized SQL for the given entity class (built once, then cached - until DatabaseManager.configure() is called again)
+     */
+    protected SqlTemplates sqlTemplates(Class<?> clazz)
+    {
+        long generation = DatabaseManager.getConfigGeneration();
+        if(generation != this.sqlTemplatesGeneration){
+            // e.g. MySQL upserts and DDL, now talking to SQLite
+            this.sqlTemplatesCache.clear();
+            this.sqlTemplatesGeneration = generation;
+        }
 
-        } catch (Exception e) {
-            System.out.println("Database error (trying to SELECT from table):: " + this.tableName + "\n" + e.getMessage());
-            System.out.println("SQL = " + sql);
+        SqlTemplates templates = this.sqlTemplatesCache.get(clazz);
+        if(templates == null){
+            templates = new SqlTemplates(this.tableName, EntityMetadata.of(clazz), DatabaseManager.getDialect());
+            this.sqlTemplatesCache.put(clazz, templates);
         }
 
-        return entityObjects(clazz, objects);
+        return templates;
     }
 
-    public <T> T find(Class<T> clazz, int id)
+    /**
+     * bind each non-id property of the object to parameters 1..n of the statement (in column order)
+     * returns n - the number of parameters bound
+     */
+    private int bindColumnsLessId(PreparedStatement statement, EntityMetadata<?> metadata, Object object) throws SQLException
     {
-        T object = null;
-        try {
-            object = clazz.getDeclaredConstructor().newInstance();
-        } catch (Exception e) {
-            System.out.println("ERROR: unable to create new object for provided class: " + clazz);
+        int parameterIndex = 0;
+        for (ColumnMetadata column : metadata.getColumnsLessId()) {
+            parameterIndex++;
+            column.bind(statement, parameterIndex, object);
         }
 
-        DatabaseManager dataBaseManager = new DatabaseManager(silent);
-        Connection connection = dataBaseManager.getDbh();
-
-        String sql = "";
-        PreparedStatement statement;
+        return parameterIndex;
+    }
 
-        try {
-            sql = "SELECT * from :table WHERE id=:id";
-            sql = sql.replace(":table", this.tableName);
-            sql = sql.replace(":id", id+"");
-            statement = connection.prepareStatement(sql);
-            statement.execute(sql);
-
-//            sql = statement.toString();
-            ResultSet resultset = statement.executeQuery();
+    /**
+     * return an array of objects for the class given as the parameter
+     *
+     * e.g.
+     * Module modules = repo.findAll(Module.class)
+     */
+    public <T> T[] findAll(Class<T> clazz) throws Exception
+    {
+        String sql = this.sqlTemplates(clazz).getFindAll();
+        OperationTimer timer = this.timer("findAll");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getReadConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql));
+            ResultSet resultset = timer.executed(statement.executeQuery())
+        ) {
             //----- RS to objects ----
+            RowMapper<T> rowMapper = RowMappers.forResultSet(clazz, resultset, this.dirtyTracker);
             ArrayList<T> objectArrayList = new ArrayList<T>();
 
-            while(resultset.next())
-            {
-                object = clazz.getDeclaredConstructor().newInstance();
-
-                // "set" each field from RS
-                Field[] fields = clazz.getDeclaredFields();
-
-                DatabaseUtility dbUtility = new DatabaseUtility();
-
-                for (Field field : fields)
-                {
-                    String fieldName = field.getName();
-                    Object fieldType = field.getType();
-                    String setterMethodName = dbUtility.setterMethodName(fieldName);
-                    Method setterMethod;
-
-                    if(fieldType.equals(Double.TYPE))
-                    {
-                        double value = resultset.getDouble(fieldName);
-                        setterMethod = clazz.getMethod(setterMethodName, double.class);
-                        setterMethod.invoke(object, value);
-                    }
-
-                    if(fieldType.equals(Float.TYPE))
-                    {
-                        float value = resultset.getFloat(fieldName);
-                        setterMethod = clazz.getMethod(setterMethodName, float.class);
-                        setterMethod.invoke(object, value);
-                    }
-
-                    if(fieldType.equals(Boolean.TYPE))
-                    {
-                        int valueInt = resultset.getInt(fieldName);
-                        boolean value = (valueInt == 1);
-                        setterMethod = clazz.getMethod(setterMethodName, boolean.class);
-                        setterMethod.invoke(object, value);
-                    }
+            while(resultset.next()){
+                objectArrayList.add(rowMapper.mapRow(resultset));
+            }
+            timer.mapped(objectArrayList.size());
 
-                    if(fieldType.equals(Integer.TYPE))
-                    {
-                        int value = resultset.getInt(fieldName);
-                        setterMethod = clazz.getMethod(setterMethodName, int.class);
-                        setterMethod.invoke(object, value);
-                    }
+            // copy straight into a T[] (no intermediate Object[])
+            return objectArrayList.toArray(newArray(clazz, objectArrayList.size()));
 
-                    if(fieldType.equals(String.class))
-                    {
-                        String value = resultset.getString(fieldName);
-                        setterMethod = clazz.getMethod(setterMethodName, String.class);
-                        setterMethod.invoke(object, value);
-                    }
-                }
-            }
         } catch (Exception e) {
-            System.out.println("Database error (trying to SELECT from table with ID):: " + this.tableName + "\n" + e.getMessage());
-            System.out.println("SQL = " + sql);
+            timer.failed(e);
+            throw this.error("trying to SELECT from", sql, e);
+        } finally {
+            timer.end(sql);
         }
-
-        return object;
     }
 
     /**
-     * delete record for given ID
+     * stream the rows of the table as entity objects, mapped one at a time as the stream is consumed
+     *
+     * rows are streamed from the server rather than buffered (see DatabaseConfig.getStreamingFetchSize()),
+     * so memory stays flat however big the table is
+     *
+     * the stream holds a pooled connection until it is closed (or fully consumed), so use try-with-resources:
+     *
+     * e.g.
+     *      try (Stream<Module> modules = repo.stream(Module.class)) {
+     *          modules.filter(m -> m.getPrice() > 10).forEach(System.out::println);
+     *      }
      */
-    public void delete(int id)
+    public <T> Stream<T> stream(Class<T> clazz)
     {
-        DatabaseManager dataBaseManager = new DatabaseManager(silent);
-        Connection connection = dataBaseManager.getDbh();
-        String sql = "";
+        return this.streamQuery(clazz, this.sqlTemplates(clazz).getFindAll());
+    }
 
-        try {
-            sql = "DELETE from :table WHERE id=:id";
-            sql = sql.replace(":id", ""+id);
-            sql = sql.replace(":table", this.tableName);
-            PreparedStatement statement = connection.prepareStatement(sql);
-//            statement.setString(1, this.tableName);
-//            statement.setInt(2, id);
-            statement.execute(sql);
-            int i = statement.executeUpdate();
-        } catch (Exception e) {
-            System.out.println("Database error (trying to DELETE from table):: " + e.getMessage());
-            System.out.println("SQL = " + sql);
+    /**
+     * pass each row of the table, as an entity object, to the given consumer (rows are streamed - see stream())
+     *
+     * e.g.
+     *      repo.forEach(Module.class, module -> System.out.println(module));
+     */
+    public <T> void forEach(Class<T> clazz, Consumer<? super T> consumer)
+    {
+        try (Stream<T> stream = this.stream(clazz)) {
+            stream.forEach(consumer);
         }
     }
 
-
-
     /**
-     * delete all records - return true/false depending on delete success
+     * pass every row of the table, as an entity object, to the given consumer - scanning parts of the table at once,
+     * with up to the given number of queries running at a time (each on its own pooled connection, so no more than the pool's max size)
+     *
+     * the ids from MIN(id) to MAX(id) are split into that many ranges, each read scanPageSize rows at a time
+     * (e.g. SELECT * from module WHERE id > ? AND id <= ? ORDER BY id LIMIT ?) by a ForkJoin worker - and when a worker
+     * runs out of ranges, it takes half of what's left of another's (see ParallelScanTask), so dense ranges don't hold up the scan
+     *
+     * the consumer is called from several threads at once, in no particular order - so must be thread-safe
      *
      * e.g.
-     *      TRUNCATE TABLE module
+     *      LongAdder credits = new LongAdder();
+     *      repo.parallelScan(Module.class, 8, module -> credits.add(module.getCredits()));
      */
-
-    public void deleteAll()
+    public <T> void parallelScan(Class<T> clazz, int partitions, Consumer<? super T> consumer)
     {
-        DatabaseManager dataBaseManager = new DatabaseManager(silent);
-        Connection connection = dataBaseManager.getDbh();
-
-        try {
-            String sql = "TRUNCATE TABLE " + this.tableName;
-            PreparedStatement statement = connection.prepareStatement(sql);
-            statement.execute(sql);
-            int i = statement.executeUpdate();
+        int workers = Math.max(1, Math.min(partitions, DatabaseManager.getConfig().getPoolMaxSize()));
+        List<IdRangeSpliterator<T>> ranges = new ArrayList<>();
+        IdRangeSpliterator<T> all = this.idRangeSpliterator(clazz);
+        ranges.add(all);
+
+        // split into roughly equal ranges - e.g. 8 partitions = 8 ranges
+        while(ranges.size() < workers){
+            int n = ranges.size();
+            for(int i = 0; i < n && ranges.size() < workers; i++){
+                IdRangeSpliterator<T> upper = ranges.get(i).trySplit();
+                if(upper != null){
+                    ranges.add(upper);
+                }
+            }
+            if(ranges.size() == n){
+                break;
+            }
+        }
 
-            // ?? success ?? what value of "i"
+        List<ParallelScanTask<T>> tasks = new ArrayList<>();
+        for(IdRangeSpliterator<T> range : ranges){
+            tasks.add(new ParallelScanTask<>(range, consumer));
+        }
 
-        } catch (Exception e) {
-            System.out.println("Database error (trying to TRUNCATE table):: \n" + e.getMessage());
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            pool.invoke(new RecursiveAction()
+            {
+                @Override
+                protected void compute()
+                {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
         }
     }
 
-
-//    public function searchByColumn(columnName, searchText)
-//    {
-////        columnName = filter_var(columnName, FILTER_SANITIZE_STRING);
-//
-//        db = new DatabaseManager(silent);
-//        connection = db.getDbh();
-//
-//        // wrap wildcard '%' around the serach text for the SQL query
-//        searchText = '%' . searchText . '%';
-//
-//        sql = 'SELECT * from :table WHERE :column LIKE :searchText';
-//        sql = replace(':table', this.tableName, sql);
-//        sql = replace(':column', columnName, sql);
-//
-//        statement = connection.prepare(sql);
-////        statement.bindParam(':column', columnName, \PDO::PARAM_STR);
-//        statement.bindParam(':searchText', searchText, \PDO::PARAM_STR);
-//        statement.setFetchMode(\PDO::FETCH_CLASS, this.classNameForDbRecords);
-//        statement.execute();
-//
-//        objects = statement.fetchAll();
-//
-//        return objects;
-//    }
-
-
     /**
-     * insert new record into the DB table
-     * returns new record ID if insertion was successful, otherwise -1
+     * a parallel stream of every row of the table, as entity objects, read a page at a time by id range (see parallelScan())
+     * - the stream's ForkJoin pool splits the ranges up between its workers
+     *
+     * e.g.
+     *      long expensive = repo.parallelStream(Module.class).filter(m -> m.getPrice() > 100).count();
      */
-    public <T> boolean insert(T object)
+    public <T> Stream<T> parallelStream(Class<T> clazz)
     {
-        boolean success = false;
-        DatabaseManager dataBaseManager = new DatabaseManager(silent);
-        Connection connection = dataBaseManager.getDbh();
-
-        String sql = "";
-        PreparedStatement statement;
-
-        Field[] fields = object.getClass().getDeclaredFields();
-        String[] fieldNames = DatabaseUtility.fieldNamesLessId(fields);
-        String insertFieldList = DatabaseUtility.fieldListToInsertString(fieldNames);
-
-        LinkedHashMap<String, String> objectAsMapLessId = DatabaseUtility.objectToMapLessId(object);
-
-        String valuesFieldList = DatabaseUtility.hashMapValuesString(objectAsMapLessId);
-
-        sql = "INSERT into :table :insertFieldList :valuesFieldList";
-        sql = sql.replace(":table", this.tableName);
-        sql = sql.replace(":insertFieldList", insertFieldList);
-        sql = sql.replace(":valuesFieldList", valuesFieldList);
-
-        try {
-            int id = -99;
-            statement = connection.prepareStatement(sql);
-//            int id = statement.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
-            statement.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
+        // (MIN/MAX id is only asked for when the stream is used)
+        return StreamSupport.stream(() -> this.idRangeSpliterator(clazz), Spliterator.DISTINCT | Spliterator.NONNULL, true);
+    }
 
-            ResultSet rs = statement.getGeneratedKeys();
-            if (rs.next()) {
-                id = rs.getInt(1);
+    /**
+     * a spliterator for the ids from MIN(id) to MAX(id), reading each page with its own query
+     */
+    private <T> IdRangeSpliterator<T> idRangeSpliterator(Class<T> clazz)
+    {
+        SqlTemplates templates = this.sqlTemplates(clazz);
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        String sql = templates.getIdRange();
+
+        int minId = 0;
+        int maxId = 0;
+        OperationTimer timer = this.timer("idRange");
+        try (
+            Connection connection = timer.connected(DatabaseManager.getReadConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql));
+            ResultSet resultset = timer.executed(statement.executeQuery())
+        ) {
+            if(resultset.next()){
+                minId = resultset.getInt(1);
+                maxId = resultset.getInt(2);
             }
-
-            success = DatabaseUtility.setId(object, id);
-
+            timer.mapped(1);
         } catch (Exception e) {
-            System.out.println("Database error (trying to INSERT a record):: \n" + e.getMessage());
-            System.out.println("SQL = " + sql);
+            timer.failed(e);
+            throw this.error("trying to SELECT id range of", sql, e);
+        } finally {
+            timer.end(sql);
         }
 
-        return success;
+        String pageSql = templates.getFindPageInRange();
+        IdRangeSpliterator.PageReader<T> reader = (afterId, lastId, limit) -> {
+            try {
+                // (rows scanned aren't tracked - a scan may read the whole table)
+                return this.queryForList("scan", clazz, (DirtyTracker) null, pageSql, afterId, lastId, limit);
+            } catch (SQLException e) {
+                throw this.error("trying to SELECT id range from", pageSql, e);
+            }
+        };
+
+        // (an empty table gives NULLs - read as 0, 0 - so an empty range)
+        int afterId = (maxId == 0) ? 0 : minId - 1;
+        return new IdRangeSpliterator<>(reader, metadata::getId, this.scanPageSize, afterId, maxId);
+    }
+
+    public int getScanPageSize()
+    {
+        return scanPageSize;
     }
 
     /**
-     * given an array of entity objects, loop through them and insert them each into the DB table
+     * number of rows fetched per query by parallelScan() and parallelStream()
      */
-    public <T> void insertMany(T[] objects)
+    public void setScanPageSize(int scanPageSize)
     {
-        for(T object: objects){
-            this.insert(object);
-        }
+        this.scanPageSize = Math.max(1, scanPageSize);
     }
 
-
     /**
-     * insert new record into the DB table
+     * write every row of the table to a file (replacing it, if it exists) - see ExportFormat
+     *
+     * rows are streamed from the server (see stream()) and their values copied straight into the file,
+     * without making entity objects - so any size of table can be exported in the same memory
+     * returns the number of rows written
      *
      * e.g.
-     *  UPDATE module SET description VALUES (description = 'GUI programming - version 2') WHERE id=3;
+     *      repo.exportTo(Paths.get("module.jsonl"), ExportFormat.JSON_LINES);
      */
-    public <T> void update(T object)
+    public long exportTo(Path path, ExportFormat format)
     {
-        DatabaseManager dataBaseManager = new DatabaseManager(silent);
-        Connection connection = dataBaseManager.getDbh();
-
-        PreparedStatement statement;
-
-        int id = DatabaseUtility.getId(object);
-        LinkedHashMap<String, String> objectAsMapLessId = DatabaseUtility.objectToMapLessId(object);
-
-        String updateFieldList = DatabaseUtility.objectMapToUpdateString(objectAsMapLessId);
+        String sql = SqlTemplates.selectAll(this.tableName);
+        long rowCount = 0;
+        OperationTimer timer = this.timer("exportTo");
+
+        try (Connection connection = timer.connected(DatabaseManager.getReadConnection(silent));
+             PreparedStatement statement = timer.prepared(connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY));
+             FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            statement.setFetchSize(DatabaseManager.getConfig().getStreamingFetchSize());
+            try (ResultSet resultset = timer.executed(statement.executeQuery())) {
+                TableExporter exporter = new TableExporter(channel, format, resultset.getMetaData());
+                while(resultset.next()){
+                    exporter.writeRow(resultset);
+                    rowCount++;
+                }
+                exporter.finish();
+                timer.mapped(rowCount);
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to export", sql, e);
+        } finally {
+            timer.end(sql);
+        }
 
+        return rowCount;
+    }
 
-        String sql = "UPDATE :table SET :updateFieldList WHERE id=:id";
-        sql = sql.replace(":id", id+"");
-        sql = sql.replace(":table", this.tableName);
-        sql = sql.replace(":updateFieldList", updateFieldList);
+    /**
+     * run the given SELECT (binding any '?' parameters in order) and stream its rows as entity objects
+     * the connection, statement and result set are closed when the stream is closed or fully consumed
+     */
+    protected <T> Stream<T> streamQuery(Class<T> clazz, String sql, Object... parameters)
+    {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultset = null;
+        OperationTimer timer = this.timer("stream");
 
         try {
-            statement = connection.prepareStatement(sql);
-            int row = statement.executeUpdate(sql);
-        } catch (Exception e) {
-            System.out.println("Database error (trying to UPDATE a record):: \n" + e.getMessage());
-            System.out.println("SQL = " + sql);
+            connection = timer.connected(DatabaseManager.getReadConnection(silent));
+            statement = timer.prepared(connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY));
+            statement.setFetchSize(DatabaseManager.getConfig().getStreamingFetchSize());
+            for(int i = 0; i < parameters.length; i++){
+                TypeConverters.bindParameter(statement, i + 1, parameters[i]);
+            }
+            resultset = timer.executed(statement.executeQuery());
+
+            RowMapper<T> rowMapper = RowMappers.forResultSet(clazz, resultset);
+            ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(resultset, rowMapper, resultset, statement, connection);
+
+            // the MAP phase of a stream is the time it was open (including the caller's processing of each row)
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                spliterator.close();
+                timer.mapped(spliterator.getRowCount());
+                timer.end(sql);
+            });
+        } catch (SQLException e) {
+            timer.failed(e);
+            timer.end(sql);
+            new ResultSetSpliterator<T>(null, null, resultset, statement, connection).close();
+            throw this.error("trying to stream from", sql, e);
         }
     }
 
     /**
-     * drop the table associated with this repository
+     * keyset pagination - return up to limit rows with id greater than afterId, in id order
      *
-     * DROP TABLE IF EXISTS module
+     * SELECT * from module WHERE id > ? ORDER BY id LIMIT ?
+     *
+     * uses the primary key index, so every page costs the same however deep into the table it is
+     * (use afterId = 0 for the first page)
+     *
+     * throws IllegalArgumentException if limit < 1
      */
-    public void dropTable()
+    public <T> Page<T> findPage(Class<T> clazz, int afterId, int limit)
     {
-        DatabaseManager dataBaseManager = new DatabaseManager(silent);
-        Connection connection = dataBaseManager.getDbh();
+        checkPageArguments(0, limit);
+        String sql = this.sqlTemplates(clazz).getFindPageAfterId();
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
 
         try {
-            String sql = "DROP TABLE IF EXISTS " + this.tableName;
-            PreparedStatement statement = connection.prepareStatement(sql);
-            statement.execute(sql);
-            int i = statement.executeUpdate();
-        } catch (Exception e) {
-            System.out.println("Database error (trying to DROP table):: \n" + e.getMessage());
+            // ask for one extra row, to find out if there is another page (as a long, so Integer.MAX_VALUE can't overflow)
+            List<T> rows = this.queryForList("findPage", clazz, sql, afterId, limit + 1L);
+            boolean more = rows.size() > limit;
+            if(more){
+                rows.remove(limit);
+            }
+
+            String nextCursor = null;
+            if(more){
+                nextCursor = Page.keysetCursor(metadata.getId(rows.get(rows.size() - 1)));
+            }
+
+            return this.page(clazz, rows, more, nextCursor);
+        } catch (SQLException e) {
+            throw this.error("trying to SELECT page from", sql, e);
         }
     }
 
     /**
-     * create the table associated with this repository
+     * OFFSET pagination - return up to limit rows starting at position offset (in id order)
      *
-     * SQL - optional SQL CREATE statement
+     * SELECT * from module ORDER BY id LIMIT ? OFFSET ?
      *
-
-    CREATE TABLE IF NOT EXISTS movie (
-        id integer PRIMARY KEY AUTO_INCREMENT,
-        title text,
-        price float,
-        category text
-    )
-
+     * simple, but the DB must skip over offset rows each time - so only suitable for small tables
+     *
+     * throws IllegalArgumentException if offset < 0 or limit < 1
      */
-
-    public void createTable() throws Exception
+    public <T> Page<T> findPageByOffset(Class<T> clazz, int offset, int limit)
     {
-        String sql = "";
-            try {
-                sql = this.getSqlToCreateTable();
-            } catch (Exception e) {
-                System.out.println("DatabaseTableRepository.createTable() :: Database error \n" + e.getMessage());
-            }
-
-        DatabaseManager dataBaseManager = new DatabaseManager(silent);
-        Connection connection = dataBaseManager.getDbh();
+        checkPageArguments(offset, limit);
+        String sql = this.sqlTemplates(clazz).getFindPageByOffset();
 
         try {
-            PreparedStatement statement = connection.prepareStatement(sql);
-            statement.execute(sql);
-            int i = statement.executeUpdate();
+            List<T> rows = this.queryForList("findPageByOffset", clazz, sql, limit + 1L, offset);
+            boolean more = rows.size() > limit;
+            if(more){
+                rows.remove(limit);
+            }
 
-            // ?? success ?? what value of "i"
-        } catch (Exception e) {
-            System.out.println("*** sorry - a database error occurred ***");
-            System.out.println("when trying to CREATE table:: " + e.getMessage());
-            System.out.println("SQL = " + sql);
+            // (no cursor if the next offset would be past Integer.MAX_VALUE)
+            long nextOffset = (long) offset + limit;
+            String nextCursor = (more && nextOffset <= Integer.MAX_VALUE) ? Page.offsetCursor((int) nextOffset) : null;
 
+            return this.page(clazz, rows, more, nextCursor);
+        } catch (SQLException e) {
+            throw this.error("trying to SELECT page from", sql, e);
         }
     }
 
-    public String getSqlToCreateTable() throws Exception
+    /**
+     * return the page after the given cursor token (from Page.getNextCursor()) - null/empty cursor for the first page
+     *
+     * a cursor from findPageByOffset() continues in OFFSET mode, otherwise keyset pagination is used
+     */
+    public <T> Page<T> findPage(Class<T> clazz, String cursor, int limit)
     {
-        // try to infer from types of entity class properties
-        String sql = this.inferSqlFromPropertyTypes();
+        if(cursor == null || cursor.isEmpty()){
+            return this.findPage(clazz, 0, limit);
+        }
 
-        if(!sql.isEmpty()){
-            return sql;
+        if(Page.isOffsetCursor(cursor)){
+            return this.findPageByOffset(clazz, Page.cursorValue(cursor), limit);
         }
 
-        throw new Exception("cannot find or infer SQL to create table for class " + this.qualifiedClassName);
+        return this.findPage(clazz, Page.cursorValue(cursor), limit);
     }
 
-
-    public void resetTable() throws Exception
+    private static void checkPageArguments(int offset, int limit)
     {
-
-        this.dropTable();
+        if(limit < 1){
+            throw new IllegalArgumentException("page limit must be at least 1 (was " + limit + ")");
+        }
+        if(offset < 0){
+            throw new IllegalArgumentException("page offset must not be negative (was " + offset + ")");
+        }
+    }
+
+    private <T> Page<T> page(Class<T> clazz, List<T> rows, boolean more, String nextCursor)
+    {
+        T[] items = rows.toArray(newArray(clazz, rows.size()));
+        return new Page<>(items, more, nextCursor);
+    }
+
+    /**
+     * run the given SELECT (binding any '?' parameters in order) and return its rows as entity objects
+     */
+    protected <T> List<T> queryForList(Class<T> clazz, String sql, Object... parameters) throws SQLException
+    {
+        return this.queryForList("query", clazz, sql, parameters);
+    }
+
+    /**
+     * (operation = name the query is timed under, e.g. "findPage")
+     */
+    private <T> List<T> queryForList(String operation, Class<T> clazz, String sql, Object... parameters) throws SQLException
+    {
+        return this.queryForList(operation, clazz, this.dirtyTracker, sql, parameters);
+    }
+
+    /**
+     * (tracker = where to snapshot the rows read, or null to not track them - e.g. for scans)
+     */
+    private <T> List<T> queryForList(String operation, Class<T> clazz, DirtyTracker tracker, String sql, Object... parameters)
+            throws SQLException
+    {
+        OperationTimer timer = this.timer(operation);
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getReadConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))
+        ) {
+            for(int i = 0; i < parameters.length; i++){
+                TypeConverters.bindParameter(statement, i + 1, parameters[i]);
+            }
+
+            try (ResultSet resultset = timer.executed(statement.executeQuery())) {
+                RowMapper<T> rowMapper = RowMappers.forResultSet(clazz, resultset, tracker);
+                ArrayList<T> objectArrayList = new ArrayList<T>();
+
+                while(resultset.next()){
+                    objectArrayList.add(rowMapper.mapRow(resultset));
+                }
+                timer.mapped(objectArrayList.size());
+
+                return objectArrayList;
+            }
+        } catch (SQLException | RuntimeException e) {
+            timer.failed(e);
+            throw e;
+        } finally {
+            timer.end(sql);
+        }
+    }
+
+    /**
+     * run the given SELECT (binding any '?' parameters in order), mapping each row with the given mapper
+     * (e.g. for COUNT(*) or other aggregates - see Query.count())
+     */
+    <R> List<R> queryForRows(String operation, String sql, RowMapper<R> rowMapper, Object... parameters)
+    {
+        OperationTimer timer = this.timer(operation);
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getReadConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))
+        ) {
+            for(int i = 0; i < parameters.length; i++){
+                TypeConverters.bindParameter(statement, i + 1, parameters[i]);
+            }
+
+            try (ResultSet resultset = timer.executed(statement.executeQuery())) {
+                List<R> rows = new ArrayList<>();
+                while(resultset.next()){
+                    rows.add(rowMapper.mapRow(resultset));
+                }
+                timer.mapped(rows.size());
+
+                return rows;
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to SELECT from", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+    }
+
+    public <T> T find(Class<T> clazz, int id)
+    {
+        EntityCache entityCache = this.cache;
+        long stamp = 0;
+        if(entityCache != null){
+            T cached = entityCache.get(clazz, id);
+            if(cached != null){
+                this.track(cached);
+                return cached;
+            }
+            // (taken before the query - so a delete/update racing it stops the row read being cached)
+            stamp = entityCache.stamp(id);
+        }
+
+        T object = EntityMetadata.of(clazz).newInstance();
+
+        String sql = this.sqlTemplates(clazz).getFind();
+        OperationTimer timer = this.timer("find");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getReadConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))
+        ) {
+            statement.setInt(1, id);
+
+            try (ResultSet resultset = timer.executed(statement.executeQuery())) {
+                //----- RS to objects ----
+                RowMapper<T> rowMapper = RowMappers.forResultSet(clazz, resultset, this.dirtyTracker);
+
+                while(resultset.next())
+                {
+                    object = rowMapper.mapRow(resultset);
+                    if(entityCache != null){
+                        entityCache.put(object, stamp);
+                    }
+                    timer.mapped(1);
+                }
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to SELECT by id from", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+
+        return object;
+    }
+
+    /**
+     * return the entities with the given ids, in the same order as the ids
+     * (null entries for ids that don't exist)
+     *
+     * ids are fetched with WHERE id IN (?, ?, ...) queries of up to idsPerQuery ids each, on one connection
+     * (ids already in the entity cache are not queried)
+     *
+     * e.g.
+     *      Module[] modules = repo.findByIds(Module.class, new int[]{ 3, 1, 2 });
+     */
+    public <T> T[] findByIds(Class<T> clazz, int[] ids)
+    {
+        T[] results = newArray(clazz, ids.length);
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        EntityCache entityCache = this.cache;
+
+        // distinct ids not found in the cache
+        LinkedHashSet<Integer> idsToFetch = new LinkedHashSet<>();
+        for(int i = 0; i < ids.length; i++){
+            T cached = (entityCache != null) ? entityCache.get(clazz, ids[i]) : null;
+            if(cached != null){
+                results[i] = cached;
+            } else {
+                idsToFetch.add(ids[i]);
+            }
+        }
+
+        if(idsToFetch.isEmpty()){
+            for(T cached : results){
+                this.track(cached);
+            }
+            return results;
+        }
+
+        Map<Integer, T> found = new HashMap<>();
+        Integer[] pending = idsToFetch.toArray(new Integer[0]);
+        Map<Integer, Long> stamps = new HashMap<>();
+        if(entityCache != null){
+            for(Integer id : pending){
+                stamps.put(id, entityCache.stamp(id));
+            }
+        }
+        String sql = "";
+        OperationTimer timer = this.timer("findByIds");
+
+        try (Connection connection = timer.connected(DatabaseManager.getReadConnection(silent))) {
+            for(int start = 0; start < pending.length; start += this.idsPerQuery){
+                int end = Math.min(start + this.idsPerQuery, pending.length);
+                sql = this.sqlTemplates(clazz).getFindByIds(end - start);
+
+                try (PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))) {
+                    for(int i = start; i < end; i++){
+                        statement.setInt(i - start + 1, pending[i]);
+                    }
+
+                    try (ResultSet resultset = timer.executed(statement.executeQuery())) {
+                        RowMapper<T> rowMapper = RowMappers.forResultSet(clazz, resultset, this.dirtyTracker);
+                        int foundBefore = found.size();
+                        while(resultset.next()){
+                            T object = rowMapper.mapRow(resultset);
+                            int id = metadata.getId(object);
+                            found.put(id, object);
+                            if(entityCache != null){
+                                entityCache.put(object, stamps.get(id));
+                            }
+                        }
+                        timer.mapped(found.size() - foundBefore);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to SELECT by ids from", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+
+        // the same id asked for more than once gets a separate copy each time
+        // (rows read were snapshotted by the row mapper - entities from the cache, and copies, are snapshotted here)
+        Set<Integer> used = new HashSet<>();
+        for(int i = 0; i < ids.length; i++){
+            T object = found.get(ids[i]);
+            if(results[i] == null && object != null){
+                if(used.add(ids[i])){
+                    results[i] = object;
+                    continue;
+                }
+                results[i] = metadata.copy(object);
+            }
+            this.track(results[i]);
+        }
+
+        return results;
+    }
+
+    /**
+     * return a loader that gathers up single-id loads made within windowMillis of each other
+     * and fetches them with one findByIds() query
+     *
+     * e.g.
+     *      CoalescingLoader<Module> loader = repo.coalescingLoader(Module.class, 2);
+     *      CompletableFuture<Module> module = loader.load(3);
+     */
+    public <T> CoalescingLoader<T> coalescingLoader(Class<T> clazz, long windowMillis)
+    {
+        return new CoalescingLoader<>(this, clazz, windowMillis, this.idsPerQuery);
+    }
+
+    /**
+     * as coalescingLoader(clazz, windowMillis), with each batch fetched on the given executor
+     */
+    public <T> CoalescingLoader<T> coalescingLoader(Class<T> clazz, long windowMillis, Executor fetchers)
+    {
+        return new CoalescingLoader<>(this, clazz, windowMillis, this.idsPerQuery, fetchers);
+    }
+
+    public int getIdsPerQuery()
+    {
+        return idsPerQuery;
+    }
+
+    /**
+     * max number of ids in each WHERE id IN (...) query made by findByIds()
+     */
+    public void setIdsPerQuery(int idsPerQuery)
+    {
+        this.idsPerQuery = Math.max(1, idsPerQuery);
+    }
+
+    /**
+     * delete record for given ID
+     */
+    public void delete(int id)
+    {
+        Transaction transaction = DatabaseManager.currentTransaction();
+        if(transaction != null && transaction.isWriteBehind()){
+            transaction.queueDelete(this, id);
+            return;
+        }
+
+        String sql = "DELETE from " + this.tableName + " WHERE id = ?";
+        OperationTimer timer = this.timer("delete");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))
+        ) {
+            statement.setInt(1, id);
+            timer.executed(statement.executeUpdate());
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to DELETE from", sql, e);
+        } finally {
+            timer.end(sql);
+
+            EntityCache entityCache = this.cache;
+            if(entityCache != null){
+                entityCache.invalidate(id);
+            }
+        }
+    }
+
+
+
+    /**
+     * delete the rows with the given ids, using JDBC batches (batchSize ids at a time) inside one transaction
+     *
+     * returns the number of rows deleted for each id (1, or 0 if there was no such row) -
+     * if any DELETE fails the whole transaction is rolled back and a DatabaseException is thrown
+     */
+    public int[] deleteMany(int[] ids)
+    {
+        int[] results = new int[ids.length];
+        if(ids.length == 0){
+            return results;
+        }
+
+        String sql = "DELETE from " + this.tableName + " WHERE id = ?";
+        OperationTimer timer = this.timer("deleteMany");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))
+        ) {
+            connection.setAutoCommit(false);
+            try {
+                for(int start = 0; start < ids.length; start += this.batchSize){
+                    int end = Math.min(start + this.batchSize, ids.length);
+
+                    for(int i = start; i < end; i++){
+                        statement.setInt(1, ids[i]);
+                        statement.addBatch();
+                    }
+
+                    int[] updateCounts = timer.executed(statement.executeBatch());
+                    System.arraycopy(updateCounts, 0, results, start, end - start);
+                }
+
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to DELETE many rows from", sql, e);
+        } finally {
+            timer.end(sql);
+
+            EntityCache entityCache = this.cache;
+            if(entityCache != null){
+                for(int id : ids){
+                    entityCache.invalidate(id);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * delete all records
+     *
+     * e.g.
+     *      TRUNCATE TABLE module       (SQLite: DELETE from module)
+     */
+
+    public void deleteAll()
+    {
+        String sql = DatabaseManager.getDialect().getDeleteAllSql(this.tableName);
+        OperationTimer timer = this.timer("deleteAll");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+            Statement statement = timer.prepared(connection.createStatement())
+        ) {
+            timer.executed(statement.executeUpdate(sql));
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to TRUNCATE", sql, e);
+        } finally {
+            timer.end(sql);
+            this.clearCache();
+        }
+    }
+
+
+    /**
+     * start a query on this table - see Query
+     *
+     * e.g.
+     *      List<Module> modules = repo.query(Module.class).select("id", "title").where("price", Operator.GT, 10).list();
+     */
+    public <T> Query<T> query(Class<T> clazz)
+    {
+        return new Query<>(this, clazz);
+    }
+
+    /**
+     * number of rows in the table - counted by the DB, so no rows are fetched
+     *
+     * SELECT COUNT(*) from module
+     *
+     * (to count just some rows, e.g. repo.query(Module.class).where("price", Operator.GT, 10).count() - see Query)
+     */
+    public long count()
+    {
+        String sql = "SELECT COUNT(*) from " + this.tableName;
+        return this.queryForRows("count", sql, resultset -> resultset.getLong(1)).get(0);
+    }
+
+    /**
+     * number of rows where the column's value compares to the given value, e.g. count(Module.class, "price", Operator.GT, 10)
+     *
+     * SELECT COUNT(*) from module WHERE price > ?
+     */
+    public <T> long count(Class<T> clazz, String columnName, Operator operator, Object value)
+    {
+        return this.query(clazz).where(columnName, operator, value).count();
+    }
+
+    /**
+     * whether there is a row with the given id (unlike find(), which gives an empty object when there isn't)
+     *
+     * SELECT 1 from module WHERE id = ?
+     */
+    public boolean exists(int id)
+    {
+        String sql = "SELECT 1 from " + this.tableName + " WHERE id = ?";
+        return !this.queryForRows("exists", sql, resultset -> Boolean.TRUE, id).isEmpty();
+    }
+
+    /**
+     * return the rows whose given column contains the search text
+     *
+     * e.g.
+     *      Module[] modules = repo.searchByColumn(Module.class, "title", "java");
+     *      SELECT * from module WHERE title LIKE ?      ('%java%')
+     */
+    public <T> T[] searchByColumn(Class<T> clazz, String columnName, String searchText)
+    {
+        // wrap wildcard '%' around the search text for the SQL query
+        List<T> rows = this.query(clazz).where(columnName, Operator.LIKE, "%" + searchText + "%").list();
+
+        return rows.toArray(newArray(clazz, rows.size()));
+    }
+
+
+    /**
+     * insert new record into the DB table, setting its new id with setId()
+     * returns true if the new id was set (a failed INSERT throws a DatabaseException - e.g. ConstraintViolationException)
+     */
+    public <T> boolean insert(T object)
+    {
+        boolean success = false;
+
+        EntityMetadata<?> metadata = EntityMetadata.of(object.getClass());
+        String sql = this.sqlTemplates(object.getClass()).getInsert();
+        OperationTimer timer = this.timer("insert");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS))
+        ) {
+            int id = -99;
+            this.bindColumnsLessId(statement, metadata, object);
+            timer.executed(statement.executeUpdate());
+
+            try (ResultSet rs = statement.getGeneratedKeys()) {
+                if (rs.next()) {
+                    id = rs.getInt(1);
+                }
+            }
+
+            success = DatabaseUtility.setId(object, id);
+
+            if(success){
+                this.savedAll(new Object[]{ object });
+            }
+
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to INSERT into", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+
+        return success;
+    }
+
+    /**
+     * insert an array of entity objects into the DB table, using JDBC batches inside one transaction
+     *
+     * rows are sent batchSize at a time; the generated id of each row is set back into its object with setId()
+     * (set MYSQL_REWRITE_BATCHED_STATEMENTS=true to have the driver send each batch as one multi-row INSERT)
+     *
+     * returns per-row success - if any row fails the whole transaction is rolled back and a DatabaseException is thrown
+     */
+    public <T> boolean[] insertMany(T[] objects)
+    {
+        boolean[] results = new boolean[objects.length];
+        if(objects.length == 0){
+            return results;
+        }
+
+        Class<?> clazz = objects[0].getClass();
+        EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+        String sql = this.sqlTemplates(clazz).getInsert();
+        OperationTimer timer = this.timer("insertMany");
+
+        try (Connection connection = timer.connected(DatabaseManager.getConnection(silent))) {
+            connection.setAutoCommit(false);
+            try {
+                this.insertBatches(connection, metadata, sql, objects, results, timer);
+                connection.commit();
+
+                List<Object> inserted = new ArrayList<>();
+                for(int i = 0; i < objects.length; i++){
+                    if(results[i]){
+                        inserted.add(objects[i]);
+                    }
+                }
+                this.savedAll(inserted.toArray());
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to INSERT many rows into", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+
+        return results;
+    }
+
+    /**
+     * send the INSERTs batchSize rows at a time, setting each generated id back into its object
+     * (results[i] set true for each row inserted)
+     *
+     * if the driver only gives the last id of a batch (see Dialect.isBatchGeneratedKeys()), rows are sent one at a time
+     */
+    private void insertBatches(Connection connection, EntityMetadata<?> metadata, String sql, Object[] objects, boolean[] results,
+                               OperationTimer timer) throws SQLException
+    {
+        try (PreparedStatement statement = timer.prepared(connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS))) {
+            if(!DatabaseManager.getDialect().isBatchGeneratedKeys()){
+                for(int i = 0; i < objects.length; i++){
+                    this.bindColumnsLessId(statement, metadata, objects[i]);
+                    results[i] = timer.executed(statement.executeUpdate()) > 0;
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        if(results[i] && keys.next()){
+                            metadata.setId(objects[i], keys.getInt(1));
+                        }
+                    }
+                }
+                return;
+            }
+
+            for(int start = 0; start < objects.length; start += this.batchSize){
+                int end = Math.min(start + this.batchSize, objects.length);
+
+                for(int i = start; i < end; i++){
+                    this.bindColumnsLessId(statement, metadata, objects[i]);
+                    statement.addBatch();
+                }
+
+                int[] updateCounts = timer.executed(statement.executeBatch());
+
+                // generated keys come back in row order
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for(int i = start; i < end; i++){
+                        results[i] = (updateCounts[i - start] != Statement.EXECUTE_FAILED);
+                        if(results[i] && keys.next()){
+                            metadata.setId(objects[i], keys.getInt(1));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * number of rows sent to the DB per JDBC batch (or multi-row statement) by insertMany(), updateMany() and saveAll()
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * load a large number of new rows as fast as the DB allows - see bulkLoad(Iterator, boolean)
+     * (the stream is closed once loaded)
+     */
+    public <T> long bulkLoad(Stream<T> objects)
+    {
+        try (Stream<T> rows = objects) {
+            return this.bulkLoad(rows.iterator(), false);
+        }
+    }
+
+    public <T> long bulkLoad(Iterator<T> objects)
+    {
+        return this.bulkLoad(objects, false);
+    }
+
+    /**
+     * load a large number of new rows as fast as the DB allows, reading the objects as they are sent (so they needn't all be in memory)
+     *
+     * with MySQL and MYSQL_ALLOW_LOAD_LOCAL_INFILE=true, the rows are streamed to the server as LOAD DATA LOCAL INFILE text
+     * (see LoadDataStream), rowsPerBulkLoad rows per statement - otherwise they are sent with insertMany(), batchSize rows at a time
+     *
+     * unlike insertMany(), ids are not set back into the objects (and may have gaps), and the load is not one transaction (unless called inside
+     * DatabaseManager.inTransaction()) - and with LOAD DATA, rows that would be duplicate keys are skipped (with a warning logged)
+     *
+     * with rebuildIndexes, the table's non-unique declared indexes are dropped first and re-added once loaded (by ensureIndexes())
+     * - building an index once is quicker than updating it row by row, but queries can't use it meanwhile
+     *
+     * returns the number of rows loaded
+     *
+     * e.g.
+     *      repo.bulkLoad(Files.lines(csv).map(Module::parse));
+     */
+    public <T> long bulkLoad(Iterator<T> objects, boolean rebuildIndexes)
+    {
+        if(!objects.hasNext()){
+            return 0;
+        }
+
+        T first = objects.next();
+        Iterator<T> rows = Stream.concat(Stream.of(first),
+                StreamSupport.stream(Spliterators.spliteratorUnknownSize(objects, Spliterator.ORDERED), false)).iterator();
+
+        EntityMetadata<?> metadata = EntityMetadata.of(first.getClass());
+        Dialect dialect = DatabaseManager.getDialect();
+        String sql = dialect.getLoadData(this.tableName, metadata);
+
+        List<IndexDefinition> dropped = rebuildIndexes ? this.dropSecondaryIndexes(dialect) : Collections.emptyList();
+        try {
+            if(sql != null && DatabaseManager.getConfig().isAllowLoadLocalInfile()){
+                return this.loadData(metadata, sql, rows);
+            }
+
+            return this.insertChunks(rows);
+        } finally {
+            if(!dropped.isEmpty()){
+                this.restoreIndexes();
+            }
+        }
+    }
+
+    /**
+     * send the rows rowsPerBulkLoad at a time, each chunk encoded as it is read by the driver
+     */
+    private long loadData(EntityMetadata<?> metadata, String sql, Iterator<?> rows)
+    {
+        long loaded = 0;
+        long sent = 0;
+        OperationTimer timer = this.timer("bulkLoad");
+
+        try (Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+             Statement statement = timer.prepared(connection.createStatement())) {
+            JdbcStatement mysqlStatement = statement.unwrap(JdbcStatement.class);
+            while(rows.hasNext()){
+                LoadDataStream chunk = new LoadDataStream(metadata, rows, this.rowsPerBulkLoad);
+                mysqlStatement.setLocalInfileInputStream(chunk);
+                loaded += timer.executed(statement.executeUpdate(sql));
+                sent += chunk.getRowCount();
+            }
+            mysqlStatement.setLocalInfileInputStream(null);
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to LOAD DATA into", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+
+        if(loaded < sent){
+            LOG.warn("bulk load into table {} skipped {} of {} rows (e.g. duplicate keys)", this.tableName, sent - loaded, sent);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * insertMany() the rows batchSize at a time
+     */
+    private long insertChunks(Iterator<?> rows)
+    {
+        long inserted = 0;
+        List<Object> chunk = new ArrayList<>(this.batchSize);
+        while(rows.hasNext()){
+            chunk.add(rows.next());
+            if(chunk.size() == this.batchSize || !rows.hasNext()){
+                for(boolean result : this.insertMany(chunk.toArray())){
+                    if(result){
+                        inserted++;
+                    }
+                }
+                chunk.clear();
+            }
+        }
+
+        return inserted;
+    }
+
+    /**
+     * drop the declared non-unique indexes the table has (unique ones stay, so duplicates are still caught)
+     * returns the indexes dropped
+     */
+    private List<IndexDefinition> dropSecondaryIndexes(Dialect dialect)
+    {
+        String sql = dialect.getIndexNamesQuery();
+        OperationTimer timer = this.timer("dropIndexes");
+
+        try (Connection connection = timer.connected(DatabaseManager.getConnection(silent))) {
+            Set<String> existing = this.indexNames(connection, sql, timer);
+
+            List<IndexDefinition> dropped = new ArrayList<>();
+            for(IndexDefinition index : this.getIndexes()){
+                if(!index.isUnique() && existing.contains(index.getName().toLowerCase())){
+                    dropped.add(index);
+                }
+            }
+
+            if(!dropped.isEmpty()){
+                try (Statement statement = timer.prepared(connection.createStatement())) {
+                    for(String dropSql : dialect.getDropIndexes(this.tableName, dropped)){
+                        sql = dropSql;
+                        timer.executed(statement.executeUpdate(sql));
+                    }
+                }
+            }
+
+            return dropped;
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to DROP indexes of", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+    }
+
+    private void restoreIndexes()
+    {
+        try {
+            this.ensureIndexes();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MappingException("unable to re-add the indexes of table " + this.tableName, e);
+        }
+    }
+
+    public int getRowsPerBulkLoad()
+    {
+        return rowsPerBulkLoad;
+    }
+
+    /**
+     * max number of rows sent by each LOAD DATA statement of bulkLoad() - each statement is one transaction
+     */
+    public void setRowsPerBulkLoad(int rowsPerBulkLoad)
+    {
+        this.rowsPerBulkLoad = Math.max(1, rowsPerBulkLoad);
+    }
+
+
+    /**
+     * update the DB row with the object's id to match the object
+     *
+     * with dirty tracking on, and the object loaded/saved by this repository, only the columns changed since are SET
+     * (and no statement is sent if nothing has changed) - otherwise every column is SET
+     *
+     * e.g.
+     *  UPDATE module SET description = ? WHERE id = ?      ('GUI programming - version 2', 3)
+     */
+    public <T> void update(T object)
+    {
+        EntityMetadata<?> metadata = EntityMetadata.of(object.getClass());
+        SqlTemplates templates = this.sqlTemplates(object.getClass());
+
+        DirtyTracker tracker = this.dirtyTracker;
+        BitSet changedColumns = (tracker != null) ? tracker.changedColumns(object) : null;
+        if(changedColumns != null && changedColumns.isEmpty()){
+            // nothing to write
+            return;
+        }
+
+        Transaction transaction = DatabaseManager.currentTransaction();
+        if(transaction != null && transaction.isWriteBehind()){
+            transaction.queueUpdate(this, object);
+            return;
+        }
+
+        String sql = (changedColumns == null) ? templates.getUpdate() : templates.getUpdate(changedColumns);
+        OperationTimer timer = this.timer("update");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))
+        ) {
+            int numColumns;
+            if(changedColumns == null){
+                numColumns = this.bindColumnsLessId(statement, metadata, object);
+            } else {
+                numColumns = 0;
+                for(int i = changedColumns.nextSetBit(0); i >= 0; i = changedColumns.nextSetBit(i + 1)){
+                    numColumns++;
+                    metadata.getColumns().get(i).bind(statement, numColumns, object);
+                }
+            }
+            statement.setInt(numColumns + 1, metadata.getId(object));
+            timer.executed(statement.executeUpdate());
+
+            this.savedAll(new Object[]{ object });
+            if(changedColumns != null){
+                // the object may be partial (e.g. from a query() projection) - so don't let the cache serve it
+                EntityCache entityCache = this.cache;
+                if(entityCache != null){
+                    entityCache.invalidate(metadata.getId(object));
+                }
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            this.invalidateAll(new Object[]{ object });
+            throw this.error("trying to UPDATE", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+    }
+
+    /**
+     * update an array of entity objects, using JDBC batches (batchSize rows at a time) inside one transaction
+     *
+     * returns the number of rows affected by each object's UPDATE (normally 1, 0 if there is no row with its id) -
+     * if any UPDATE fails the whole transaction is rolled back and a DatabaseException is thrown
+     *
+     * e.g.
+     *      int[] rowsAffected = repo.updateMany(modules);
+     */
+    public <T> int[] updateMany(T[] objects)
+    {
+        int[] results = new int[objects.length];
+        if(objects.length == 0){
+            return results;
+        }
+
+        Class<?> clazz = objects[0].getClass();
+        EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+        String sql = this.sqlTemplates(clazz).getUpdate();
+        OperationTimer timer = this.timer("updateMany");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+            PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))
+        ) {
+            connection.setAutoCommit(false);
+            try {
+                for(int start = 0; start < objects.length; start += this.batchSize){
+                    int end = Math.min(start + this.batchSize, objects.length);
+
+                    for(int i = start; i < end; i++){
+                        int numColumns = this.bindColumnsLessId(statement, metadata, objects[i]);
+                        statement.setInt(numColumns + 1, metadata.getId(objects[i]));
+                        statement.addBatch();
+                    }
+
+                    int[] updateCounts = timer.executed(statement.executeBatch());
+                    System.arraycopy(updateCounts, 0, results, start, end - start);
+                }
+
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            this.savedAll(objects);
+        } catch (Exception e) {
+            timer.failed(e);
+            this.invalidateAll(objects);
+            throw this.error("trying to UPDATE many rows in", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+
+        return results;
+    }
+
+    /**
+     * insert or update an array of entity objects inside one transaction
+     *
+     * - objects with id 0 or -1 (not yet saved) are INSERTed in JDBC batches, and get their new id via setId()
+     * - the rest are upserted with multi-row INSERT .. ON DUPLICATE KEY UPDATE statements of up to batchSize rows
+     *   (a row whose id no longer exists is inserted again with that id)
+     *
+     * returns the number of rows affected, as counted by MySQL: 1 per row inserted, 2 per row changed, and 1 per row
+     * already up to date (Connector/J reports rows found, not rows changed), or with SQLite 1 per row - if anything fails
+     * the whole transaction is rolled back and a DatabaseException is thrown
+     *
+     * e.g.
+     *      int rowsAffected = repo.saveAll(modules);
+     */
+    public <T> int saveAll(T[] objects)
+    {
+        if(objects.length == 0){
+            return 0;
+        }
+
+        Class<?> clazz = objects[0].getClass();
+        EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+        SqlTemplates templates = this.sqlTemplates(clazz);
+
+        List<Object> newObjects = new ArrayList<>();
+        List<Object> existingObjects = new ArrayList<>();
+        for(T object : objects){
+            if(metadata.getId(object) <= 0){
+                newObjects.add(object);
+            } else {
+                existingObjects.add(object);
+            }
+        }
+
+        // stay under the limit on placeholders per statement (65,535 for MySQL)
+        int parametersPerRow = metadata.getColumnsLessId().size() + 1;
+        int rowsPerStatement = Math.max(1, Math.min(this.batchSize, DatabaseManager.getDialect().getMaxParameters() / parametersPerRow));
+
+        String sql = templates.getInsert();
+        int rowsAffected = 0;
+        OperationTimer timer = this.timer("saveAll");
+
+        try (Connection connection = timer.connected(DatabaseManager.getConnection(silent))) {
+            connection.setAutoCommit(false);
+            try {
+                if(!newObjects.isEmpty()){
+                    boolean[] inserted = new boolean[newObjects.size()];
+                    this.insertBatches(connection, metadata, sql, newObjects.toArray(), inserted, timer);
+                    for(boolean success : inserted){
+                        rowsAffected += success ? 1 : 0;
+                    }
+                }
+
+                for(int start = 0; start < existingObjects.size(); start += rowsPerStatement){
+                    int end = Math.min(start + rowsPerStatement, existingObjects.size());
+                    sql = templates.getUpsert(end - start);
+
+                    try (PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))) {
+                        int parameterIndex = 0;
+                        for(int i = start; i < end; i++){
+                            Object object = existingObjects.get(i);
+                            statement.setInt(++parameterIndex, metadata.getId(object));
+                            for(ColumnMetadata column : metadata.getColumnsLessId()){
+                                column.bind(statement, ++parameterIndex, object);
+                            }
+                        }
+                        rowsAffected += timer.executed(statement.executeUpdate());
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                // the rolled back rows were never saved - so leave those objects still looking new
+                for(Object object : newObjects){
+                    metadata.setId(object, 0);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            this.savedAll(objects);
+        } catch (Exception e) {
+            timer.failed(e);
+            this.invalidateAll(objects);
+            throw this.error("trying to SAVE many rows to", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+
+        return rowsAffected;
+    }
+
+    /**
+     * the objects now match their rows - so cache them, and take new dirty tracking snapshots
+     * (undone if the surrounding transaction, if any, is rolled back)
+     */
+    private void savedAll(Object[] objects)
+    {
+        Transaction transaction = DatabaseManager.currentTransaction();
+        if(transaction != null){
+            transaction.onRollback(() -> this.invalidateAll(objects));
+        }
+
+        EntityCache entityCache = this.cache;
+        for(Object object : objects){
+            if(entityCache != null){
+                entityCache.put(object);
+            }
+            this.track(object);
+        }
+    }
+
+    /**
+     * after a failed write, the DB state of the objects is unknown - so drop them from the cache and dirty tracking
+     */
+    private void invalidateAll(Object[] objects)
+    {
+        EntityCache entityCache = this.cache;
+        DirtyTracker tracker = this.dirtyTracker;
+        for(Object object : objects){
+            if(entityCache != null){
+                entityCache.invalidate(DatabaseUtility.getId(object));
+            }
+            if(tracker != null){
+                tracker.forget(object);
+            }
+        }
+    }
+
+    /**
+     * drop the table associated with this repository
+     *
+     * DROP TABLE IF EXISTS module
+     */
+    public void dropTable()
+    {
+        String sql = "DROP TABLE IF EXISTS " + this.tableName;
+        OperationTimer timer = this.timer("dropTable");
+
+        try (
+            Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+            Statement statement = timer.prepared(connection.createStatement())
+        ) {
+            timer.executed(statement.executeUpdate(sql));
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to DROP", sql, e);
+        } finally {
+            timer.end(sql);
+            this.clearCache();
+        }
+    }
+
+    /**
+     * create the table associated with this repository
+     *
+     * SQL - optional SQL CREATE statement
+     *
+
+    CREATE TABLE IF NOT EXISTS movie (
+        id integer PRIMARY KEY AUTO_INCREMENT,
+        title text,
+        price float,
+        category text
+    )
+
+     */
+
+    public void createTable() throws Exception
+    {
+        List<String> statements = this.inferStatementsFromPropertyTypes();
+        String sql = "";
+
+        OperationTimer timer = this.timer("createTable");
+        try (
+            Connection connection = timer.connected(DatabaseManager.getConnection(silent));
+            Statement statement = timer.prepared(connection.createStatement())
+        ) {
+            for(String createSql : statements){
+                sql = createSql;
+                timer.executed(statement.executeUpdate(sql));
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to CREATE", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+    }
+
+    public String getSqlToCreateTable() throws Exception
+    {
+        // try to infer from types of entity class properties
+        String sql = this.inferSqlFromPropertyTypes();
+
+        if(!sql.isEmpty()){
+            return sql;
+        }
+
+        throw new MappingException("cannot find or infer SQL to create table for class " + this.qualifiedClassName);
+    }
+
+
+    public void resetTable() throws Exception
+    {
+
+        this.dropTable();
         this.createTable();
         this.deleteAll();
     }
@@ -579,38 +1805,154 @@ public abstract class DatabaseTableRepository
      *      id integer PRIMARY KEY AUTO_INCREMENT,
      *      title text,
      *      price float,
-     *      category text
+     *      category varchar(255),
+     *      KEY idx_category (category(255))
      *  )
+     *
+     * String properties become text columns - or varchar(n) with @Column(length = n),
+     * or varchar(255) if they are indexed (see getIndexes())
+     *
+     * (for SQLite the types are translated, and each index is a separate CREATE INDEX - see Dialect.getCreateTable())
      */
     public String inferSqlFromPropertyTypes() throws Exception
+    {
+        return String.join(";\n", this.inferStatementsFromPropertyTypes());
+    }
+
+    /**
+     * the statements to create the table - see inferSqlFromPropertyTypes()
+     */
+    private List<String> inferStatementsFromPropertyTypes() throws Exception
     {
         LinkedHashMap<String, String> sqlTypesMap = new LinkedHashMap<>();
 
         DatabaseUtility dbUtility = new DatabaseUtility();
-        String sql = "";
+        Dialect dialect = DatabaseManager.getDialect();
 
         Class<?> clazz = Class.forName(this.qualifiedClassName);
-        Field[] fields = clazz.getDeclaredFields();
+        EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+        List<IndexDefinition> indexes = this.getIndexes();
+
+        // all properties except 'id'
+        for (ColumnMetadata column : metadata.getColumnsLessId()) {
+            String mySQLtype = dbUtility.dbDataType(column.getType());
+            if(column.getType() == String.class){
+                if(column.getLength() > 0){
+                    mySQLtype = "varchar(" + column.getLength() + ")";
+                } else if(DatabaseTableRepository.isIndexed(indexes, column.getName())){
+                    mySQLtype = "varchar(" + IndexDefinition.DEFAULT_STRING_INDEX_LENGTH + ")";
+                }
+            }
+            sqlTypesMap.put(column.getName(), dialect.columnType(mySQLtype));
+        }
+
+        return dialect.getCreateTable(this.tableName, dbUtility.dbPropertyTypeList(sqlTypesMap), indexes, metadata);
+    }
+
+    /**
+     * declare an index for this table, in addition to any from @Column / @Index annotations on the entity class
+     * (e.g. for an entity class you can't annotate) - call before createTable() / ensureIndexes()
+     *
+     * e.g.
+     *      repo.addIndex("idx_category_price", false, "category", "price");
+     */
+    public void addIndex(String name, boolean unique, String... columns) throws Exception
+    {
+        IndexDefinition index = new IndexDefinition(name, unique, columns);
+        // check the columns exist now, rather than when the SQL is built
+        index.getSql(EntityMetadata.of(Class.forName(this.qualifiedClassName)));
+        this.addedIndexes.add(index);
+    }
+
+    /**
+     * every index declared for this table - from annotations, then from addIndex()
+     */
+    public List<IndexDefinition> getIndexes() throws Exception
+    {
+        List<IndexDefinition> indexes = new ArrayList<>(EntityMetadata.of(Class.forName(this.qualifiedClassName)).getIndexes());
+        indexes.addAll(this.addedIndexes);
+        return indexes;
+    }
+
+    private static boolean isIndexed(List<IndexDefinition> indexes, String columnName)
+    {
+        for(IndexDefinition index : indexes){
+            if(index.getColumns().contains(columnName)){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * add any declared indexes (see getIndexes()) the table doesn't have yet, comparing by name with information_schema
+     *
+     * indexes are added online (ALGORITHM=INPLACE, LOCK=NONE), so the table stays readable and writable meanwhile
+     * returns the names of the indexes added
+     *
+     * e.g.
+     *      ALTER TABLE module ADD KEY idx_title (title(255)), ALGORITHM=INPLACE, LOCK=NONE
+     *
+     * (SQLite: compared with sqlite_master, and added with CREATE INDEX - see Dialect.getAddIndexes())
+     */
+    public List<String> ensureIndexes() throws Exception
+    {
+        EntityMetadata<?> metadata = EntityMetadata.of(Class.forName(this.qualifiedClassName));
+        List<String> added = new ArrayList<>();
+        Dialect dialect = DatabaseManager.getDialect();
+        String sql = dialect.getIndexNamesQuery();
 
-        for (Field field : fields) {
-            String propertyName = field.getName();
-            Object propertyType = field.getType();
+        OperationTimer timer = this.timer("ensureIndexes");
 
-            String mySQLtype = dbUtility.dbDataType(propertyType);
+        try (Connection connection = timer.connected(DatabaseManager.getConnection(silent))) {
+            Set<String> existing = this.indexNames(connection, sql, timer);
 
-            // if not 'id' add to map
-            if("id" != propertyName){
-                sqlTypesMap.put(propertyName, mySQLtype);
+            List<IndexDefinition> missing = new ArrayList<>();
+            for(IndexDefinition index : this.getIndexes()){
+                if(!existing.contains(index.getName().toLowerCase())){
+                    missing.add(index);
+                    added.add(index.getName());
+                }
+            }
+
+            if(missing.isEmpty()){
+                return added;
+            }
+
+            try (Statement statement = timer.prepared(connection.createStatement())) {
+                for(String addSql : dialect.getAddIndexes(this.tableName, missing, metadata)){
+                    sql = addSql;
+                    timer.executed(statement.executeUpdate(sql));
+                }
+            }
+        } catch (Exception e) {
+            timer.failed(e);
+            throw this.error("trying to ADD indexes to", sql, e);
+        } finally {
+            timer.end(sql);
+        }
+
+        return added;
+    }
+
+    /**
+     * the (lower case) names of the table's indexes, by the dialect's index names query
+     */
+    private Set<String> indexNames(Connection connection, String sql, OperationTimer timer) throws SQLException
+    {
+        Set<String> names = new HashSet<>();
+        try (PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))) {
+            statement.setString(1, this.tableName);
+            try (ResultSet resultset = timer.executed(statement.executeQuery())) {
+                while(resultset.next()){
+                    names.add(resultset.getString(1).toLowerCase());
+                }
+                timer.mapped(0);
             }
         }
 
-        sql = "CREATE TABLE IF NOT EXISTS "
-            + this.tableName
-            + " ("
-            + "id integer PRIMARY KEY AUTO_INCREMENT, "
-            + dbUtility.dbPropertyTypeList(sqlTypesMap)
-            + ")";
-        return sql;
+        return names;
     }
 
 //    public static LinkedHashMap<String, Object> objectToMapLessId(Object object)
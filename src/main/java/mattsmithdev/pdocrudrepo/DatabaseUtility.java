@@ -49,29 +49,13 @@ public class DatabaseUtility
     {
         List<String> strings = new LinkedList<>();
 
-        Class<?> clazz = object.getClass();
-        Field[] fields = clazz.getDeclaredFields();
+        EntityMetadata<?> metadata = EntityMetadata.of(object.getClass());
 
-        List<?> list; // from your method
-        for (Field field : fields) {
-            String fieldName = field.getName();
-
-//            Field field = clazz.getField("fieldName"); //Note, this can throw an exception if the field doesn't exist.
-
-            try {
-                Method getter = clazz.getMethod(getterName(fieldName));
-                Object fieldValue = getter.invoke(object);
-
-
-//                Object fieldValue = field.get(object);\
-                if(fieldName != "id") {
-                    strings.add(fieldName + " = " + fieldValue);
-                }
+        for (ColumnMetadata column : metadata.getColumnsLessId()) {
+            String fieldName = column.getName();
 
-            } catch (Exception e) {
-                System.out.println("exception occurred objectToArrayMapLessId");
-                strings.add("exception for field: " + field.getName() + "\n" + e.getMessage());
-            }
+            Object fieldValue = column.get(object);
+            strings.add(fieldName + " = " + fieldValue);
         }
 
 
@@ -98,29 +82,7 @@ public class DatabaseUtility
 
     public static LinkedHashMap<String, String> objectToMapLess(Object object)
     {
-        LinkedHashMap<String, String> map = new LinkedHashMap<>();
-
-        Class<?> clazz = object.getClass();
-        Field[] fields = clazz.getDeclaredFields();
-
-        List<?> list; // from your method
-        for (Field field : fields) {
-            String fieldName = field.getName();
-
-           try {
-                Method getter = clazz.getMethod(getterName(fieldName));
-                String fieldValue = getter.invoke(object)+"";
-                if(field.getType() == String.class){
-                    fieldValue = "'" + fieldValue + "'";
-                }
-
-                map.put(fieldName, fieldValue);
-            } catch (Exception e) {
-                System.out.println("exception occurred objectToArrayMapLessId");
-            }
-        }
-
-        return map;
+        return objectToMap(object, EntityMetadata.of(object.getClass()).getColumns());
     }
 
     /**
@@ -128,19 +90,7 @@ public class DatabaseUtility
      */
     public static <T> int getId(T object)
     {
-        int id = -1;
-        try {
-            Class<?> clazz = object.getClass();
-            Method getter = clazz.getMethod("getId");
-            id = (int)getter.invoke(object);
-
-        } catch (Exception e) {
-            System.out.println("DatabaseUtilities.getId() - error, can't invoke getId() on object");
-            System.out.println(object);
-            System.out.println(e.getMessage());
-        }
-
-        return id;
+        return EntityMetadata.of(object.getClass()).getId(object);
     }
 
     /**
@@ -148,17 +98,7 @@ public class DatabaseUtility
      */
     public static <T> boolean setId(T object, int id)
     {
-        try {
-            Class<?> clazz = object.getClass();
-            Method setterMethod = clazz.getDeclaredMethod("setId", int.class);
-            Object[] args = {id};
-            setterMethod.invoke(object, args);
-
-        } catch (Exception e) {
-            System.out.println("DatabaseUtilit  ies.getId() - error, can't invoke getId() on object");
-            System.out.println(object);
-            System.out.println(e.getMessage());
-        }
+        EntityMetadata.of(object.getClass()).setId(object, id);
 
         return (id == DatabaseUtility.getId(object));
     }
@@ -220,29 +160,23 @@ public class DatabaseUtility
 
     public static LinkedHashMap<String, String> objectToMapLessId(Object object)
     {
-        LinkedHashMap<String, String> map = new LinkedHashMap<>();
-
-        Class<?> clazz = object.getClass();
-        Field[] fields = clazz.getDeclaredFields();
+        return objectToMap(object, EntityMetadata.of(object.getClass()).getColumnsLessId());
+    }
 
-        List<?> list; // from your method
-        for (Field field : fields) {
-            String fieldName = field.getName();
+    /**
+     * field name => SQL value string for the given columns of the object
+     */
+    private static LinkedHashMap<String, String> objectToMap(Object object, List<ColumnMetadata> columns)
+    {
+        LinkedHashMap<String, String> map = new LinkedHashMap<>();
 
-            // ignore id field
-            if(fieldName != "id"){
-                try {
-                    Method getter = clazz.getMethod(getterName(fieldName));
-                    String fieldValue = getter.invoke(object)+"";
-                    if(field.getType() == String.class){
-                        fieldValue = "'" + fieldValue + "'";
-                    }
-
-                    map.put(fieldName, fieldValue);
-                } catch (Exception e) {
-                    System.out.println("exception occurred objectToArrayMapLessId");
-                }
+        for (ColumnMetadata column : columns) {
+            String fieldValue = column.get(object)+"";
+            if(column.getType() == String.class){
+                fieldValue = "'" + fieldValue + "'";
             }
+
+            map.put(column.getName(), fieldValue);
         }
 
         return map;
@@ -270,20 +204,10 @@ public class DatabaseUtility
      */
     public String dbDataType(Object javaType)
     {
-        if(javaType.equals(Double.TYPE))
-            return "float";
-
-        if(javaType.equals(Float.TYPE))
-            return "float";
-
-        if(javaType.equals(Boolean.TYPE))
-            return "tinyint";
-
-        if(javaType.equals(Integer.TYPE))
-            return "int";
-
-        if(javaType.equals(String.class))
-            return "text";
+        // e.g. double -> double, long -> bigint, UUID -> binary(16) - see TypeConverters
+        TypeConverter<?> converter = (javaType instanceof Class) ? TypeConverters.forType((Class<?>) javaType) : null;
+        if(converter != null)
+            return converter.getSqlType();
 
         return "text";
 
@@ -308,7 +232,7 @@ public class DatabaseUtility
      * e.g.
      * input:
      *          "title" => "String",
-     *          "price" => "float",
+     *          "price" => "double",
      *          "category" => "String"
      *
      * output
@@ -322,8 +246,8 @@ public class DatabaseUtility
         List<String> strings = new LinkedList<>();
 
         for (Map.Entry<String, String> entry : sqlTypesMap.entrySet()) {
-            String key = (String) entry.getKey();
-            String type = (String) entry.getValue().toString();
+            String key = entry.getKey();
+            String type = entry.getValue();
 
             strings.add(key + " " + type);
         }
@@ -407,6 +331,62 @@ public class DatabaseUtility
         return "(" + sql + ")";
     }
 
+    /**
+     * given array of field names output comma separated list of '?' placeholder assignments
+     * e.g.
+     * input:
+     *      ['title', 'price']
+     *
+     * output
+     *      'title = ?, price = ?'
+     */
+    public static String fieldListToPlaceholderUpdateString(String[] columns)
+    {
+        List<String> strings = new LinkedList<>();
+
+        for(String column: columns){
+            strings.add(column + " = ?");
+        }
+
+        return String.join(", ", strings);
+    }
+
+    /**
+     * given number of columns, output parenthesised list of '?' placeholders
+     * e.g.
+     * input:
+     *      3
+     *
+     * output
+     *      'VALUES (?, ?, ?)'
+     */
+    public static String placeholderValuesString(int numColumns)
+    {
+        return "VALUES (" + placeholderList(numColumns) + ")";
+    }
+
+    /**
+     * given number of values, output comma separated list of '?' placeholders
+     * e.g.
+     * input:
+     *      3
+     *
+     * output
+     *      '?, ?, ?'
+     */
+    public static String placeholderList(int numValues)
+    {
+        StringBuilder builder = new StringBuilder(numValues * 3);
+        for(int i = 0; i < numValues; i++){
+            if(i > 0){
+                builder.append(", ");
+            }
+            builder.append('?');
+        }
+
+        return builder.toString();
+    }
+
     public static String[] fieldNames(Field[] fields)
     {
         String[] fieldNames = new String[fields.length];
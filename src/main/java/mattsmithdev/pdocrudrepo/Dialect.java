@@ -0,0 +1,123 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * the SQL and driver details that differ between databases - chosen with DatabaseConfig.setDialect()
+ *
+ *      Dialect.MYSQL     MySQL / MariaDB server via Connector/J (the default)
+ *      Dialect.SQLITE    an embedded SQLite file via xerial sqlite-jdbc, in WAL mode (set SQLITE_FILE in .env)
+ *
+ * repositories build their SQL with the dialect of the current DatabaseConfig, e.g.
+ *      MySQL:   id integer PRIMARY KEY AUTO_INCREMENT  ...  ON DUPLICATE KEY UPDATE title = VALUES(title)
+ *      SQLite:  id integer PRIMARY KEY                 ...  ON CONFLICT(id) DO UPDATE SET title = excluded.title
+ */
+public interface Dialect
+{
+    Dialect MYSQL = new MySqlDialect();
+    Dialect SQLITE = new SqliteDialect();
+
+    /**
+     * e.g. "mysql"
+     */
+    String getName();
+
+    /**
+     * JDBC URL of the application database, e.g. jdbc:mysql://127.0.0.1:3306/evote
+     */
+    String getDsn(DatabaseConfig config);
+
+    /**
+     * JDBC URL of the server, with no database selected - for creating the database, e.g. jdbc:mysql://127.0.0.1:3306/
+     */
+    String getServerDsn(DatabaseConfig config);
+
+    /**
+     * JDBC URL of the application database on a read replica endpoint, e.g. "127.0.0.1:3307" => jdbc:mysql://127.0.0.1:3307/evote
+     * (throws UnsupportedOperationException if this database has no replicas)
+     */
+    String getReplicaDsn(DatabaseConfig config, String endpoint);
+
+    /**
+     * driver properties for each connection
+     */
+    Properties getConnectionProperties(DatabaseConfig config);
+
+    /**
+     * make sure the database exists - called once, before the connection pool starts
+     */
+    void createDatabaseIfNotExists(DatabaseConfig config, boolean silent);
+
+    /**
+     * this database's column type for a TypeConverter's (MySQL) column type, e.g. "datetime(6)"
+     */
+    String columnType(String sqlType);
+
+    /**
+     * the auto-numbered primary key column, e.g. "id integer PRIMARY KEY AUTO_INCREMENT"
+     */
+    String getIdColumn();
+
+    /**
+     * the statements creating the table with the given column list (e.g. "title text, price double") and indexes
+     */
+    List<String> getCreateTable(String tableName, String columns, List<IndexDefinition> indexes, EntityMetadata<?> metadata);
+
+    /**
+     * query for the names of a table's indexes (with the table name as its one parameter)
+     */
+    String getIndexNamesQuery();
+
+    /**
+     * the statements adding the given indexes to an existing table
+     */
+    List<String> getAddIndexes(String tableName, List<IndexDefinition> indexes, EntityMetadata<?> metadata);
+
+    /**
+     * the statements dropping the given indexes (e.g. before a bulk load - see DatabaseTableRepository.bulkLoad())
+     */
+    List<String> getDropIndexes(String tableName, List<IndexDefinition> indexes);
+
+    /**
+     * the statement streaming rows in from the client (see LoadDataStream), or null if there isn't one -
+     * bulkLoad() then falls back to insertMany()
+     */
+    String getLoadData(String tableName, EntityMetadata<?> metadata);
+
+    /**
+     * what follows a multi-row INSERT (id first) to update the rows that already exist,
+     * e.g. " ON DUPLICATE KEY UPDATE title = VALUES(title), price = VALUES(price)"
+     */
+    String getUpsertClause(String[] columnNamesLessId);
+
+    /**
+     * the row limit at the end of a SELECT, e.g. " LIMIT ?" or " LIMIT ? OFFSET ?" (limit then offset parameters)
+     */
+    String getLimitClause(boolean withOffset);
+
+    /**
+     * rows skipped at the end of a SELECT with no row limit, e.g. " LIMIT -1 OFFSET ?" (offset parameter)
+     */
+    String getOffsetClause();
+
+    /**
+     * e.g. TRUNCATE TABLE module
+     */
+    String getDeleteAllSql(String tableName);
+
+    /**
+     * whether getGeneratedKeys() after executeBatch() gives the id of every row (or just the last)
+     */
+    boolean isBatchGeneratedKeys();
+
+    /**
+     * most '?' parameters allowed in one statement
+     */
+    int getMaxParameters();
+
+    /**
+     * fetch size for statements whose rows are streamed (see DatabaseTableRepository.stream())
+     */
+    int getStreamingFetchSize(DatabaseConfig config);
+}
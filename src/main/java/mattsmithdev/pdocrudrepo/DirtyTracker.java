@@ -0,0 +1,149 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * remembers the column values of entity objects as they were last read from (or written to) the DB,
+ * so update() can send only the columns that have changed since
+ *
+ * objects are held by weak reference (and compared by identity, not equals()),
+ * so a snapshot goes away once its entity object is garbage collected
+ *
+ * rows read by the repository are snapshotted by their row mapper, from the values it read (see RowMappers) -
+ * snapshot() reads the getters instead, for objects that weren't just read (e.g. after insert/update)
+ * snapshots are kept in a ConcurrentHashMap, so threads reading at once (e.g. parallelScan()) don't wait on one lock
+ *
+ * e.g.
+ *      Module module = repo.find(Module.class, 3);   // snapshot taken
+ *      module.setPrice(99);
+ *      repo.update(module);   // UPDATE module SET price = ? WHERE id = ?
+ *      repo.update(module);   // nothing changed - no statement sent
+ */
+public class DirtyTracker
+{
+    private final ConcurrentHashMap<IdentityKey, Object[]> snapshots = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    /**
+     * record the current column values of the entity
+     */
+    public void snapshot(Object entity)
+    {
+        this.put(entity, values(EntityMetadata.of(entity.getClass()), entity));
+    }
+
+    /**
+     * record the given column values (indexed by ColumnMetadata.getIndex()) as the entity's snapshot
+     */
+    void put(Object entity, Object[] values)
+    {
+        this.purgeCollected();
+        this.snapshots.put(new IdentityKey(entity, this.collected), values);
+    }
+
+    /**
+     * the entity's current column values, from its getters
+     */
+    static Object[] values(EntityMetadata<?> metadata, Object entity)
+    {
+        List<ColumnMetadata> columns = metadata.getColumns();
+        Object[] values = new Object[columns.size()];
+        for(ColumnMetadata column : columns){
+            // copy arrays (e.g. byte[]), so changes made to them in place are noticed
+            values[column.getIndex()] = EntityMetadata.copyValue(column.get(entity));
+        }
+
+        return values;
+    }
+
+    /**
+     * stop tracking the entity (its next update() writes every column)
+     */
+    public void forget(Object entity)
+    {
+        this.snapshots.remove(new IdentityKey(entity, null));
+    }
+
+    /**
+     * indexes (ColumnMetadata.getIndex()) of the non-id columns whose values differ from the snapshot -
+     * an empty set if nothing has changed, or null if the entity has no snapshot (or its id has changed)
+     */
+    public BitSet changedColumns(Object entity)
+    {
+        Object[] values = this.snapshots.get(new IdentityKey(entity, null));
+        if(values == null){
+            return null;
+        }
+
+        BitSet changed = new BitSet(values.length);
+        for(ColumnMetadata column : EntityMetadata.of(entity.getClass()).getColumns()){
+            if(!Objects.deepEquals(values[column.getIndex()], column.get(entity))){
+                if(column.isId()){
+                    return null;
+                }
+                changed.set(column.getIndex());
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * number of entities being tracked
+     */
+    public int size()
+    {
+        this.purgeCollected();
+        return this.snapshots.size();
+    }
+
+    public void clear()
+    {
+        this.snapshots.clear();
+    }
+
+    private void purgeCollected()
+    {
+        Reference<?> reference;
+        while((reference = this.collected.poll()) != null){
+            this.snapshots.remove(reference);
+        }
+    }
+
+    /**
+     * weak reference to an entity, equal to another only if both refer to the same object
+     */
+    private static class IdentityKey extends WeakReference<Object>
+    {
+        private final int hash;
+
+        IdentityKey(Object entity, ReferenceQueue<Object> queue)
+        {
+            super(entity, queue);
+            this.hash = System.identityHashCode(entity);
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if(this == other){
+                return true;
+            }
+            if(!(other instanceof IdentityKey)){
+                return false;
+            }
+            Object entity = this.get();
+            return entity != null && entity == ((IdentityKey) other).get();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hash;
+        }
+    }
+}
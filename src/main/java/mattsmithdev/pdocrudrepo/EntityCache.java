@@ -0,0 +1,268 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * size-bounded LRU cache of entity objects, keyed by (entity class, id), with optional time-to-live
+ *
+ * the cache keeps its own copy of each entity, and get() returns a fresh copy,
+ * so callers changing the objects they are given can't corrupt the cached values
+ *
+ * a read fills the cache with put(entity, stamp), using the stamp(id) taken before it queried the DB -
+ * if the id was invalidated or written in between (e.g. by a delete() or update() racing the read), the row it read may be stale,
+ * so it isn't cached
+ *
+ * e.g.
+ *      repo.enableCache(10000, 60000);   // up to 10,000 entities, each kept for up to 1 minute
+ *      Module module = repo.find(Module.class, 3);   // DB query (miss)
+ *      module = repo.find(Module.class, 3);          // from cache (hit)
+ */
+public class EntityCache
+{
+    private static final int STAMP_SLOTS = 1024;
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    /**
+     * access-ordered, so the eldest entry is the least recently used
+     */
+    private final LinkedHashMap<CacheKey, CacheEntry> entries;
+    private final Set<Class<?>> entityClasses = ConcurrentHashMap.newKeySet();
+
+    /**
+     * invalidation counts, by id (ids sharing a slot share a count - that only means a read is sometimes not cached)
+     * plus the number of clear()s - all changed under the entries lock
+     */
+    private final long[] invalidations = new long[STAMP_SLOTS];
+    private long clears = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * ttlMillis <= 0 means entries never expire (they are only evicted when the cache is full)
+     */
+    public EntityCache(int maxSize, long ttlMillis)
+    {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = (ttlMillis > 0) ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : 0;
+
+        this.entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest)
+            {
+                boolean evict = size() > EntityCache.this.maxSize;
+                if(evict){
+                    evictionCount.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * return a copy of the cached entity, or null if not cached (or expired)
+     */
+    public <T> T get(Class<T> clazz, int id)
+    {
+        CacheKey key = new CacheKey(clazz, id);
+        Object cached = null;
+
+        synchronized (this.entries) {
+            CacheEntry entry = this.entries.get(key);
+            if(entry != null){
+                if(entry.isExpired(System.nanoTime())){
+                    this.entries.remove(key);
+                    this.evictionCount.incrementAndGet();
+                } else {
+                    cached = entry.entity;
+                }
+            }
+        }
+
+        if(cached == null){
+            this.missCount.incrementAndGet();
+            return null;
+        }
+
+        this.hitCount.incrementAndGet();
+        return clazz.cast(EntityMetadata.of(clazz).copy(cached));
+    }
+
+    /**
+     * cache (a copy of) the given entity just written to the DB, replacing any existing entry for its id
+     * (this moves the id's stamp on, so a read that started before the write can't replace it with the row it read)
+     */
+    public void put(Object entity)
+    {
+        EntityMetadata<?> metadata = EntityMetadata.of(entity.getClass());
+        int id = metadata.getId(entity);
+        CacheKey key = new CacheKey(entity.getClass(), id);
+        CacheEntry entry = new CacheEntry(metadata.copy(entity), this.expiresAt());
+
+        this.entityClasses.add(entity.getClass());
+        synchronized (this.entries) {
+            this.invalidations[slot(id)]++;
+            this.entries.put(key, entry);
+        }
+    }
+
+    /**
+     * the invalidation stamp of the given id - take it before reading the row from the DB, and pass it to put(entity, stamp)
+     */
+    public long stamp(int id)
+    {
+        synchronized (this.entries) {
+            return this.clears + this.invalidations[slot(id)];
+        }
+    }
+
+    /**
+     * cache (a copy of) an entity just read from the DB - unless its id has been invalidated (or the cache cleared)
+     * since stamp(id) was taken, as the row read may have been deleted or changed since
+     *
+     * returns true if it was cached
+     */
+    public boolean put(Object entity, long stamp)
+    {
+        EntityMetadata<?> metadata = EntityMetadata.of(entity.getClass());
+        int id = metadata.getId(entity);
+        CacheKey key = new CacheKey(entity.getClass(), id);
+        CacheEntry entry = new CacheEntry(metadata.copy(entity), this.expiresAt());
+
+        this.entityClasses.add(entity.getClass());
+        synchronized (this.entries) {
+            if(this.clears + this.invalidations[slot(id)] != stamp){
+                return false;
+            }
+            this.entries.put(key, entry);
+            return true;
+        }
+    }
+
+    /**
+     * remove any entity with the given id (of any class)
+     */
+    public void invalidate(int id)
+    {
+        synchronized (this.entries) {
+            this.invalidations[slot(id)]++;
+            for(Class<?> clazz : this.entityClasses){
+                this.entries.remove(new CacheKey(clazz, id));
+            }
+        }
+    }
+
+    /**
+     * remove all entries
+     */
+    public void clear()
+    {
+        synchronized (this.entries) {
+            this.clears++;
+            this.entries.clear();
+        }
+    }
+
+    private static int slot(int id)
+    {
+        return id & (STAMP_SLOTS - 1);
+    }
+
+    public int size()
+    {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    /**
+     * hits / (hits + misses) - 0 if the cache has not been used
+     */
+    public double getHitRatio()
+    {
+        long hits = this.hitCount.get();
+        long total = hits + this.missCount.get();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    private long expiresAt()
+    {
+        return (this.ttlNanos == 0) ? 0 : System.nanoTime() + this.ttlNanos;
+    }
+
+    private static class CacheKey
+    {
+        private final Class<?> clazz;
+        private final int id;
+
+        CacheKey(Class<?> clazz, int id)
+        {
+            this.clazz = clazz;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if(!(other instanceof CacheKey)){
+                return false;
+            }
+            CacheKey key = (CacheKey) other;
+            return this.id == key.id && this.clazz == key.clazz;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * this.clazz.hashCode() + this.id;
+        }
+    }
+
+    private static class CacheEntry
+    {
+        private final Object entity;
+
+        /**
+         * System.nanoTime() after which the entry is stale (0 = never)
+         */
+        private final long expiresAt;
+
+        CacheEntry(Object entity, long expiresAt)
+        {
+            this.entity = entity;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now)
+        {
+            return this.expiresAt != 0 && now - this.expiresAt > 0;
+        }
+    }
+}
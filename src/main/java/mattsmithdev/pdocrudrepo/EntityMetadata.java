@@ -0,0 +1,256 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * reflection results for an entity class, worked out once and then cached
+ *
+ * a property becomes a column if it is a non-static, non-transient field with a public getter
+ * (getX(), or isX() for boolean); the setter setX() is used when reading rows back
+ *
+ * indexes come from @Column(index = true / unique = true) on fields and @Index on the class
+ *
+ * e.g.
+ *      EntityMetadata<Module> metadata = EntityMetadata.of(Module.class);
+ *      for(ColumnMetadata column : metadata.getColumnsLessId()) ...
+ */
+public class EntityMetadata<T>
+{
+    private static final ConcurrentHashMap<Class<?>, EntityMetadata<?>> REGISTRY = new ConcurrentHashMap<>();
+
+    private final Class<T> entityClass;
+    private final Constructor<T> constructor;
+    private final List<ColumnMetadata> columns;
+    private final List<ColumnMetadata> columnsLessId;
+    private final Map<String, ColumnMetadata> columnsByName;
+    private final ColumnMetadata idColumn;
+    private final String[] columnNamesLessId;
+    private final List<IndexDefinition> indexes;
+
+    /**
+     * return the (cached) metadata for the given entity class
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMetadata<T> of(Class<T> clazz)
+    {
+        return (EntityMetadata<T>) REGISTRY.computeIfAbsent(clazz, EntityMetadata::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    private EntityMetadata(Class<?> clazz)
+    {
+        this.entityClass = (Class<T>) clazz;
+
+        Constructor<T> noArgsConstructor = null;
+        try {
+            noArgsConstructor = this.entityClass.getDeclaredConstructor();
+            noArgsConstructor.setAccessible(true);
+        } catch (Exception e) {
+            // no no-args constructor - newInstance() will fail with a helpful message
+        }
+        this.constructor = noArgsConstructor;
+
+        List<ColumnMetadata> allColumns = new ArrayList<>();
+        List<ColumnMetadata> columnsWithoutId = new ArrayList<>();
+        Map<String, ColumnMetadata> byName = new LinkedHashMap<>();
+        ColumnMetadata id = null;
+        List<IndexDefinition> declaredIndexes = new ArrayList<>();
+
+        for (Field field : clazz.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()){
+                continue;
+            }
+
+            String fieldName = field.getName();
+            Class<?> fieldType = field.getType();
+
+            Method getter = findMethod(clazz, DatabaseUtility.getterName(fieldName));
+            if(getter == null && fieldType == boolean.class){
+                getter = findMethod(clazz, "is" + DatabaseUtility.firstLetterCapitalize(fieldName));
+            }
+            if(getter == null){
+                continue;
+            }
+            Method setter = findMethod(clazz, DatabaseUtility.setterName(fieldName), fieldType);
+
+            Column columnAnnotation = field.getAnnotation(Column.class);
+            int length = (columnAnnotation != null) ? columnAnnotation.length() : 0;
+
+            ColumnMetadata column = new ColumnMetadata(fieldName, fieldType, getter, setter, allColumns.size(), length);
+            allColumns.add(column);
+
+            if(columnAnnotation != null && columnAnnotation.unique()){
+                declaredIndexes.add(new IndexDefinition(null, true, fieldName));
+            } else if(columnAnnotation != null && columnAnnotation.index()){
+                declaredIndexes.add(new IndexDefinition(null, false, fieldName));
+            }
+            byName.put(fieldName, column);
+
+            if(column.isId()){
+                id = column;
+            } else {
+                columnsWithoutId.add(column);
+            }
+        }
+
+        this.columns = Collections.unmodifiableList(allColumns);
+        this.columnsLessId = Collections.unmodifiableList(columnsWithoutId);
+        this.columnsByName = Collections.unmodifiableMap(byName);
+        this.idColumn = id;
+
+        this.columnNamesLessId = new String[columnsWithoutId.size()];
+        for(int i = 0; i < columnsWithoutId.size(); i++){
+            this.columnNamesLessId[i] = columnsWithoutId.get(i).getName();
+        }
+
+        for(Index index : clazz.getAnnotationsByType(Index.class)){
+            declaredIndexes.add(new IndexDefinition(index.name(), index.unique(), index.columns()));
+        }
+        for(IndexDefinition index : declaredIndexes){
+            for(String columnName : index.getColumns()){
+                if(!byName.containsKey(columnName)){
+                    throw new MappingException("index " + index.getName() + " refers to unknown column '" + columnName
+                            + "' of " + clazz.getName());
+                }
+            }
+        }
+        this.indexes = Collections.unmodifiableList(declaredIndexes);
+    }
+
+    private static Method findMethod(Class<?> clazz, String name, Class<?>... parameterTypes)
+    {
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * create a new (empty) entity using its no-args constructor
+     */
+    public T newInstance()
+    {
+        if(this.constructor == null){
+            throw new MappingException("entity class " + this.entityClass.getName() + " has no no-args constructor");
+        }
+
+        try {
+            return this.constructor.newInstance();
+        } catch (Exception e) {
+            throw new MappingException("unable to create new object for provided class: " + this.entityClass, e);
+        }
+    }
+
+    /**
+     * return a new entity with the same property values as the given one (via getters/setters)
+     * array values (e.g. byte[]) are copied too, so the two entities share no mutable state
+     */
+    public T copy(Object entity)
+    {
+        T copy = this.newInstance();
+        for (ColumnMetadata column : this.columns) {
+            if(column.isWritable()){
+                column.set(copy, copyValue(column.get(entity)));
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * the value, or a copy of it if it is an array
+     */
+    static Object copyValue(Object value)
+    {
+        if(value == null || !value.getClass().isArray()){
+            return value;
+        }
+
+        int length = Array.getLength(value);
+        Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+        System.arraycopy(value, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * invoke getId() on the given entity
+     */
+    public int getId(Object entity)
+    {
+        if(this.idColumn == null){
+            throw new MappingException("entity class " + this.entityClass.getName() + " has no getId() method");
+        }
+
+        return (int) this.idColumn.get(entity);
+    }
+
+    /**
+     * invoke setId() on the given entity
+     */
+    public void setId(Object entity, int id)
+    {
+        if(this.idColumn == null || !this.idColumn.isWritable()){
+            throw new MappingException("entity class " + this.entityClass.getName() + " has no setId(int) method");
+        }
+
+        this.idColumn.set(entity, id);
+    }
+
+    public Class<T> getEntityClass()
+    {
+        return entityClass;
+    }
+
+    /**
+     * all columns, in field declaration order
+     */
+    public List<ColumnMetadata> getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * all columns except 'id', in field declaration order
+     */
+    public List<ColumnMetadata> getColumnsLessId()
+    {
+        return columnsLessId;
+    }
+
+    /**
+     * names of all columns except 'id' (do not modify the returned array)
+     */
+    public String[] getColumnNamesLessId()
+    {
+        return columnNamesLessId;
+    }
+
+    /**
+     * return column with given name, or null if no such column
+     */
+    public ColumnMetadata getColumn(String name)
+    {
+        return this.columnsByName.get(name);
+    }
+
+    public ColumnMetadata getIdColumn()
+    {
+        return idColumn;
+    }
+
+    /**
+     * indexes declared with @Column / @Index annotations
+     */
+    public List<IndexDefinition> getIndexes()
+    {
+        return indexes;
+    }
+}
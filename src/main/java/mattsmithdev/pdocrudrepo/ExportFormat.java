@@ -0,0 +1,24 @@
+package mattsmithdev.pdocrudrepo;
+
+/**
+ * file formats for DatabaseTableRepository.exportTo()
+ * (CSV and JSON_LINES are UTF-8 text, with the values of binary columns - e.g. UUID, byte[] - as hex)
+ *
+ *      CSV          a header line of column names, then one line per row (RFC 4180 quoting, NULL = empty field)
+ *                   e.g. id,title,price
+ *                        3,"Java, 2nd edition",9.99
+ *
+ *      JSON_LINES   one JSON object per line (numeric columns unquoted)
+ *                   e.g. {"id":3,"title":"Java, 2nd edition","price":9.99}
+ *
+ *      BINARY       length-prefixed values, big-endian:
+ *                   header  'PDOX', version byte 1, int column count, then per column: short name length + UTF-8 name, int java.sql.Types type
+ *                   rows    per column: int length (-1 = NULL) + the value's bytes (its text, or the raw bytes of a binary column)
+ *                   ... until the end of the file
+ */
+public enum ExportFormat
+{
+    CSV,
+    JSON_LINES,
+    BINARY
+}
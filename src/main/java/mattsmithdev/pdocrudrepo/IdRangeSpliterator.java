@@ -0,0 +1,121 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * the rows with ids in a range (afterId, lastId], read a page at a time with keyset queries
+ * (e.g. SELECT * from module WHERE id > ? AND id <= ? ORDER BY id LIMIT ?)
+ *
+ * trySplit() hands the upper half of the ids not read yet to a new spliterator - so a parallel stream,
+ * or DatabaseTableRepository.parallelScan(), can scan the parts of a table at once (each page on its own pooled connection),
+ * and split up a range again if it turns out to hold far more rows than the others
+ */
+class IdRangeSpliterator<T> implements Spliterator<T>
+{
+    /**
+     * reads up to limit rows with afterId < id <= lastId, in id order
+     */
+    interface PageReader<T>
+    {
+        List<T> read(int afterId, int lastId, int limit);
+    }
+
+    private final PageReader<T> reader;
+    private final ToIntFunction<T> idOf;
+    private final int pageSize;
+
+    private int afterId;
+    private int lastId;
+
+    private List<T> page = Collections.emptyList();
+    private int position = 0;
+
+    IdRangeSpliterator(PageReader<T> reader, ToIntFunction<T> idOf, int pageSize, int afterId, int lastId)
+    {
+        this.reader = reader;
+        this.idOf = idOf;
+        this.pageSize = pageSize;
+        this.afterId = afterId;
+        this.lastId = lastId;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action)
+    {
+        if(this.position == this.page.size() && !this.nextPage()){
+            return false;
+        }
+
+        action.accept(this.page.get(this.position++));
+        return true;
+    }
+
+    /**
+     * pass the rows of the next page (if any) to the action - returns false once the range has been read
+     */
+    boolean forEachInPage(Consumer<? super T> action)
+    {
+        if(this.position == this.page.size() && !this.nextPage()){
+            return false;
+        }
+
+        while(this.position < this.page.size()){
+            action.accept(this.page.get(this.position++));
+        }
+        return true;
+    }
+
+    private boolean nextPage()
+    {
+        if(this.afterId >= this.lastId){
+            return false;
+        }
+
+        this.page = this.reader.read(this.afterId, this.lastId, this.pageSize);
+        this.position = 0;
+        if(this.page.size() < this.pageSize){
+            // a short page - nothing more in the range
+            this.afterId = this.lastId;
+        } else {
+            this.afterId = this.idOf.applyAsInt(this.page.get(this.page.size() - 1));
+        }
+
+        return !this.page.isEmpty();
+    }
+
+    /**
+     * split off the upper half of the ids not read yet (unless that's less than a page's worth)
+     */
+    @Override
+    public IdRangeSpliterator<T> trySplit()
+    {
+        long span = (long) this.lastId - this.afterId;
+        if(span <= this.pageSize){
+            return null;
+        }
+
+        int middle = (int) (this.afterId + span / 2);
+        IdRangeSpliterator<T> upper = new IdRangeSpliterator<>(this.reader, this.idOf, this.pageSize, middle, this.lastId);
+        this.lastId = middle;
+        return upper;
+    }
+
+    /**
+     * (the number of ids not read yet - there are fewer rows if ids have gaps)
+     */
+    @Override
+    public long estimateSize()
+    {
+        return Math.max(0, (long) this.lastId - this.afterId) + (this.page.size() - this.position);
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
+}
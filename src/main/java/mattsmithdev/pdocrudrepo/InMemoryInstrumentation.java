@@ -0,0 +1,139 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * keeps per-table, per-operation metrics in memory (see OperationMetrics), and logs slow operations (SLF4J, at WARN)
+ *
+ * e.g.
+ *      InMemoryInstrumentation metrics = new InMemoryInstrumentation(500);   // log operations taking 500ms or more
+ *      DatabaseManager.setInstrumentation(metrics);
+ *
+ *      repo.findAll(Module.class);
+ *      System.out.println(metrics.getMetrics("module", "findAll").getPercentileMillis(99));
+ *      System.out.println(metrics.report());
+ */
+public class InMemoryInstrumentation implements Instrumentation
+{
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryInstrumentation.class);
+
+    /**
+     * table name => operation name => metrics
+     */
+    private final Map<String, Map<String, OperationMetrics>> metrics = new ConcurrentHashMap<>();
+
+    private volatile long slowQueryThresholdNanos;
+
+    /**
+     * no slow query log
+     */
+    public InMemoryInstrumentation()
+    {
+        this(0);
+    }
+
+    /**
+     * log operations taking slowQueryThresholdMillis or more (<= 0 = don't log)
+     */
+    public InMemoryInstrumentation(long slowQueryThresholdMillis)
+    {
+        this.setSlowQueryThresholdMillis(slowQueryThresholdMillis);
+    }
+
+    public long getSlowQueryThresholdMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.slowQueryThresholdNanos);
+    }
+
+    public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis)
+    {
+        this.slowQueryThresholdNanos = (slowQueryThresholdMillis > 0) ? TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis) : 0;
+    }
+
+    @Override
+    public void record(OperationTimer operation)
+    {
+        // get() first, so there is no allocation once the metrics for this table/operation exist
+        Map<String, OperationMetrics> tableMetrics = this.metrics.get(operation.getTable());
+        if(tableMetrics == null){
+            tableMetrics = this.metrics.computeIfAbsent(operation.getTable(), table -> new ConcurrentHashMap<>());
+        }
+
+        OperationMetrics operationMetrics = tableMetrics.get(operation.getOperation());
+        if(operationMetrics == null){
+            operationMetrics = tableMetrics.computeIfAbsent(operation.getOperation(),
+                    name -> new OperationMetrics(operation.getTable(), name));
+        }
+
+        long threshold = this.slowQueryThresholdNanos;
+        boolean slow = (threshold > 0 && operation.getTotalNanos() >= threshold);
+        operationMetrics.record(operation, slow);
+
+        if(slow){
+            this.slowQuery(operation);
+        }
+    }
+
+    /**
+     * log an operation that took longer than the slow query threshold
+     */
+    protected void slowQuery(OperationTimer operation)
+    {
+        if(LOG.isWarnEnabled()){
+            LOG.warn("slow query ({}ms) :: {}.{} rows = {}{}\nSQL = {}",
+                    TimeUnit.NANOSECONDS.toMillis(operation.getTotalNanos()), operation.getTable(), operation.getOperation(),
+                    operation.getRows(), operation.isFailed() ? " (failed)" : "", operation.getSql());
+        }
+    }
+
+    /**
+     * metrics for the given table and operation (e.g. "module", "find"), or null if there have been none
+     */
+    public OperationMetrics getMetrics(String table, String operation)
+    {
+        Map<String, OperationMetrics> tableMetrics = this.metrics.get(table);
+        return (tableMetrics == null) ? null : tableMetrics.get(operation);
+    }
+
+    /**
+     * metrics for every table and operation so far
+     */
+    public List<OperationMetrics> getAllMetrics()
+    {
+        List<OperationMetrics> all = new ArrayList<>();
+        for(Map<String, OperationMetrics> tableMetrics : this.metrics.values()){
+            all.addAll(tableMetrics.values());
+        }
+        all.sort((a, b) -> (a.getTable() + "." + a.getOperation()).compareTo(b.getTable() + "." + b.getOperation()));
+
+        return all;
+    }
+
+    /**
+     * one line per table/operation (see OperationMetrics.toString())
+     */
+    public String report()
+    {
+        StringBuilder report = new StringBuilder();
+        for(OperationMetrics operationMetrics : this.getAllMetrics()){
+            report.append(operationMetrics).append("\n");
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * forget all metrics so far
+     */
+    public void reset()
+    {
+        this.metrics.clear();
+    }
+}
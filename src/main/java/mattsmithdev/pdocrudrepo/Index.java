@@ -0,0 +1,33 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * an index (possibly on several columns) for an entity class's table, used by createTable() and ensureIndexes()
+ *
+ * e.g.
+ *      @Index(columns = {"category", "price"})
+ *      @Index(name = "uq_module_code", columns = {"code"}, unique = true)
+ *      public class Module ...
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(Indexes.class)
+public @interface Index
+{
+    /**
+     * index name (default: idx_ or uq_ followed by the column names joined with '_')
+     */
+    String name() default "";
+
+    /**
+     * property names, in index order
+     */
+    String[] columns();
+
+    boolean unique() default false;
+}
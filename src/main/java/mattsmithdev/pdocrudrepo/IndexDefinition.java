@@ -0,0 +1,75 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * one index an entity's table should have - from @Column(index/unique) or @Index annotations,
+ * or added with DatabaseTableRepository.addIndex()
+ *
+ * e.g.
+ *      new IndexDefinition("idx_category_price", false, "category", "price")
+ *      getSql() = KEY idx_category_price (category(255), price)
+ */
+public class IndexDefinition
+{
+    /**
+     * prefix length used to index a String column with no @Column(length) - it may be a text column
+     */
+    static final int DEFAULT_STRING_INDEX_LENGTH = 255;
+
+    private final String name;
+    private final boolean unique;
+    private final List<String> columns;
+
+    public IndexDefinition(String name, boolean unique, String... columns)
+    {
+        if(columns.length == 0){
+            throw new IllegalArgumentException("index " + name + " has no columns");
+        }
+
+        this.unique = unique;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(columns)));
+        this.name = (name == null || name.isEmpty())
+                ? (unique ? "uq_" : "idx_") + String.join("_", columns)
+                : name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isUnique()
+    {
+        return unique;
+    }
+
+    public List<String> getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * the index clause for CREATE TABLE / ALTER TABLE ADD, e.g. UNIQUE KEY uq_code (code)
+     * (String columns without a @Column(length) are indexed on their first 255 characters)
+     */
+    public String getSql(EntityMetadata<?> metadata)
+    {
+        List<String> parts = new ArrayList<>();
+        for(String columnName : this.columns){
+            ColumnMetadata column = metadata.getColumn(columnName);
+            if(column == null){
+                throw new MappingException("index " + this.name + " refers to unknown column '" + columnName
+                        + "' of " + metadata.getEntityClass().getName());
+            }
+
+            boolean prefix = column.getType() == String.class && column.getLength() == 0;
+            parts.add(prefix ? columnName + "(" + DEFAULT_STRING_INDEX_LENGTH + ")" : columnName);
+        }
+
+        return (this.unique ? "UNIQUE KEY " : "KEY ") + this.name + " (" + String.join(", ", parts) + ")";
+    }
+}
@@ -0,0 +1,16 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * holder for repeated @Index annotations (the compiler creates this - just repeat @Index)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Indexes
+{
+    Index[] value();
+}
@@ -0,0 +1,53 @@
+package mattsmithdev.pdocrudrepo;
+
+/**
+ * receives the timings of every DatabaseTableRepository operation (find, findAll, insert, update, ...)
+ *
+ * each operation is split into phases (see OperationTimer.Phase):
+ *      CONNECT     borrowing a connection from the pool (or opening one)
+ *      PREPARE     preparing the statement
+ *      EXECUTE     binding parameters and executing
+ *      MAP         reading the rows into entity objects
+ *
+ * set one with DatabaseManager.setInstrumentation() - the default, NONE, is disabled,
+ * and repositories then skip timing altogether (no clock reads, no allocation)
+ *
+ * e.g.
+ *      InMemoryInstrumentation metrics = new InMemoryInstrumentation(500);   // log operations slower than 500ms
+ *      DatabaseManager.setInstrumentation(metrics);
+ *      ...
+ *      System.out.println(metrics.report());
+ */
+public interface Instrumentation
+{
+    /**
+     * no instrumentation
+     */
+    Instrumentation NONE = new Instrumentation()
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return false;
+        }
+
+        @Override
+        public void record(OperationTimer operation)
+        {
+        }
+    };
+
+    /**
+     * false = repositories don't time their operations, and record() is never called
+     */
+    default boolean isEnabled()
+    {
+        return true;
+    }
+
+    /**
+     * called (on the thread that ran it) when an operation ends, successfully or not
+     * NOTE: called on every operation, so must be quick and thread-safe
+     */
+    void record(OperationTimer operation);
+}
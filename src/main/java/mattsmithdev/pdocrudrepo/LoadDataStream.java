@@ -0,0 +1,284 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * the rows of a LOAD DATA LOCAL INFILE, encoded on demand from entity objects as the driver reads them
+ * (so only a buffer's worth of rows is in memory at once - no temp file)
+ *
+ * one line per entity, with its non-id columns in column order, in LOAD DATA's default text format:
+ * tab between fields, newline after each row, \N for NULL, and backslash escapes for \ tab newline CR and NUL
+ *
+ * each value is bound by the column's TypeConverter (as for an INSERT), then written in its text form -
+ * binary values (e.g. UUID, byte[]) are written as hex, for the LOAD DATA to UNHEX() (see getColumnList())
+ *
+ * e.g. for Module(id, title, price, uuid)
+ *      Java\t9.99\t0123456789ABCDEF0123456789ABCDEF\n
+ */
+class LoadDataStream extends InputStream
+{
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    /**
+     * a row is encoded into the buffer once it has less than this much left to read
+     */
+    private static final int REFILL_BELOW = 8 * 1024;
+
+    private final List<ColumnMetadata> columns;
+    private final boolean[] hex;
+    private final Iterator<?> rows;
+    private final long maxRows;
+
+    private final Object[] values;
+    private final PreparedStatement capture;
+
+    private byte[] buffer = new byte[64 * 1024];
+    private int position = 0;
+    private int limit = 0;
+    private long rowCount = 0;
+
+    /**
+     * encodes (up to maxRows of) the remaining rows of the iterator
+     */
+    LoadDataStream(EntityMetadata<?> metadata, Iterator<?> rows, long maxRows)
+    {
+        this.columns = metadata.getColumnsLessId();
+        this.hex = new boolean[this.columns.size()];
+        for(int i = 0; i < this.hex.length; i++){
+            this.hex[i] = isBinary(this.columns.get(i));
+        }
+        this.rows = rows;
+        this.maxRows = maxRows;
+
+        this.values = new Object[this.columns.size() + 1];
+        this.capture = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{ PreparedStatement.class },
+                new CaptureHandler());
+    }
+
+    /**
+     * true for columns whose values are written as hex (and so need UNHEX()-ing), e.g. binary(16), blob
+     */
+    static boolean isBinary(ColumnMetadata column)
+    {
+        String sqlType = new DatabaseUtility().dbDataType(column.getType()).toLowerCase();
+        return sqlType.contains("binary") || sqlType.contains("blob");
+    }
+
+    /**
+     * the column list (and SET clause) of the LOAD DATA, for the non-id columns in column order
+     * e.g. (title, price, @uuid) SET uuid = UNHEX(@uuid)
+     */
+    static String getColumnList(EntityMetadata<?> metadata)
+    {
+        StringBuilder names = new StringBuilder();
+        StringBuilder sets = new StringBuilder();
+        for(ColumnMetadata column : metadata.getColumnsLessId()){
+            if(names.length() > 0){
+                names.append(", ");
+            }
+
+            if(isBinary(column)){
+                names.append('@').append(column.getName());
+                sets.append(sets.length() > 0 ? ", " : " SET ")
+                        .append(column.getName()).append(" = UNHEX(@").append(column.getName()).append(")");
+            } else {
+                names.append(column.getName());
+            }
+        }
+
+        return "(" + names + ")" + sets;
+    }
+
+    /**
+     * number of rows encoded so far
+     */
+    long getRowCount()
+    {
+        return rowCount;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if(!this.fill()){
+            return -1;
+        }
+
+        return this.buffer[this.position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException
+    {
+        if(length == 0){
+            return 0;
+        }
+        if(!this.fill()){
+            return -1;
+        }
+
+        int n = Math.min(length, this.limit - this.position);
+        System.arraycopy(this.buffer, this.position, bytes, offset, n);
+        this.position += n;
+        return n;
+    }
+
+    /**
+     * top up the buffer with encoded rows - returns false once every row has been read
+     */
+    private boolean fill() throws IOException
+    {
+        if(this.limit - this.position >= REFILL_BELOW){
+            return true;
+        }
+
+        // move what's left to the front, then encode rows after it
+        System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+        this.limit -= this.position;
+        this.position = 0;
+
+        try {
+            while(this.limit < this.buffer.length - REFILL_BELOW && this.rowCount < this.maxRows && this.rows.hasNext()){
+                this.encode(this.rows.next());
+                this.rowCount++;
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+
+        return this.position < this.limit;
+    }
+
+    private void encode(Object entity) throws SQLException
+    {
+        for(int i = 0; i < this.columns.size(); i++){
+            this.values[i + 1] = null;
+            this.columns.get(i).bind(this.capture, i + 1, entity);
+
+            if(i > 0){
+                this.write('\t');
+            }
+            this.writeValue(this.values[i + 1], this.hex[i]);
+        }
+        this.write('\n');
+    }
+
+    private void writeValue(Object value, boolean hex)
+    {
+        if(value == null){
+            this.write('\\');
+            this.write('N');
+        } else if(value instanceof byte[]){
+            byte[] bytes = (byte[]) value;
+            for(byte b : bytes){
+                if(hex){
+                    this.write(HEX[(b >> 4) & 0xf]);
+                    this.write(HEX[b & 0xf]);
+                } else {
+                    this.writeEscaped(b & 0xff);
+                }
+            }
+        } else if(value instanceof Boolean){
+            this.write((Boolean) value ? '1' : '0');
+        } else if(value instanceof BigDecimal){
+            this.writeText(((BigDecimal) value).toPlainString());
+        } else {
+            this.writeText(value.toString());
+        }
+    }
+
+    /**
+     * write the text as escaped UTF-8
+     */
+    private void writeText(String text)
+    {
+        for(int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if(c < 0x80){
+                this.writeEscaped(c);
+            } else if(c < 0x800){
+                this.write(0xc0 | (c >> 6));
+                this.write(0x80 | (c & 0x3f));
+            } else if(Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))){
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                this.write(0xf0 | (codePoint >> 18));
+                this.write(0x80 | ((codePoint >> 12) & 0x3f));
+                this.write(0x80 | ((codePoint >> 6) & 0x3f));
+                this.write(0x80 | (codePoint & 0x3f));
+            } else {
+                this.write(0xe0 | (c >> 12));
+                this.write(0x80 | ((c >> 6) & 0x3f));
+                this.write(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void writeEscaped(int b)
+    {
+        switch (b) {
+            case '\\':
+                this.write('\\');
+                this.write('\\');
+                break;
+            case '\t':
+                this.write('\\');
+                this.write('t');
+                break;
+            case '\n':
+                this.write('\\');
+                this.write('n');
+                break;
+            case '\r':
+                this.write('\\');
+                this.write('r');
+                break;
+            case 0:
+                this.write('\\');
+                this.write('0');
+                break;
+            default:
+                this.write(b);
+        }
+    }
+
+    private void write(int b)
+    {
+        // (only a row bigger than the buffer makes it grow)
+        if(this.limit == this.buffer.length){
+            byte[] bigger = new byte[this.buffer.length * 2];
+            System.arraycopy(this.buffer, 0, bigger, 0, this.limit);
+            this.buffer = bigger;
+        }
+        this.buffer[this.limit++] = (byte) b;
+    }
+
+    /**
+     * a PreparedStatement that just keeps the value bound to each parameter (null for setNull)
+     */
+    private class CaptureHandler implements InvocationHandler
+    {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if(name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer){
+                values[(Integer) args[0]] = name.equals("setNull") ? null : args[1];
+                return null;
+            }
+
+            throw new SQLFeatureNotSupportedException(name + "() while encoding LOAD DATA rows");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package mattsmithdev.pdocrudrepo;
+
+/**
+ * an entity class can't be mapped to or from table rows
+ * e.g. it has no no-args constructor, no getId()/setId(int), or a getter/setter threw an exception
+ */
+public class MappingException extends DatabaseException
+{
+    private static final long serialVersionUID = 1L;
+
+    public MappingException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+
+    public MappingException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,261 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MySQL (and MariaDB) via Connector/J - see Dialect
+ */
+public class MySqlDialect implements Dialect
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MySqlDialect.class);
+
+    static final int SQL_EXCEPTION_CODE_DATABASE_EXISTS = 1007;
+
+    /**
+     * MySQL's limit on '?' placeholders per statement
+     */
+    private static final int MAX_PARAMETERS = 65535;
+
+    @Override
+    public String getName()
+    {
+        return "mysql";
+    }
+
+    /**
+     * e.g. jdbc:mysql://127.0.0.1:3306/evote
+     */
+    @Override
+    public String getDsn(DatabaseConfig config)
+    {
+        return "jdbc:mysql://" + config.getHost() + ":" + config.getPort() + "/" + config.getDbname();
+    }
+
+    /**
+     * e.g. jdbc:mysql://127.0.0.1:3306/
+     */
+    @Override
+    public String getServerDsn(DatabaseConfig config)
+    {
+        return "jdbc:mysql://" + config.getHost() + ":" + config.getPort() + "/";
+    }
+
+    /**
+     * port 3306 if the endpoint gives none, e.g. "replica1" => jdbc:mysql://replica1:3306/evote
+     */
+    @Override
+    public String getReplicaDsn(DatabaseConfig config, String endpoint)
+    {
+        String hostAndPort = endpoint.contains(":") ? endpoint : endpoint + ":3306";
+        return "jdbc:mysql://" + hostAndPort + "/" + config.getDbname();
+    }
+
+    /**
+     * user/password are passed here (rather than in the DSN) so special characters need no escaping
+     */
+    @Override
+    public Properties getConnectionProperties(DatabaseConfig config)
+    {
+        Properties properties = new Properties();
+        if(config.getUser() != null){
+            properties.setProperty("user", config.getUser());
+        }
+        if(config.getPass() != null){
+            properties.setProperty("password", config.getPass());
+        }
+
+        // since pooled connections live a long time, the driver's per-connection statement cache pays off
+        properties.setProperty("cachePrepStmts", String.valueOf(config.isCachePreparedStatements()));
+        properties.setProperty("prepStmtCacheSize", String.valueOf(config.getPreparedStatementCacheSize()));
+        properties.setProperty("prepStmtCacheSqlLimit", String.valueOf(config.getPreparedStatementCacheSqlLimit()));
+        properties.setProperty("useServerPrepStmts", String.valueOf(config.isUseServerPreparedStatements()));
+        properties.setProperty("rewriteBatchedStatements", String.valueOf(config.isRewriteBatchedStatements()));
+        properties.setProperty("useCursorFetch", String.valueOf(config.isUseCursorFetch()));
+        if(config.isAllowLoadLocalInfile()){
+            properties.setProperty("allowLoadLocalInfile", "true");
+        }
+        if(config.isCountBytes()){
+            properties.setProperty("socketFactory", ByteCountingSocketFactory.class.getName());
+        }
+
+        return properties;
+    }
+
+    /**
+     * connect with no DB selected, and try to create the database
+     */
+    @Override
+    public void createDatabaseIfNotExists(DatabaseConfig config, boolean silent)
+    {
+        try (
+            Connection conn = DriverManager.getConnection(config.getServerDsn(), config.getConnectionProperties());
+            Statement statement = conn.createStatement()
+        ) {
+            String sql = "CREATE DATABASE " + config.getDbname();
+            statement.executeUpdate(sql);
+            LOG.info("database '{}' did not exist, so new schema created", config.getDbname());
+
+        } catch (SQLException e) {
+            if(e.getErrorCode() == SQL_EXCEPTION_CODE_DATABASE_EXISTS){
+                // database already exists - all good
+                if(!silent){
+                    LOG.info("using database '{}'", config.getDbname());
+                }
+
+            } else {
+                // some other error (e.g. no CREATE privilege) - carry on, and let connecting to the database itself fail if it must
+                LOG.warn("unable to create database '{}' :: {}", config.getDbname(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String columnType(String sqlType)
+    {
+        return sqlType;
+    }
+
+    @Override
+    public String getIdColumn()
+    {
+        return "id integer PRIMARY KEY AUTO_INCREMENT";
+    }
+
+    /**
+     * one CREATE TABLE, with the indexes inside it, e.g.
+     *      CREATE TABLE IF NOT EXISTS module (id integer PRIMARY KEY AUTO_INCREMENT, title text, KEY idx_title (title(255)))
+     */
+    @Override
+    public List<String> getCreateTable(String tableName, String columns, List<IndexDefinition> indexes, EntityMetadata<?> metadata)
+    {
+        StringBuilder indexSql = new StringBuilder();
+        for(IndexDefinition index : indexes){
+            indexSql.append(", ").append(index.getSql(metadata));
+        }
+
+        return Collections.singletonList("CREATE TABLE IF NOT EXISTS " + tableName
+                + " (" + this.getIdColumn() + ", " + columns + indexSql + ")");
+    }
+
+    @Override
+    public String getIndexNamesQuery()
+    {
+        return "SELECT DISTINCT INDEX_NAME from information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+    }
+
+    /**
+     * one online ALTER TABLE (the table stays readable and writable meanwhile), e.g.
+     *      ALTER TABLE module ADD KEY idx_title (title(255)), ALGORITHM=INPLACE, LOCK=NONE
+     */
+    @Override
+    public List<String> getAddIndexes(String tableName, List<IndexDefinition> indexes, EntityMetadata<?> metadata)
+    {
+        List<String> clauses = new ArrayList<>();
+        for(IndexDefinition index : indexes){
+            clauses.add("ADD " + index.getSql(metadata));
+        }
+
+        return Collections.singletonList("ALTER TABLE " + tableName + " " + String.join(", ", clauses) + ", ALGORITHM=INPLACE, LOCK=NONE");
+    }
+
+    /**
+     * e.g. ALTER TABLE module DROP INDEX idx_title, DROP INDEX idx_category_price
+     */
+    @Override
+    public List<String> getDropIndexes(String tableName, List<IndexDefinition> indexes)
+    {
+        List<String> clauses = new ArrayList<>();
+        for(IndexDefinition index : indexes){
+            clauses.add("DROP INDEX " + index.getName());
+        }
+
+        return Collections.singletonList("ALTER TABLE " + tableName + " " + String.join(", ", clauses));
+    }
+
+    /**
+     * e.g. LOAD DATA LOCAL INFILE 'module' INTO TABLE module CHARACTER SET utf8mb4 (title, price, @uuid) SET uuid = UNHEX(@uuid)
+     *
+     * (the file name is ignored - the driver sends the stream set with setLocalInfileInputStream() instead)
+     * NOTE: with LOCAL, rows that would be duplicate keys are skipped and bad values only give warnings
+     */
+    @Override
+    public String getLoadData(String tableName, EntityMetadata<?> metadata)
+    {
+        return "LOAD DATA LOCAL INFILE '" + tableName + "' INTO TABLE " + tableName
+                + " CHARACTER SET utf8mb4 " + LoadDataStream.getColumnList(metadata);
+    }
+
+    @Override
+    public String getUpsertClause(String[] columnNamesLessId)
+    {
+        StringBuilder updates = new StringBuilder();
+        for(String columnName : columnNamesLessId){
+            if(updates.length() > 0){
+                updates.append(", ");
+            }
+            updates.append(columnName).append(" = VALUES(").append(columnName).append(")");
+        }
+
+        // an entity with no columns but id - nothing to change for an existing row
+        return " ON DUPLICATE KEY UPDATE " + ((updates.length() > 0) ? updates : "id = id");
+    }
+
+    @Override
+    public String getLimitClause(boolean withOffset)
+    {
+        return withOffset ? " LIMIT ? OFFSET ?" : " LIMIT ?";
+    }
+
+    /**
+     * (MySQL has no OFFSET without LIMIT - the manual's "all rows" limit is the largest BIGINT UNSIGNED)
+     */
+    @Override
+    public String getOffsetClause()
+    {
+        return " LIMIT 18446744073709551615 OFFSET ?";
+    }
+
+    @Override
+    public String getDeleteAllSql(String tableName)
+    {
+        return "TRUNCATE TABLE " + tableName;
+    }
+
+    @Override
+    public boolean isBatchGeneratedKeys()
+    {
+        return true;
+    }
+
+    @Override
+    public int getMaxParameters()
+    {
+        return MAX_PARAMETERS;
+    }
+
+    /**
+     * Connector/J streams row by row when the fetch size is Integer.MIN_VALUE,
+     * or fetches cursorFetchSize rows at a time from a server-side cursor if useCursorFetch is on
+     */
+    @Override
+    public int getStreamingFetchSize(DatabaseConfig config)
+    {
+        return config.isUseCursorFetch() ? config.getCursorFetchSize() : Integer.MIN_VALUE;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getName();
+    }
+}
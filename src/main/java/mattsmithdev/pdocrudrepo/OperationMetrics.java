@@ -0,0 +1,177 @@
+package mattsmithdev.pdocrudrepo;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * running totals, and a latency histogram, for one operation (e.g. "find") on one table - see InMemoryInstrumentation
+ *
+ * recording is lock-free (LongAdders, and an HdrHistogram Recorder), so many threads can record at once;
+ * reading the percentiles briefly locks this object
+ *
+ * e.g.
+ *      OperationMetrics find = metrics.getMetrics("module", "find");
+ *      System.out.println(find.getCount() + " finds, p99 = " + find.getPercentileMillis(99) + "ms");
+ */
+public class OperationMetrics
+{
+    /**
+     * histogram precision (3 significant digits = within 0.1%)
+     */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final OperationTimer.Phase[] PHASES = OperationTimer.Phase.values();
+
+    private final String table;
+    private final String operation;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder slowCount = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+
+    /**
+     * latencies recorded since the last read, and all latencies read so far
+     */
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Histogram histogram = new Histogram(SIGNIFICANT_DIGITS);
+    private Histogram intervalHistogram;
+
+    public OperationMetrics(String table, String operation)
+    {
+        this.table = table;
+        this.operation = operation;
+        for(int i = 0; i < this.phaseNanos.length; i++){
+            this.phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    void record(OperationTimer timer, boolean slow)
+    {
+        this.count.increment();
+        if(timer.isFailed()){
+            this.errorCount.increment();
+        }
+        if(slow){
+            this.slowCount.increment();
+        }
+        this.rows.add(timer.getRows());
+        this.bytes.add(timer.getBytes());
+        this.totalNanos.add(timer.getTotalNanos());
+        for(OperationTimer.Phase phase : PHASES){
+            long nanos = timer.getPhaseNanos(phase);
+            if(nanos > 0){
+                this.phaseNanos[phase.ordinal()].add(nanos);
+            }
+        }
+
+        this.recorder.recordValue(timer.getTotalNanos());
+    }
+
+    public String getTable()
+    {
+        return table;
+    }
+
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getErrorCount()
+    {
+        return errorCount.sum();
+    }
+
+    /**
+     * operations slower than the slow query threshold
+     */
+    public long getSlowCount()
+    {
+        return slowCount.sum();
+    }
+
+    /**
+     * rows read, or rows affected by writes
+     */
+    public long getRows()
+    {
+        return rows.sum();
+    }
+
+    public long getBytes()
+    {
+        return bytes.sum();
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos.sum();
+    }
+
+    public long getPhaseNanos(OperationTimer.Phase phase)
+    {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    public double getMeanMillis()
+    {
+        long operations = this.getCount();
+        return (operations == 0) ? 0 : this.getTotalNanos() / (operations * 1e6);
+    }
+
+    /**
+     * e.g. getPercentileMillis(99) - 99% of operations took no longer than this
+     */
+    public double getPercentileMillis(double percentile)
+    {
+        return this.getHistogram().getValueAtPercentile(percentile) / 1e6;
+    }
+
+    public double getMaxMillis()
+    {
+        return this.getHistogram().getMaxValue() / 1e6;
+    }
+
+    /**
+     * copy of the latency histogram (in nanoseconds) of every operation recorded so far
+     */
+    public synchronized Histogram getHistogram()
+    {
+        this.intervalHistogram = this.recorder.getIntervalHistogram(this.intervalHistogram);
+        this.histogram.add(this.intervalHistogram);
+        return this.histogram.copy();
+    }
+
+    /**
+     * e.g. module.find  count=120 errors=0 slow=0 rows=120 bytes=0 mean=0.41ms p50=0.38ms p99=1.20ms max=3.10ms (connect 0.02, prepare 0.01, execute 0.33, map 0.05)
+     */
+    @Override
+    public String toString()
+    {
+        long operations = Math.max(1, this.getCount());
+        Histogram latencies = this.getHistogram();
+
+        return String.format("%s.%s  count=%d errors=%d slow=%d rows=%d bytes=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms"
+                        + " (connect %.2f, prepare %.2f, execute %.2f, map %.2f)",
+                this.table, this.operation, this.getCount(), this.getErrorCount(), this.getSlowCount(), this.getRows(), this.getBytes(),
+                this.getMeanMillis(),
+                latencies.getValueAtPercentile(50) / 1e6,
+                latencies.getValueAtPercentile(99) / 1e6,
+                latencies.getMaxValue() / 1e6,
+                this.getPhaseNanos(OperationTimer.Phase.CONNECT) / (operations * 1e6),
+                this.getPhaseNanos(OperationTimer.Phase.PREPARE) / (operations * 1e6),
+                this.getPhaseNanos(OperationTimer.Phase.EXECUTE) / (operations * 1e6),
+                this.getPhaseNanos(OperationTimer.Phase.MAP) / (operations * 1e6));
+    }
+}
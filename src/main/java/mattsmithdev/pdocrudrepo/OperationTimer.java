@@ -0,0 +1,249 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.sql.Statement;
+
+/**
+ * times one repository operation, phase by phase, and passes the result to an Instrumentation when it ends
+ *
+ * each "lap" method records the time since the previous lap against a phase,
+ * and returns its argument unchanged, so it can wrap the call that ends the phase:
+ *
+ *      OperationTimer timer = OperationTimer.start(instrumentation, "module", "find");
+ *      try (
+ *          Connection connection = timer.connected(DatabaseManager.getConnection(true));
+ *          PreparedStatement statement = timer.prepared(connection.prepareStatement(sql))
+ *      ) {
+ *          statement.setInt(1, id);
+ *          try (ResultSet resultset = timer.executed(statement.executeQuery())) {
+ *              ...
+ *              timer.mapped(1);
+ *          }
+ *      } catch (SQLException e) {
+ *          timer.failed(e);
+ *      } finally {
+ *          timer.end(sql);
+ *      }
+ *
+ * when the instrumentation is disabled start() returns the shared DISABLED timer, whose methods do nothing
+ * NOTE: a timer is used by one thread only
+ */
+public final class OperationTimer
+{
+    public enum Phase
+    {
+        CONNECT, PREPARE, EXECUTE, MAP
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    /**
+     * does nothing (and allocates nothing)
+     */
+    public static final OperationTimer DISABLED = new OperationTimer(Instrumentation.NONE, "", "", false);
+
+    private final Instrumentation instrumentation;
+    private final String table;
+    private final String operation;
+    private final boolean enabled;
+
+    private final long startNanos;
+    private final long startBytes;
+    private long lapNanos;
+    private final long[] phaseNanos = new long[PHASES.length];
+    private long totalNanos;
+    private long rows;
+    private long bytes;
+    private String sql;
+    private Throwable error;
+
+    private OperationTimer(Instrumentation instrumentation, String table, String operation, boolean enabled)
+    {
+        this.instrumentation = instrumentation;
+        this.table = table;
+        this.operation = operation;
+        this.enabled = enabled;
+        this.startBytes = enabled ? ByteCountingSocketFactory.threadBytes() : 0;
+        this.startNanos = enabled ? System.nanoTime() : 0;
+        this.lapNanos = this.startNanos;
+    }
+
+    /**
+     * start timing an operation (e.g. "find") on the given table
+     */
+    public static OperationTimer start(Instrumentation instrumentation, String table, String operation)
+    {
+        if(!instrumentation.isEnabled()){
+            return DISABLED;
+        }
+
+        return new OperationTimer(instrumentation, table, operation, true);
+    }
+
+    /**
+     * the connection has been borrowed (CONNECT phase)
+     */
+    public <C> C connected(C connection)
+    {
+        this.lap(Phase.CONNECT);
+        return connection;
+    }
+
+    /**
+     * the statement has been prepared (PREPARE phase)
+     */
+    public <S> S prepared(S statement)
+    {
+        this.lap(Phase.PREPARE);
+        return statement;
+    }
+
+    /**
+     * the statement has been executed (EXECUTE phase) - e.g. around executeQuery()
+     */
+    public <R> R executed(R result)
+    {
+        this.lap(Phase.EXECUTE);
+        return result;
+    }
+
+    /**
+     * the statement has been executed (EXECUTE phase) - around executeUpdate(), counting the rows affected
+     */
+    public int executed(int updateCount)
+    {
+        if(this.enabled){
+            this.lap(Phase.EXECUTE);
+            this.rows += Math.max(0, updateCount);
+        }
+
+        return updateCount;
+    }
+
+    /**
+     * the batch has been executed (EXECUTE phase) - around executeBatch(), counting the rows affected
+     * (a statement that succeeded without a count, e.g. in a rewritten batch, counts as 1 row)
+     */
+    public int[] executed(int[] updateCounts)
+    {
+        if(this.enabled){
+            this.lap(Phase.EXECUTE);
+            for(int updateCount : updateCounts){
+                this.rows += (updateCount == Statement.SUCCESS_NO_INFO) ? 1 : Math.max(0, updateCount);
+            }
+        }
+
+        return updateCounts;
+    }
+
+    /**
+     * the given number of rows have been read into objects (MAP phase)
+     */
+    public void mapped(long rowCount)
+    {
+        if(this.enabled){
+            this.lap(Phase.MAP);
+            this.rows += rowCount;
+        }
+    }
+
+    /**
+     * the operation failed (it is still recorded, when end() is called)
+     */
+    public void failed(Throwable e)
+    {
+        if(this.enabled && this.error == null){
+            this.error = e;
+        }
+    }
+
+    /**
+     * the operation is over - pass it to the instrumentation
+     */
+    public void end(String sql)
+    {
+        if(!this.enabled || this.totalNanos > 0){
+            return;
+        }
+
+        long now = System.nanoTime();
+        this.totalNanos = Math.max(1, now - this.startNanos);
+        this.bytes = ByteCountingSocketFactory.threadBytes() - this.startBytes;
+        this.sql = sql;
+
+        try {
+            this.instrumentation.record(this);
+        } catch (RuntimeException e) {
+            // metrics must never break the operation being measured
+        }
+    }
+
+    private void lap(Phase phase)
+    {
+        if(this.enabled){
+            long now = System.nanoTime();
+            this.phaseNanos[phase.ordinal()] += now - this.lapNanos;
+            this.lapNanos = now;
+        }
+    }
+
+    public String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * e.g. "find", "insertMany"
+     */
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    /**
+     * the (last) SQL run - parameters are not included
+     */
+    public String getSql()
+    {
+        return sql;
+    }
+
+    /**
+     * the exception the operation failed with, or null
+     */
+    public Throwable getError()
+    {
+        return error;
+    }
+
+    public boolean isFailed()
+    {
+        return error != null;
+    }
+
+    /**
+     * rows read, or rows affected by writes
+     */
+    public long getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * bytes sent and received over the network by this operation
+     * (0 unless DatabaseConfig.setCountBytes(true) - see ByteCountingSocketFactory)
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos;
+    }
+
+    public long getPhaseNanos(Phase phase)
+    {
+        return phaseNanos[phase.ordinal()];
+    }
+}
@@ -0,0 +1,30 @@
+package mattsmithdev.pdocrudrepo;
+
+/**
+ * comparison operators for Query.where()
+ *
+ * e.g.
+ *      repo.query(Module.class).where("price", Operator.GT, 10)
+ */
+public enum Operator
+{
+    EQ("="),
+    NE("<>"),
+    LT("<"),
+    LE("<="),
+    GT(">"),
+    GE(">="),
+    LIKE("LIKE");
+
+    private final String sql;
+
+    Operator(String sql)
+    {
+        this.sql = sql;
+    }
+
+    public String getSql()
+    {
+        return sql;
+    }
+}
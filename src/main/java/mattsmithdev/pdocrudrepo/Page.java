@@ -0,0 +1,112 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * one page of rows returned by DatabaseTableRepository.findPage()
+ *
+ * getNextCursor() is an opaque token to pass back to findPage() for the following page
+ * (null when there are no more rows)
+ *
+ * e.g.
+ *      Page<Module> page = repo.findPage(Module.class, (String) null, 100);
+ *      while(page.hasMore()){
+ *          page = repo.findPage(Module.class, page.getNextCursor(), 100);
+ *      }
+ */
+public class Page<T>
+{
+    private static final String KEYSET_PREFIX = "id:";
+    private static final String OFFSET_PREFIX = "offset:";
+
+    private final T[] items;
+    private final boolean more;
+    private final String nextCursor;
+
+    public Page(T[] items, boolean more, String nextCursor)
+    {
+        this.items = items;
+        this.more = more;
+        this.nextCursor = nextCursor;
+    }
+
+    public T[] getItems()
+    {
+        return items;
+    }
+
+    public int size()
+    {
+        return items.length;
+    }
+
+    public boolean hasMore()
+    {
+        return more;
+    }
+
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    /**
+     * token for "rows with id greater than afterId"
+     */
+    static String keysetCursor(int afterId)
+    {
+        return encode(KEYSET_PREFIX + afterId);
+    }
+
+    /**
+     * token for "rows from position offset"
+     */
+    static String offsetCursor(int offset)
+    {
+        return encode(OFFSET_PREFIX + offset);
+    }
+
+    static boolean isOffsetCursor(String cursor)
+    {
+        return decode(cursor).startsWith(OFFSET_PREFIX);
+    }
+
+    /**
+     * the id (keyset cursor) or offset (offset cursor) held by the token
+     */
+    static int cursorValue(String cursor)
+    {
+        String value = decode(cursor);
+        String number = value.startsWith(OFFSET_PREFIX)
+                ? value.substring(OFFSET_PREFIX.length())
+                : value.substring(KEYSET_PREFIX.length());
+
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid page cursor: " + cursor, e);
+        }
+    }
+
+    private static String encode(String value)
+    {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor)
+    {
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid page cursor: " + cursor, e);
+        }
+
+        if(!value.startsWith(KEYSET_PREFIX) && !value.startsWith(OFFSET_PREFIX)){
+            throw new IllegalArgumentException("invalid page cursor: " + cursor);
+        }
+
+        return value;
+    }
+}
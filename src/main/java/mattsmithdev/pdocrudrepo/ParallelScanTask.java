@@ -0,0 +1,48 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * scans one id range for DatabaseTableRepository.parallelScan(), a page at a time
+ *
+ * before each page, if this worker has no other task queued (so any idle worker has nothing to steal),
+ * the upper half of the rest of the range is forked as a new task - so a range holding far more rows
+ * than the others is split up between whichever workers run out of work, rather than scanned by one
+ */
+class ParallelScanTask<T> extends RecursiveAction
+{
+    private static final long serialVersionUID = 1L;
+
+    private final IdRangeSpliterator<T> range;
+    private final Consumer<? super T> consumer;
+
+    ParallelScanTask(IdRangeSpliterator<T> range, Consumer<? super T> consumer)
+    {
+        this.range = range;
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected void compute()
+    {
+        List<ParallelScanTask<T>> forked = new ArrayList<>();
+
+        do {
+            if(getSurplusQueuedTaskCount() <= 0){
+                IdRangeSpliterator<T> upper = this.range.trySplit();
+                if(upper != null){
+                    ParallelScanTask<T> task = new ParallelScanTask<>(upper, this.consumer);
+                    task.fork();
+                    forked.add(task);
+                }
+            }
+        } while(this.range.forEachInPage(this.consumer));
+
+        for(ParallelScanTask<T> task : forked){
+            task.join();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a physical JDBC connection owned by a ConnectionPool
+ *
+ * each time it is borrowed callers get a fresh proxy - calling close() on the proxy
+ * hands the physical connection back to the pool (and closes any statements left open),
+ * after which that proxy can no longer be used
+ */
+class PooledConnection
+{
+    private final ConnectionPool pool;
+    private final Connection physical;
+    private final long createdAt;
+
+    private volatile long lastUsedAt;
+    private volatile long borrowedAt;
+    private volatile Throwable borrowStack;
+    private volatile boolean leakReported;
+    private volatile boolean broken;
+
+    private final List<Statement> openStatements = new ArrayList<>();
+
+    PooledConnection(ConnectionPool pool, Connection physical)
+    {
+        this.pool = pool;
+        this.physical = physical;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = this.createdAt;
+    }
+
+    /**
+     * return a new proxy for this borrow of the connection
+     */
+    Connection borrow(boolean recordStack)
+    {
+        this.borrowedAt = System.currentTimeMillis();
+        this.leakReported = false;
+        this.borrowStack = recordStack ? new Throwable("connection borrowed here") : null;
+
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{ Connection.class },
+                new BorrowHandler());
+    }
+
+    /**
+     * close any statements the borrower forgot about, and put the connection back into auto-commit mode
+     */
+    void resetAfterBorrow()
+    {
+        synchronized (this.openStatements) {
+            for (Statement statement : this.openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // ignore - statement is being discarded anyway
+                }
+            }
+            this.openStatements.clear();
+        }
+
+        try {
+            if(!this.physical.getAutoCommit()){
+                this.physical.rollback();
+                this.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            this.broken = true;
+        }
+
+        this.lastUsedAt = System.currentTimeMillis();
+        this.borrowStack = null;
+    }
+
+    boolean isValid(int timeoutSeconds)
+    {
+        try {
+            return !this.broken && this.physical.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void closePhysical()
+    {
+        try {
+            this.physical.close();
+        } catch (SQLException e) {
+            // ignore - connection is being discarded anyway
+        }
+    }
+
+    private static boolean isStatementClosed(Statement statement)
+    {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    Connection getPhysical()
+    {
+        return physical;
+    }
+
+    long getCreatedAt()
+    {
+        return createdAt;
+    }
+
+    long getLastUsedAt()
+    {
+        return lastUsedAt;
+    }
+
+    long getBorrowedAt()
+    {
+        return borrowedAt;
+    }
+
+    Throwable getBorrowStack()
+    {
+        return borrowStack;
+    }
+
+    boolean isLeakReported()
+    {
+        return leakReported;
+    }
+
+    void setLeakReported(boolean leakReported)
+    {
+        this.leakReported = leakReported;
+    }
+
+    boolean isBroken()
+    {
+        return broken;
+    }
+
+    /**
+     * invocation handler for one borrow of the physical connection
+     */
+    private class BorrowHandler implements InvocationHandler
+    {
+        private boolean closed = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+
+            if(name.equals("close")){
+                if(!this.closed){
+                    this.closed = true;
+                    pool.release(PooledConnection.this);
+                }
+                return null;
+            }
+
+            if(name.equals("isClosed")){
+                return this.closed || physical.isClosed();
+            }
+
+            if(name.equals("equals")){
+                return proxy == args[0];
+            }
+
+            if(name.equals("hashCode")){
+                return System.identityHashCode(proxy);
+            }
+
+            if(name.equals("toString")){
+                return "PooledConnection[" + physical + "]";
+            }
+
+            if(this.closed){
+                throw new SQLException("connection has already been returned to the pool");
+            }
+
+            try {
+                Object result = method.invoke(physical, args);
+
+                if(result instanceof Statement){
+                    synchronized (openStatements) {
+                        // long borrows (e.g. transactions) create many statements - forget ones already closed
+                        if(openStatements.size() >= 64){
+                            openStatements.removeIf(PooledConnection::isStatementClosed);
+                        }
+                        openStatements.add((Statement) result);
+                    }
+                }
+
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof SQLException){
+                    String sqlState = ((SQLException) cause).getSQLState();
+                    // SQLSTATE class 08 = connection exception
+                    if(sqlState != null && sqlState.startsWith("08")){
+                        broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.stream.Stream;
+
+/**
+ * fluent builder for a SELECT on a repository's table - only the selected columns are fetched,
+ * and every value is sent as a '?' parameter
+ *
+ * column names are checked against the entity's properties, so they can't be used to inject SQL
+ *
+ * e.g.
+ *      List<Module> modules = repo.query(Module.class)
+ *          .select("id", "title")
+ *          .where("price", Operator.GT, 10)
+ *          .orderBy("id")
+ *          .limit(100)
+ *          .list();
+ *
+ *      SELECT id, title from module WHERE price > ? ORDER BY id LIMIT ?      (10, 100)
+ *
+ * properties not selected are left at their default values (0, null, false) - with dirty tracking on,
+ * update() on such a partial entity only writes the columns changed since it was loaded
+ * (but with dirty tracking off, or with updateMany()/saveAll(), which write every column,
+ * those defaults would be written over the real values)
+ *
+ * rows can also be read into a DTO class, whose properties are matched to the selected columns by name:
+ *      List<ModuleSummary> summaries = repo.query(Module.class).select("id", "title").list(ModuleSummary.class);
+ *
+ * or just counted / aggregated by the DB, so only the answer is sent back (select(), orderBy() and limit() are ignored):
+ *      long cheap = repo.query(Module.class).where("price", Operator.LT, 10).count();
+ *      BigDecimal total = repo.query(Module.class).sum("price");      SELECT SUM(price) from module
+ *      LocalDate first = repo.query(Module.class).min("due");         (typed by the property)
+ *      Map<String, Long> perCategory = repo.query(Module.class).groupBy("category");
+ */
+public class Query<T>
+{
+    private final DatabaseTableRepository repository;
+    private final Class<T> clazz;
+    private final EntityMetadata<T> metadata;
+
+    private final List<String> columns = new ArrayList<>();
+    private final List<String> conditions = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+    private final List<String> ordering = new ArrayList<>();
+    private int limit = -1;
+    private int offset = 0;
+
+    public Query(DatabaseTableRepository repository, Class<T> clazz)
+    {
+        this.repository = repository;
+        this.clazz = clazz;
+        this.metadata = EntityMetadata.of(clazz);
+    }
+
+    /**
+     * fetch just these columns (default: all of them)
+     */
+    public Query<T> select(String... columnNames)
+    {
+        for(String columnName : columnNames){
+            this.columns.add(this.column(columnName));
+        }
+
+        return this;
+    }
+
+    /**
+     * add a condition - several where()s must all be true
+     */
+    public Query<T> where(String columnName, Operator operator, Object value)
+    {
+        if(value == null){
+            throw new IllegalArgumentException("where() value for '" + columnName + "' is null - use whereNull()");
+        }
+
+        this.conditions.add(this.column(columnName) + " " + operator.getSql() + " ?");
+        this.parameters.add(value);
+        return this;
+    }
+
+    /**
+     * shorthand for where(columnName, Operator.EQ, value)
+     */
+    public Query<T> where(String columnName, Object value)
+    {
+        return this.where(columnName, Operator.EQ, value);
+    }
+
+    public Query<T> whereNull(String columnName)
+    {
+        this.conditions.add(this.column(columnName) + " IS NULL");
+        return this;
+    }
+
+    public Query<T> whereNotNull(String columnName)
+    {
+        this.conditions.add(this.column(columnName) + " IS NOT NULL");
+        return this;
+    }
+
+    public Query<T> orderBy(String columnName)
+    {
+        this.ordering.add(this.column(columnName));
+        return this;
+    }
+
+    public Query<T> orderByDescending(String columnName)
+    {
+        this.ordering.add(this.column(columnName) + " DESC");
+        return this;
+    }
+
+    public Query<T> limit(int limit)
+    {
+        this.limit = Math.max(0, limit);
+        return this;
+    }
+
+    public Query<T> offset(int offset)
+    {
+        this.offset = Math.max(0, offset);
+        return this;
+    }
+
+    /**
+     * the SQL this query will run
+     */
+    public String getSql()
+    {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(this.columns.isEmpty() ? "*" : String.join(", ", this.columns));
+        sql.append(" from ").append(this.repository.getTableName());
+
+        sql.append(this.getWhere());
+        if(!this.ordering.isEmpty()){
+            sql.append(" ORDER BY ").append(String.join(", ", this.ordering));
+        }
+        if(this.limit >= 0){
+            sql.append(DatabaseManager.getDialect().getLimitClause(this.offset > 0));
+        } else if(this.offset > 0){
+            sql.append(DatabaseManager.getDialect().getOffsetClause());
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * the values for the '?' placeholders in getSql(), in order
+     */
+    public Object[] getParameters()
+    {
+        List<Object> values = new ArrayList<>(this.parameters);
+        if(this.limit >= 0){
+            values.add(this.limit);
+            if(this.offset > 0){
+                values.add(this.offset);
+            }
+        } else if(this.offset > 0){
+            values.add(this.offset);
+        }
+
+        return values.toArray();
+    }
+
+    /**
+     * run the query, returning the matching rows as (possibly partial) entity objects
+     */
+    public List<T> list()
+    {
+        return this.list(this.clazz);
+    }
+
+    /**
+     * run the query, returning the matching rows as objects of the given (e.g. DTO) class
+     */
+    public <D> List<D> list(Class<D> resultClass)
+    {
+        String sql = this.getSql();
+
+        try {
+            return this.repository.queryForList(resultClass, sql, this.getParameters());
+        } catch (SQLException e) {
+            throw DatabaseException.translate("trying to SELECT from table " + this.repository.getTableName(), sql, e);
+        }
+    }
+
+    /**
+     * the first matching row, or null if there are none
+     */
+    public T first()
+    {
+        int previousLimit = this.limit;
+        this.limit = 1;
+        try {
+            List<T> rows = this.list();
+            return rows.isEmpty() ? null : rows.get(0);
+        } finally {
+            this.limit = previousLimit;
+        }
+    }
+
+    /**
+     * stream the matching rows (see DatabaseTableRepository.stream() - close the stream when done)
+     */
+    public Stream<T> stream()
+    {
+        return this.stream(this.clazz);
+    }
+
+    public <D> Stream<D> stream(Class<D> resultClass)
+    {
+        return this.repository.streamQuery(resultClass, this.getSql(), this.getParameters());
+    }
+
+    /**
+     * number of matching rows, e.g. SELECT COUNT(*) from module WHERE price > ?
+     */
+    public long count()
+    {
+        return this.aggregate("count", "COUNT(*)", resultset -> resultset.getLong(1));
+    }
+
+    /**
+     * whether any row matches, e.g. SELECT 1 from module WHERE price > ? LIMIT ?
+     */
+    public boolean exists()
+    {
+        String sql = "SELECT 1 from " + this.repository.getTableName() + this.getWhere()
+                + DatabaseManager.getDialect().getLimitClause(false);
+        List<Object> values = new ArrayList<>(this.parameters);
+        values.add(1);
+
+        return !this.repository.queryForRows("exists", sql, resultset -> Boolean.TRUE, values.toArray()).isEmpty();
+    }
+
+    /**
+     * total of a numeric column over the matching rows (0 if there are none), e.g. SELECT SUM(price) from module
+     */
+    public BigDecimal sum(String columnName)
+    {
+        BigDecimal sum = this.aggregate("sum", "SUM(" + this.column(columnName) + ")", resultset -> resultset.getBigDecimal(1));
+        return (sum == null) ? BigDecimal.ZERO : sum;
+    }
+
+    /**
+     * mean of a numeric column over the matching rows (empty if there are none), e.g. SELECT AVG(price) from module
+     */
+    public OptionalDouble avg(String columnName)
+    {
+        Double avg = this.aggregate("avg", "AVG(" + this.column(columnName) + ")", resultset -> {
+            double value = resultset.getDouble(1);
+            return resultset.wasNull() ? null : value;
+        });
+
+        return (avg == null) ? OptionalDouble.empty() : OptionalDouble.of(avg);
+    }
+
+    /**
+     * smallest value of the column over the matching rows (null if there are none), as the property's type
+     * e.g. LocalDate first = query.min("due");
+     */
+    public <V> V min(String columnName)
+    {
+        ColumnMetadata column = this.columnMetadata(columnName);
+        return this.aggregate("min", "MIN(" + column.getName() + ")", resultset -> this.<V>read(resultset, 1, column));
+    }
+
+    /**
+     * largest value of the column over the matching rows (null if there are none), as the property's type
+     */
+    public <V> V max(String columnName)
+    {
+        ColumnMetadata column = this.columnMetadata(columnName);
+        return this.aggregate("max", "MAX(" + column.getName() + ")", resultset -> this.<V>read(resultset, 1, column));
+    }
+
+    /**
+     * number of matching rows for each value of the column (as the property's type), in order of value
+     *
+     * e.g. SELECT category, COUNT(*) from module GROUP BY category ORDER BY category
+     *      {ART=3, MATHS=12, SCIENCE=7}
+     */
+    public <K> Map<K, Long> groupBy(String columnName)
+    {
+        ColumnMetadata column = this.columnMetadata(columnName);
+        String sql = "SELECT " + column.getName() + ", COUNT(*) from " + this.repository.getTableName() + this.getWhere()
+                + " GROUP BY " + column.getName() + " ORDER BY " + column.getName();
+
+        Map<K, Long> counts = new LinkedHashMap<>();
+        this.repository.queryForRows("groupBy", sql, resultset -> {
+            counts.put(this.read(resultset, 1, column), resultset.getLong(2));
+            return null;
+        }, this.parameters.toArray());
+
+        return counts;
+    }
+
+    /**
+     * SELECT the given aggregate over the matching rows - its one row, read by the mapper
+     */
+    private <R> R aggregate(String operation, String select, RowMapper<R> rowMapper)
+    {
+        String sql = "SELECT " + select + " from " + this.repository.getTableName() + this.getWhere();
+        return this.repository.queryForRows(operation, sql, rowMapper, this.parameters.toArray()).get(0);
+    }
+
+    /**
+     * read a column's value by its property's TypeConverter (null for SQL NULL, even for a primitive property)
+     */
+    @SuppressWarnings("unchecked")
+    private <V> V read(ResultSet resultset, int index, ColumnMetadata column) throws SQLException
+    {
+        TypeConverter<?> converter = TypeConverters.forType(column.getType());
+        Object value = (converter != null) ? converter.read(resultset, index) : resultset.getString(index);
+
+        return resultset.wasNull() ? null : (V) value;
+    }
+
+    private String getWhere()
+    {
+        return this.conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", this.conditions);
+    }
+
+    private String column(String columnName)
+    {
+        return this.columnMetadata(columnName).getName();
+    }
+
+    private ColumnMetadata columnMetadata(String columnName)
+    {
+        ColumnMetadata column = this.metadata.getColumn(columnName);
+        if(column == null){
+            throw new IllegalArgumentException("no column '" + columnName + "' for entity " + this.clazz.getSimpleName());
+        }
+
+        return column;
+    }
+}
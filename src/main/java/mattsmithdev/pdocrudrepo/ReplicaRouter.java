@@ -0,0 +1,258 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * routes reads to read replicas - one ConnectionPool per replica endpoint (see DatabaseConfig.setReplicas())
+ *
+ * - a replica is chosen round-robin, or the one with the lowest ping time (Selection.LEAST_LATENCY)
+ * - every healthCheckIntervalMillis each replica is pinged; replicas that fail are skipped until a ping succeeds again
+ * - if a replica can't connect, it is marked unhealthy and the next one is tried
+ * - replica pools are borrowed from without waiting - a replica whose pool is all in use is just busy,
+ *   so the next one is tried (and if all are busy, the read goes to the primary) without marking it unhealthy
+ * - getConnection() returns null when no replica is usable - DatabaseManager then reads from the primary
+ *
+ * NOTE: replicas are assumed to hold the same database (with the same credentials) as the primary
+ * (MySQL only - the DSNs come from Dialect.getReplicaDsn())
+ */
+public class ReplicaRouter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    public enum Selection
+    {
+        ROUND_ROBIN, LEAST_LATENCY
+    }
+
+    /**
+     * one replica endpoint, e.g. "127.0.0.1:3307"
+     */
+    public static class Replica
+    {
+        private final String endpoint;
+        private final ConnectionPool pool;
+        private volatile boolean healthy = true;
+        private volatile long latencyNanos;
+
+        Replica(String endpoint, ConnectionPool pool)
+        {
+            this.endpoint = endpoint;
+            this.pool = pool;
+        }
+
+        public String getEndpoint()
+        {
+            return endpoint;
+        }
+
+        public ConnectionPool getPool()
+        {
+            return pool;
+        }
+
+        public boolean isHealthy()
+        {
+            return healthy;
+        }
+
+        /**
+         * moving average of the health check ping times (0 until the first ping)
+         */
+        public long getLatencyNanos()
+        {
+            return latencyNanos;
+        }
+
+        void pinged(long nanos)
+        {
+            long previous = this.latencyNanos;
+            this.latencyNanos = (previous == 0) ? nanos : (previous * 3 + nanos) / 4;
+            if(!this.healthy){
+                this.healthy = true;
+                LOG.info("replica {} is back - reads resume", this.endpoint);
+            }
+        }
+
+        void failed(String reason)
+        {
+            if(this.healthy){
+                this.healthy = false;
+                LOG.warn("replica {} is down - reads go elsewhere until it recovers :: {}", this.endpoint, reason);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.endpoint + (this.healthy ? "" : " (down)") + " " + TimeUnit.NANOSECONDS.toMicros(this.latencyNanos) + "us";
+        }
+    }
+
+    private final List<Replica> replicas;
+    private final Selection selection;
+    private final long readYourWritesMillis;
+    private final int validationTimeoutSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * a pool for each of config.getReplicas(), health checked in the background
+     */
+    public ReplicaRouter(DatabaseConfig config)
+    {
+        List<Replica> replicaList = new ArrayList<>();
+        for(String endpoint : config.getReplicas()){
+            Properties properties = config.getConnectionProperties();
+            // so a replica that is down fails fast, rather than holding up reads
+            properties.setProperty("connectTimeout", String.valueOf(TimeUnit.SECONDS.toMillis(config.getValidationTimeoutSeconds())));
+            replicaList.add(new Replica(endpoint, new ConnectionPool(config.getReplicaDsn(endpoint), properties, config)));
+        }
+
+        this.replicas = Collections.unmodifiableList(replicaList);
+        this.selection = config.getReplicaSelection();
+        this.readYourWritesMillis = config.getReadYourWritesMillis();
+        this.validationTimeoutSeconds = config.getValidationTimeoutSeconds();
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pdocrudrepo-replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = config.getReplicaHealthCheckIntervalMillis();
+        this.healthChecker.scheduleWithFixedDelay(this::healthCheck, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * for testing replica selection - no pools, no health checks
+     */
+    ReplicaRouter(List<Replica> replicas, Selection selection)
+    {
+        this.replicas = replicas;
+        this.selection = selection;
+        this.readYourWritesMillis = 0;
+        this.validationTimeoutSeconds = 5;
+        this.healthChecker = null;
+    }
+
+    /**
+     * borrow a connection from a healthy replica (close() it to give it back), or null if none can give one
+     */
+    public Connection getConnection()
+    {
+        for(int attempt = 0; attempt < this.replicas.size(); attempt++){
+            Replica replica = this.choose();
+            if(replica == null){
+                return null;
+            }
+
+            try {
+                return replica.pool.getConnection(0);
+            } catch (ConnectionPool.PoolExhaustedException e) {
+                // busy, not down - try the next replica
+            } catch (SQLException e) {
+                // fail over to the next replica
+                replica.failed(e.getMessage());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * the healthy replica to read from next, or null if there are none
+     */
+    Replica choose()
+    {
+        int size = this.replicas.size();
+        if(this.selection == Selection.LEAST_LATENCY){
+            Replica fastest = null;
+            for(Replica replica : this.replicas){
+                if(replica.healthy && (fastest == null || replica.latencyNanos < fastest.latencyNanos)){
+                    fastest = replica;
+                }
+            }
+            return fastest;
+        }
+
+        int start = this.next.getAndIncrement() & Integer.MAX_VALUE;
+        for(int i = 0; i < size; i++){
+            Replica replica = this.replicas.get((start + i) % size);
+            if(replica.healthy){
+                return replica;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * ping each replica, updating whether it is healthy and its latency
+     * (a replica whose pool is all in use is skipped - it is evidently answering)
+     */
+    void healthCheck()
+    {
+        for(Replica replica : this.replicas){
+            try (Connection connection = replica.pool.getConnection(0)) {
+                long start = System.nanoTime();
+                if(connection.isValid(this.validationTimeoutSeconds)){
+                    replica.pinged(System.nanoTime() - start);
+                } else {
+                    replica.failed("no reply to ping within " + this.validationTimeoutSeconds + "s");
+                }
+            } catch (ConnectionPool.PoolExhaustedException e) {
+                // busy - check it next time
+            } catch (SQLException e) {
+                replica.failed(e.getMessage());
+            } catch (RuntimeException e) {
+                // keep the health checks running
+                LOG.warn("replica {} health check failed :: {}", replica.endpoint, e.toString());
+            }
+        }
+    }
+
+    public List<Replica> getReplicas()
+    {
+        return replicas;
+    }
+
+    public Selection getSelection()
+    {
+        return selection;
+    }
+
+    /**
+     * after a thread writes, its reads go to the primary for this long (0 = off) - see DatabaseManager.getReadConnection()
+     */
+    public long getReadYourWritesMillis()
+    {
+        return readYourWritesMillis;
+    }
+
+    /**
+     * stop health checks and close the replica pools
+     */
+    public void close()
+    {
+        if(this.healthChecker != null){
+            this.healthChecker.shutdownNow();
+        }
+        for(Replica replica : this.replicas){
+            if(replica.pool != null){
+                replica.pool.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * lazily maps the rows of an open ResultSet, one at a time, as a Spliterator (for use in a Stream)
+ *
+ * the result set, its statement and connection are closed when the last row has been read,
+ * or when close() is called (e.g. from Stream.onClose()) - whichever comes first
+ */
+public class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable
+{
+    private final ResultSet resultset;
+    private final RowMapper<T> rowMapper;
+    private final AutoCloseable[] resources;
+    private boolean closed = false;
+    private long rowCount = 0;
+
+    /**
+     * resources are closed in the order given, e.g. (resultset, statement, connection)
+     */
+    public ResultSetSpliterator(ResultSet resultset, RowMapper<T> rowMapper, AutoCloseable... resources)
+    {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.resultset = resultset;
+        this.rowMapper = rowMapper;
+        this.resources = resources;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action)
+    {
+        if(this.closed){
+            return false;
+        }
+
+        try {
+            if(!this.resultset.next()){
+                this.close();
+                return false;
+            }
+
+            T object = this.rowMapper.mapRow(this.resultset);
+            this.rowCount++;
+            action.accept(object);
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            this.close();
+            throw DatabaseException.translate("trying to read next row", null, e);
+        }
+    }
+
+    /**
+     * number of rows mapped so far
+     */
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    @Override
+    public void close()
+    {
+        if(this.closed){
+            return;
+        }
+        this.closed = true;
+
+        for(AutoCloseable resource : this.resources){
+            try {
+                if(resource != null){
+                    resource.close();
+                }
+            } catch (Exception e) {
+                // ignore - closing anyway
+            }
+        }
+    }
+}
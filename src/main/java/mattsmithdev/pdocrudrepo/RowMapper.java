@@ -0,0 +1,14 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * turns the current row of a ResultSet into an entity object
+ *
+ * mappers are bound to the column layout of one result set - get one from RowMappers.forResultSet()
+ */
+public interface RowMapper<T>
+{
+    T mapRow(ResultSet resultset) throws SQLException;
+}
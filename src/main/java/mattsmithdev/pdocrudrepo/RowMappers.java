@@ -0,0 +1,644 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * builds (and caches) one specialised row mapper per entity class
+ *
+ * for each column setter we try, in order:
+ *      1) LambdaMetafactory - a generated class that calls e.g. setPrice(double) directly (no boxing, no reflection)
+ *      2) a MethodHandle adapted to (Object, double)void, called with invokeExact (no boxing)
+ *      3) the reflective ColumnMetadata.set() (boxes primitives)
+ *
+ * values are read from the ResultSet by column index, with primitive getters (getInt(), getDouble() ...)
+ * for the common types, and through the type's TypeConverter for the rest
+ *
+ * a mapper given a DirtyTracker also keeps the (boxed) values it reads, as the entity's snapshot -
+ * so tracking costs no getter calls
+ *
+ * e.g.
+ *      RowMapper<Module> mapper = RowMappers.forResultSet(Module.class, resultset);
+ *      while(resultset.next()){
+ *          modules.add(mapper.mapRow(resultset));
+ *      }
+ */
+public class RowMappers
+{
+    private static final ConcurrentHashMap<Class<?>, EntityMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * return a mapper for the given entity class, bound to the column positions of the given result set
+     */
+    public static <T> RowMapper<T> forResultSet(Class<T> clazz, ResultSet resultset) throws SQLException
+    {
+        return RowMappers.forResultSet(clazz, resultset, null);
+    }
+
+    /**
+     * as forResultSet(clazz, resultset), also recording each entity mapped in the given tracker (if not null)
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> forResultSet(Class<T> clazz, ResultSet resultset, DirtyTracker tracker) throws SQLException
+    {
+        EntityMapper<T> entityMapper = (EntityMapper<T>) MAPPERS.computeIfAbsent(clazz, RowMappers::createEntityMapper);
+        return (tracker == null)
+                ? entityMapper.bind(resultset.getMetaData())
+                : entityMapper.bindTracking(resultset.getMetaData(), tracker);
+    }
+
+    /**
+     * true if the mapper for this class was generated (not using the reflective fallback)
+     */
+    public static boolean isGenerated(Class<?> clazz)
+    {
+        EntityMapper<?> entityMapper = MAPPERS.computeIfAbsent(clazz, RowMappers::createEntityMapper);
+        return entityMapper.generated;
+    }
+
+    /**
+     * forget all mappers (e.g. after a TypeConverter is registered)
+     */
+    static void clearCache()
+    {
+        MAPPERS.clear();
+    }
+
+    private static <T> EntityMapper<T> createEntityMapper(Class<T> clazz)
+    {
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+
+        // generated classes live next to RowMappers, so they can only link to entity classes visible from here
+        boolean generated = isVisible(clazz);
+        Supplier<T> factory = generated ? generatedFactory(clazz) : null;
+        if(factory == null){
+            factory = metadata::newInstance;
+            generated = false;
+        }
+
+        List<ColumnReader> readers = new ArrayList<>();
+        List<ValueReader> valueReaders = new ArrayList<>();
+        for (ColumnMetadata column : metadata.getColumns()) {
+            // types not mapped are skipped
+            if(!column.isWritable() || !isMappedType(column.getType())){
+                continue;
+            }
+            valueReaders.add(new ValueReader(column));
+
+            ColumnReader reader = generated ? generatedReader(column) : null;
+            if(reader == null){
+                reader = methodHandleReader(column);
+                generated = false;
+            }
+            if(reader == null){
+                reader = reflectiveReader(column);
+            }
+            readers.add(reader);
+        }
+
+        return new EntityMapper<>(metadata, factory, readers.toArray(new ColumnReader[0]),
+                valueReaders.toArray(new ValueReader[0]), generated);
+    }
+
+    private static boolean isMappedType(Class<?> type)
+    {
+        return TypeConverters.forType(type) != null;
+    }
+
+    private static boolean isVisible(Class<?> clazz)
+    {
+        try {
+            return Class.forName(clazz.getName(), false, RowMappers.class.getClassLoader()) == clazz;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // ------------------- 1) LambdaMetafactory -------------------
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> generatedFactory(Class<T> clazz)
+    {
+        try {
+            MethodHandle constructor = LOOKUP.findConstructor(clazz, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    constructor,
+                    MethodType.methodType(clazz));
+
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static ColumnReader generatedReader(ColumnMetadata column)
+    {
+        Class<?> type = column.getType();
+        final String name = column.getName();
+
+        try {
+            if(type == double.class){
+                final ObjDoubleConsumer<Object> setter = lambda(column, ObjDoubleConsumer.class, "accept");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.accept(target, resultset.getDouble(index));
+                    }
+                };
+            }
+
+            if(type == float.class){
+                final FloatSetter setter = lambda(column, FloatSetter.class, "set");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.set(target, resultset.getFloat(index));
+                    }
+                };
+            }
+
+            if(type == boolean.class){
+                final BooleanSetter setter = lambda(column, BooleanSetter.class, "set");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.set(target, resultset.getInt(index) == 1);
+                    }
+                };
+            }
+
+            if(type == int.class){
+                final ObjIntConsumer<Object> setter = lambda(column, ObjIntConsumer.class, "accept");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.accept(target, resultset.getInt(index));
+                    }
+                };
+            }
+
+            if(type == String.class){
+                final BiConsumer<Object, Object> setter = lambda(column, BiConsumer.class, "accept");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.accept(target, resultset.getString(index));
+                    }
+                };
+            }
+
+            if(type == long.class){
+                final ObjLongConsumer<Object> setter = lambda(column, ObjLongConsumer.class, "accept");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.accept(target, resultset.getLong(index));
+                    }
+                };
+            }
+
+            if(type == short.class){
+                final ShortSetter setter = lambda(column, ShortSetter.class, "set");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.set(target, resultset.getShort(index));
+                    }
+                };
+            }
+
+            if(type == byte.class){
+                final ByteSetter setter = lambda(column, ByteSetter.class, "set");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.set(target, resultset.getByte(index));
+                    }
+                };
+            }
+
+            if(!type.isPrimitive()){
+                // e.g. LocalDate, UUID, Integer - read by the type's converter
+                final TypeConverter<?> converter = TypeConverters.forType(type);
+                final BiConsumer<Object, Object> setter = lambda(column, BiConsumer.class, "accept");
+                return new ColumnReader(name)
+                {
+                    void read(ResultSet resultset, int index, Object target) throws SQLException
+                    {
+                        setter.accept(target, converter.read(resultset, index));
+                    }
+                };
+            }
+        } catch (Throwable e) {
+            return null;
+        }
+
+        return null;
+    }
+
+    /**
+     * generate an instance of the given functional interface that calls the column's setter
+     * e.g. ObjDoubleConsumer whose accept(o, v) calls ((Module)o).setPrice(v)
+     */
+    @SuppressWarnings("unchecked")
+    private static <F> F lambda(ColumnMetadata column, Class<?> functionalInterface, String methodName) throws Throwable
+    {
+        MethodHandle setter = LOOKUP.unreflect(column.getSetter());
+        Class<?> valueType = column.getType().isPrimitive() ? column.getType() : Object.class;
+        Class<?> entityClass = column.getSetter().getDeclaringClass();
+
+        CallSite site = LambdaMetafactory.metafactory(LOOKUP, methodName,
+                MethodType.methodType(functionalInterface),
+                MethodType.methodType(void.class, Object.class, valueType),
+                setter,
+                MethodType.methodType(void.class, entityClass, column.getType()));
+
+        return (F) site.getTarget().invoke();
+    }
+
+    // ------------------- 2) MethodHandle -------------------
+
+    private static ColumnReader methodHandleReader(ColumnMetadata column)
+    {
+        Class<?> type = column.getType();
+        final String name = column.getName();
+
+        final MethodHandle setter;
+        try {
+            MethodHandle handle = LOOKUP.unreflect(column.getSetter());
+            Class<?> valueType = type.isPrimitive() ? type : Object.class;
+            setter = handle.asType(MethodType.methodType(void.class, Object.class, valueType));
+        } catch (Throwable e) {
+            return null;
+        }
+
+        if(type == double.class){
+            return new ColumnReader(name)
+            {
+                void read(ResultSet resultset, int index, Object target) throws SQLException
+                {
+                    double value = resultset.getDouble(index);
+                    try {
+                        setter.invokeExact(target, value);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            };
+        }
+
+        if(type == float.class){
+            return new ColumnReader(name)
+            {
+                void read(ResultSet resultset, int index, Object target) throws SQLException
+                {
+                    float value = resultset.getFloat(index);
+                    try {
+                        setter.invokeExact(target, value);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            };
+        }
+
+        if(type == boolean.class){
+            return new ColumnReader(name)
+            {
+                void read(ResultSet resultset, int index, Object target) throws SQLException
+                {
+                    boolean value = (resultset.getInt(index) == 1);
+                    try {
+                        setter.invokeExact(target, value);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            };
+        }
+
+        if(type == int.class){
+            return new ColumnReader(name)
+            {
+                void read(ResultSet resultset, int index, Object target) throws SQLException
+                {
+                    int value = resultset.getInt(index);
+                    try {
+                        setter.invokeExact(target, value);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            };
+        }
+
+        if(type == String.class){
+            return new ColumnReader(name)
+            {
+                void read(ResultSet resultset, int index, Object target) throws SQLException
+                {
+                    Object value = resultset.getString(index);
+                    try {
+                        setter.invokeExact(target, value);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            };
+        }
+
+        if(type == long.class){
+            return new ColumnReader(name)
+            {
+                void read(ResultSet resultset, int index, Object target) throws SQLException
+                {
+                    long value = resultset.getLong(index);
+                    try {
+                        setter.invokeExact(target, value);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            };
+        }
+
+        // any other type - the converter's (boxed) value, unboxed by the handle for short/byte
+        final TypeConverter<?> converter = TypeConverters.forType(type);
+        final MethodHandle boxedSetter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return new ColumnReader(name)
+        {
+            void read(ResultSet resultset, int index, Object target) throws SQLException
+            {
+                Object value = converter.read(resultset, index);
+                try {
+                    boxedSetter.invokeExact(target, value);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        };
+    }
+
+    private static RuntimeException rethrow(Throwable e)
+    {
+        if(e instanceof Error){
+            throw (Error) e;
+        }
+        if(e instanceof RuntimeException){
+            return (RuntimeException) e;
+        }
+
+        return new MappingException("unable to map column :: " + e.getMessage(), e);
+    }
+
+    // ------------------- 3) reflection -------------------
+
+    private static ColumnReader reflectiveReader(final ColumnMetadata column)
+    {
+        final TypeConverter<?> converter = TypeConverters.forType(column.getType());
+
+        return new ColumnReader(column.getName())
+        {
+            void read(ResultSet resultset, int index, Object target) throws SQLException
+            {
+                column.set(target, converter.read(resultset, index));
+            }
+        };
+    }
+
+    // ------------------- support types -------------------
+
+    /**
+     * (Object, float) setter - there is no ObjFloatConsumer in java.util.function
+     */
+    public interface FloatSetter
+    {
+        void set(Object target, float value);
+    }
+
+    /**
+     * (Object, boolean) setter - there is no ObjBooleanConsumer in java.util.function
+     */
+    public interface BooleanSetter
+    {
+        void set(Object target, boolean value);
+    }
+
+    /**
+     * (Object, short) setter
+     */
+    public interface ShortSetter
+    {
+        void set(Object target, short value);
+    }
+
+    /**
+     * (Object, byte) setter
+     */
+    public interface ByteSetter
+    {
+        void set(Object target, byte value);
+    }
+
+    /**
+     * reads one column (by index) and passes the value to the entity's setter
+     */
+    abstract static class ColumnReader
+    {
+        final String columnName;
+
+        ColumnReader(String columnName)
+        {
+            this.columnName = columnName;
+        }
+
+        abstract void read(ResultSet resultset, int index, Object target) throws SQLException;
+    }
+
+    /**
+     * reads one column as a (boxed) value, passes it to the entity's setter and returns it - for tracking mappers
+     * (via a MethodHandle, or reflection if the setter can't be looked up from here)
+     */
+    private static class ValueReader
+    {
+        final ColumnMetadata column;
+        final TypeConverter<?> converter;
+        final MethodHandle setter;
+
+        ValueReader(ColumnMetadata column)
+        {
+            this.column = column;
+            this.converter = TypeConverters.forType(column.getType());
+
+            MethodHandle handle;
+            try {
+                handle = LOOKUP.unreflect(column.getSetter()).asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (Throwable e) {
+                handle = null;
+            }
+            this.setter = handle;
+        }
+
+        Object read(ResultSet resultset, int index, Object target) throws SQLException
+        {
+            Object value = this.converter.read(resultset, index);
+            if(this.setter == null){
+                this.column.set(target, value);
+            } else {
+                try {
+                    this.setter.invokeExact(target, value);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * the readers for one entity class - bind() matches them up with the columns of a particular result set
+     */
+    private static class EntityMapper<T>
+    {
+        private final EntityMetadata<T> metadata;
+        private final Supplier<T> factory;
+        private final ColumnReader[] readers;
+        private final ValueReader[] valueReaders;
+        private final boolean generated;
+
+        /**
+         * the column values of a new entity - the snapshot values of columns a result set doesn't have
+         */
+        private volatile Object[] defaults;
+
+        EntityMapper(EntityMetadata<T> metadata, Supplier<T> factory, ColumnReader[] readers, ValueReader[] valueReaders,
+                     boolean generated)
+        {
+            this.metadata = metadata;
+            this.factory = factory;
+            this.readers = readers;
+            this.valueReaders = valueReaders;
+            this.generated = generated;
+        }
+
+        RowMapper<T> bind(ResultSetMetaData resultSetMetaData) throws SQLException
+        {
+            Map<String, Integer> positions = positions(resultSetMetaData);
+
+            // only those readers whose column is in this result set (e.g. a projection may select just some)
+            List<ColumnReader> boundReaders = new ArrayList<>();
+            List<Integer> boundIndexes = new ArrayList<>();
+            for(ColumnReader reader : this.readers){
+                Integer position = positions.get(reader.columnName.toLowerCase());
+                if(position != null){
+                    boundReaders.add(reader);
+                    boundIndexes.add(position);
+                }
+            }
+
+            final Supplier<T> factory = this.factory;
+            final ColumnReader[] readers = boundReaders.toArray(new ColumnReader[0]);
+            final int[] indexes = toArray(boundIndexes);
+
+            return resultset -> {
+                T object = factory.get();
+                for(int i = 0; i < readers.length; i++){
+                    readers[i].read(resultset, indexes[i], object);
+                }
+                return object;
+            };
+        }
+
+        /**
+         * a mapper that also gives the tracker each entity's snapshot - the values read (indexed by ColumnMetadata.getIndex()),
+         * with those of columns not in the result set as on a new entity
+         */
+        RowMapper<T> bindTracking(ResultSetMetaData resultSetMetaData, final DirtyTracker tracker) throws SQLException
+        {
+            Map<String, Integer> positions = positions(resultSetMetaData);
+
+            List<ValueReader> boundReaders = new ArrayList<>();
+            List<Integer> boundIndexes = new ArrayList<>();
+            for(ValueReader reader : this.valueReaders){
+                Integer position = positions.get(reader.column.getName().toLowerCase());
+                if(position != null){
+                    boundReaders.add(reader);
+                    boundIndexes.add(position);
+                }
+            }
+
+            final Supplier<T> factory = this.factory;
+            final ValueReader[] readers = boundReaders.toArray(new ValueReader[0]);
+            final int[] indexes = toArray(boundIndexes);
+            final Object[] defaults = this.defaults();
+
+            return resultset -> {
+                T object = factory.get();
+                Object[] values = defaults.clone();
+                for(int i = 0; i < readers.length; i++){
+                    Object value = readers[i].read(resultset, indexes[i], object);
+                    values[readers[i].column.getIndex()] = EntityMetadata.copyValue(value);
+                }
+                tracker.put(object, values);
+                return object;
+            };
+        }
+
+        private Object[] defaults()
+        {
+            Object[] current = this.defaults;
+            if(current == null){
+                current = DirtyTracker.values(this.metadata, this.factory.get());
+                this.defaults = current;
+            }
+
+            return current;
+        }
+
+        private static Map<String, Integer> positions(ResultSetMetaData resultSetMetaData) throws SQLException
+        {
+            Map<String, Integer> positions = new HashMap<>();
+            for(int i = 1; i <= resultSetMetaData.getColumnCount(); i++){
+                positions.put(resultSetMetaData.getColumnLabel(i).toLowerCase(), i);
+            }
+
+            return positions;
+        }
+
+        private static int[] toArray(List<Integer> list)
+        {
+            int[] array = new int[list.size()];
+            for(int i = 0; i < array.length; i++){
+                array[i] = list.get(i);
+            }
+
+            return array;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the parameterized ('?' placeholder) SQL for the CRUD operations of one table + entity class
+ *
+ * built once per repository and entity class, so the same SQL text is sent each time
+ * (letting the driver's per-connection prepared statement cache find it)
+ *
+ * e.g. for table 'module' and entity Module(id, title, price)
+ *      findAll = SELECT * from module
+ *      find    = SELECT * from module WHERE id = ?
+ *      insert  = INSERT into module (title, price) VALUES (?, ?)
+ *      update  = UPDATE module SET title = ?, price = ? WHERE id = ?
+ *      update(just price) = UPDATE module SET price = ? WHERE id = ?
+ *
+ *      findPageAfterId  = SELECT * from module WHERE id > ? ORDER BY id LIMIT ?
+ *      findPageByOffset = SELECT * from module ORDER BY id LIMIT ? OFFSET ?
+ *
+ *      findByIds(3)     = SELECT * from module WHERE id IN (?, ?, ?)
+ *
+ *      idRange          = SELECT MIN(id), MAX(id) from module
+ *      findPageInRange  = SELECT * from module WHERE id > ? AND id <= ? ORDER BY id LIMIT ?
+ *
+ *      upsert(2)        = INSERT into module (id, title, price) VALUES (?, ?, ?), (?, ?, ?)
+ *                          ON DUPLICATE KEY UPDATE title = VALUES(title), price = VALUES(price)
+ *
+ * (the LIMIT and upsert syntax come from the Dialect - MySQL's are shown)
+ */
+public class SqlTemplates
+{
+    private final String findAll;
+    private final String find;
+    private final String insert;
+    private final String update;
+    private final String findPageAfterId;
+    private final String findPageByOffset;
+    private final String idRange;
+    private final String findPageInRange;
+    private final String tableName;
+    private final List<ColumnMetadata> columns;
+    private final String upsertColumns;
+    private final String upsertRow;
+    private final String upsertClause;
+
+    /**
+     * IN (...) queries, by number of ids
+     */
+    private final ConcurrentHashMap<Integer, String> findByIds = new ConcurrentHashMap<>();
+
+    /**
+     * UPDATEs of just some of the columns, by set of column indexes
+     */
+    private final ConcurrentHashMap<BitSet, String> partialUpdates = new ConcurrentHashMap<>();
+
+    /**
+     * multi-row upserts, by number of rows
+     */
+    private final ConcurrentHashMap<Integer, String> upserts = new ConcurrentHashMap<>();
+
+    public SqlTemplates(String tableName, EntityMetadata<?> metadata)
+    {
+        this(tableName, metadata, Dialect.MYSQL);
+    }
+
+    public SqlTemplates(String tableName, EntityMetadata<?> metadata, Dialect dialect)
+    {
+        String[] columnNamesLessId = metadata.getColumnNamesLessId();
+        this.tableName = tableName;
+        this.columns = metadata.getColumns();
+
+        this.findAll = SqlTemplates.selectAll(tableName);
+        this.find = "SELECT * from " + tableName + " WHERE id = ?";
+        this.insert = "INSERT into " + tableName + " "
+                + DatabaseUtility.fieldListToInsertString(columnNamesLessId) + " "
+                + DatabaseUtility.placeholderValuesString(columnNamesLessId.length);
+        this.update = "UPDATE " + tableName + " SET "
+                + DatabaseUtility.fieldListToPlaceholderUpdateString(columnNamesLessId)
+                + " WHERE id = ?";
+        this.findPageAfterId = "SELECT * from " + tableName + " WHERE id > ? ORDER BY id" + dialect.getLimitClause(false);
+        this.findPageByOffset = "SELECT * from " + tableName + " ORDER BY id" + dialect.getLimitClause(true);
+        this.idRange = "SELECT MIN(id), MAX(id) from " + tableName;
+        this.findPageInRange = "SELECT * from " + tableName + " WHERE id > ? AND id <= ? ORDER BY id" + dialect.getLimitClause(false);
+
+        String[] columnNamesWithId = new String[columnNamesLessId.length + 1];
+        columnNamesWithId[0] = "id";
+        System.arraycopy(columnNamesLessId, 0, columnNamesWithId, 1, columnNamesLessId.length);
+        this.upsertColumns = DatabaseUtility.fieldListToInsertString(columnNamesWithId);
+        this.upsertRow = "(" + DatabaseUtility.placeholderList(columnNamesWithId.length) + ")";
+        this.upsertClause = dialect.getUpsertClause(columnNamesLessId);
+    }
+
+    /**
+     * every column of every row, e.g. SELECT * from module - also for reads with no entity class (e.g. exportTo())
+     */
+    public static String selectAll(String tableName)
+    {
+        return "SELECT * from " + tableName;
+    }
+
+    public String getFindAll()
+    {
+        return findAll;
+    }
+
+    public String getFind()
+    {
+        return find;
+    }
+
+    public String getInsert()
+    {
+        return insert;
+    }
+
+    public String getUpdate()
+    {
+        return update;
+    }
+
+    /**
+     * UPDATE of just the given columns (by ColumnMetadata.getIndex()), e.g. UPDATE module SET price = ? WHERE id = ?
+     * (parameters: the columns in column order, then the id)
+     */
+    public String getUpdate(BitSet columnIndexes)
+    {
+        String sql = this.partialUpdates.get(columnIndexes);
+        if(sql == null){
+            String[] columnNames = new String[columnIndexes.cardinality()];
+            int n = 0;
+            for(int i = columnIndexes.nextSetBit(0); i >= 0; i = columnIndexes.nextSetBit(i + 1)){
+                columnNames[n++] = this.columns.get(i).getName();
+            }
+            sql = "UPDATE " + this.tableName + " SET "
+                    + DatabaseUtility.fieldListToPlaceholderUpdateString(columnNames)
+                    + " WHERE id = ?";
+            // copy the key, as the caller may go on to change its BitSet
+            this.partialUpdates.put((BitSet) columnIndexes.clone(), sql);
+        }
+
+        return sql;
+    }
+
+    public String getFindPageAfterId()
+    {
+        return findPageAfterId;
+    }
+
+    public String getFindPageByOffset()
+    {
+        return findPageByOffset;
+    }
+
+    public String getIdRange()
+    {
+        return idRange;
+    }
+
+    public String getFindPageInRange()
+    {
+        return findPageInRange;
+    }
+
+    /**
+     * SELECT for the given number of ids, e.g. for 3: SELECT * from module WHERE id IN (?, ?, ?)
+     */
+    public String getFindByIds(int numIds)
+    {
+        return this.findByIds.computeIfAbsent(numIds,
+                n -> "SELECT * from " + this.tableName + " WHERE id IN (" + DatabaseUtility.placeholderList(n) + ")");
+    }
+
+    /**
+     * multi-row INSERT .. ON DUPLICATE KEY UPDATE (or the dialect's equivalent) for the given number of rows
+     * (parameters per row: id, then the other columns in column order)
+     */
+    public String getUpsert(int numRows)
+    {
+        return this.upserts.computeIfAbsent(numRows, n -> {
+            StringBuilder sql = new StringBuilder("INSERT into ").append(this.tableName).append(" ")
+                    .append(this.upsertColumns).append(" VALUES ");
+            for(int i = 0; i < n; i++){
+                if(i > 0){
+                    sql.append(", ");
+                }
+                sql.append(this.upsertRow);
+            }
+            return sql.append(this.upsertClause).toString();
+        });
+    }
+}
@@ -0,0 +1,264 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * an embedded SQLite database file via xerial sqlite-jdbc - see Dialect
+ *
+ * the database runs in-process (no network hop), in WAL mode: readers don't block the writer or each other,
+ * and a writer waits up to sqliteBusyTimeoutMillis for another to finish
+ *
+ * e.g. in .env
+ *      SQLITE_FILE=data/evote.db
+ *
+ * NOTE: SQLite has no date/time types (java.time values are stored as text, e.g. '2024-01-02 03:04:05.123456'),
+ * and decimal columns are stored as 8-byte floating point (about 15 significant digits)
+ */
+public class SqliteDialect implements Dialect
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SqliteDialect.class);
+
+    /**
+     * SQLite's default SQLITE_MAX_VARIABLE_NUMBER (since 3.32)
+     */
+    private static final int MAX_PARAMETERS = 32766;
+
+    @Override
+    public String getName()
+    {
+        return "sqlite";
+    }
+
+    /**
+     * e.g. jdbc:sqlite:data/evote.db
+     */
+    @Override
+    public String getDsn(DatabaseConfig config)
+    {
+        return "jdbc:sqlite:" + config.getSqliteFile();
+    }
+
+    /**
+     * (no server - the database is the file)
+     */
+    @Override
+    public String getServerDsn(DatabaseConfig config)
+    {
+        return this.getDsn(config);
+    }
+
+    @Override
+    public String getReplicaDsn(DatabaseConfig config, String endpoint)
+    {
+        throw new UnsupportedOperationException("SQLite has no read replicas - remove the replicas (MYSQL_REPLICAS) from the config");
+    }
+
+    /**
+     * WAL journal, with synchronous=NORMAL (safe in WAL mode - a power cut may lose the last commits, but never corrupts)
+     */
+    @Override
+    public Properties getConnectionProperties(DatabaseConfig config)
+    {
+        Properties properties = new Properties();
+        properties.setProperty("journal_mode", "WAL");
+        properties.setProperty("synchronous", "NORMAL");
+        properties.setProperty("busy_timeout", String.valueOf(config.getSqliteBusyTimeoutMillis()));
+
+        return properties;
+    }
+
+    /**
+     * SQLite creates the file when it is first opened - just make sure its directory exists
+     */
+    @Override
+    public void createDatabaseIfNotExists(DatabaseConfig config, boolean silent)
+    {
+        File file = new File(config.getSqliteFile()).getAbsoluteFile();
+        if(file.exists()){
+            if(!silent){
+                LOG.info("using database '{}'", file);
+            }
+            return;
+        }
+
+        File directory = file.getParentFile();
+        if(directory != null && !directory.isDirectory() && !directory.mkdirs()){
+            LOG.warn("unable to create directory '{}' for database '{}'", directory, file);
+        }
+        LOG.info("database '{}' did not exist, so new database file created", file);
+    }
+
+    /**
+     * SQLite's type affinity for the MySQL type, e.g. bigint => integer, datetime(6) => text, binary(16) => blob
+     */
+    @Override
+    public String columnType(String sqlType)
+    {
+        String type = sqlType.toLowerCase();
+        if(type.contains("int") || type.startsWith("bool") || type.startsWith("bit")){
+            return "integer";
+        }
+        if(type.startsWith("double") || type.startsWith("float") || type.startsWith("real")){
+            return "real";
+        }
+        if(type.startsWith("decimal") || type.startsWith("numeric")){
+            return "numeric";
+        }
+        if(type.contains("binary") || type.contains("blob")){
+            return "blob";
+        }
+
+        // e.g. varchar(20), text, enum('LOW', 'HIGH'), date, datetime(6), time(6)
+        return "text";
+    }
+
+    /**
+     * (an alias for the rowid - the fastest key, and new rows get MAX(id) + 1)
+     */
+    @Override
+    public String getIdColumn()
+    {
+        return "id integer PRIMARY KEY";
+    }
+
+    /**
+     * CREATE TABLE, then a CREATE INDEX for each index, e.g.
+     *      CREATE TABLE IF NOT EXISTS module (id integer PRIMARY KEY, title text)
+     *      CREATE INDEX IF NOT EXISTS module_idx_title ON module (title)
+     */
+    @Override
+    public List<String> getCreateTable(String tableName, String columns, List<IndexDefinition> indexes, EntityMetadata<?> metadata)
+    {
+        List<String> statements = new ArrayList<>();
+        statements.add("CREATE TABLE IF NOT EXISTS " + tableName + " (" + this.getIdColumn() + ", " + columns + ")");
+        statements.addAll(this.getAddIndexes(tableName, indexes, metadata));
+
+        return statements;
+    }
+
+    /**
+     * (index names are per database in SQLite, so each is stored prefixed with its table name - this gives them back without)
+     */
+    @Override
+    public String getIndexNamesQuery()
+    {
+        return "SELECT substr(name, length(tbl_name) + 2) from sqlite_master WHERE type = 'index' AND tbl_name = ?";
+    }
+
+    @Override
+    public List<String> getAddIndexes(String tableName, List<IndexDefinition> indexes, EntityMetadata<?> metadata)
+    {
+        List<String> statements = new ArrayList<>();
+        for(IndexDefinition index : indexes){
+            for(String columnName : index.getColumns()){
+                if(metadata.getColumn(columnName) == null){
+                    throw new MappingException("index " + index.getName() + " refers to unknown column '" + columnName
+                            + "' of " + metadata.getEntityClass().getName());
+                }
+            }
+
+            statements.add("CREATE " + (index.isUnique() ? "UNIQUE " : "") + "INDEX IF NOT EXISTS "
+                    + tableName + "_" + index.getName() + " ON " + tableName + " (" + String.join(", ", index.getColumns()) + ")");
+        }
+
+        return statements;
+    }
+
+    @Override
+    public List<String> getDropIndexes(String tableName, List<IndexDefinition> indexes)
+    {
+        List<String> statements = new ArrayList<>();
+        for(IndexDefinition index : indexes){
+            statements.add("DROP INDEX IF EXISTS " + tableName + "_" + index.getName());
+        }
+
+        return statements;
+    }
+
+    /**
+     * (no LOAD DATA - bulk loads are batched INSERTs, which are fast in-process anyway)
+     */
+    @Override
+    public String getLoadData(String tableName, EntityMetadata<?> metadata)
+    {
+        return null;
+    }
+
+    @Override
+    public String getUpsertClause(String[] columnNamesLessId)
+    {
+        if(columnNamesLessId.length == 0){
+            return " ON CONFLICT(id) DO NOTHING";
+        }
+
+        StringBuilder updates = new StringBuilder();
+        for(String columnName : columnNamesLessId){
+            if(updates.length() > 0){
+                updates.append(", ");
+            }
+            updates.append(columnName).append(" = excluded.").append(columnName);
+        }
+
+        return " ON CONFLICT(id) DO UPDATE SET " + updates;
+    }
+
+    @Override
+    public String getLimitClause(boolean withOffset)
+    {
+        return withOffset ? " LIMIT ? OFFSET ?" : " LIMIT ?";
+    }
+
+    /**
+     * (a negative LIMIT is no limit)
+     */
+    @Override
+    public String getOffsetClause()
+    {
+        return " LIMIT -1 OFFSET ?";
+    }
+
+    /**
+     * (SQLite has no TRUNCATE - an unqualified DELETE is optimized to drop all rows at once)
+     */
+    @Override
+    public String getDeleteAllSql(String tableName)
+    {
+        return "DELETE from " + tableName;
+    }
+
+    /**
+     * (the driver only gives the id of the last row of a batch)
+     */
+    @Override
+    public boolean isBatchGeneratedKeys()
+    {
+        return false;
+    }
+
+    @Override
+    public int getMaxParameters()
+    {
+        return MAX_PARAMETERS;
+    }
+
+    /**
+     * (the driver steps through the rows as they are read anyway)
+     */
+    @Override
+    public int getStreamingFetchSize(DatabaseConfig config)
+    {
+        return 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getName();
+    }
+}
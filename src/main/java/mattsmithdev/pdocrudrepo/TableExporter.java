@@ -0,0 +1,422 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * writes the rows of a result set to a file in one of the ExportFormats, for DatabaseTableRepository.exportTo()
+ *
+ * each value is taken as the driver's bytes (getBytes() - its text for most columns, so nothing is parsed or decoded),
+ * copied into one direct buffer, and the buffer written to the file channel whenever it fills -
+ * so memory use is the same however many rows there are, and no objects are made per row
+ * (text the driver gives in another character set is re-encoded as UTF-8 into a reused buffer, by a reused encoder)
+ */
+class TableExporter
+{
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MAGIC = "PDOX".getBytes(StandardCharsets.US_ASCII);
+    private static final byte VERSION = 1;
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ONE = { '1' };
+    private static final byte[] ZERO = { '0' };
+
+    /**
+     * how a column's values are written
+     */
+    private enum Kind { TEXT, NUMBER, BOOLEAN, BINARY }
+
+    private final FileChannel channel;
+    private final ExportFormat format;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final Kind[] kinds;
+
+    /**
+     * text columns the driver gives in a character set other than UTF-8 - these are re-encoded (via getString())
+     */
+    private final boolean[] reencode;
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer reencoded = ByteBuffer.allocate(1024);
+
+    /**
+     * the length of the value() last returned - its bytes may be the start of the reused re-encoding buffer
+     */
+    private int valueLength;
+
+    /**
+     * JSON_LINES: each column's key, e.g. "title":
+     */
+    private final byte[][] keys;
+
+    TableExporter(FileChannel channel, ExportFormat format, ResultSetMetaData metadata) throws SQLException, IOException
+    {
+        this(channel, format, metadata, null);
+    }
+
+    /**
+     * reencode: which columns to re-encode as UTF-8 (null = those the driver gives in another character set)
+     */
+    TableExporter(FileChannel channel, ExportFormat format, ResultSetMetaData metadata, boolean[] reencode) throws SQLException, IOException
+    {
+        this.channel = channel;
+        this.format = format;
+
+        int columnCount = metadata.getColumnCount();
+        this.kinds = new Kind[columnCount];
+        this.keys = new byte[columnCount][];
+        String[] names = new String[columnCount];
+        for(int i = 0; i < columnCount; i++){
+            names[i] = metadata.getColumnLabel(i + 1);
+            this.kinds[i] = kind(metadata.getColumnType(i + 1));
+            this.keys[i] = ("\"" + names[i].replace("\\", "\\\\").replace("\"", "\\\"") + "\":").getBytes(StandardCharsets.UTF_8);
+        }
+
+        this.reencode = (reencode != null) ? reencode : reencode(metadata, this.kinds);
+
+        this.writeHeader(names, metadata);
+    }
+
+    /**
+     * (Connector/J gives each column's text in the character set it was sent in - e.g. latin1 for a latin1 column,
+     * unless the connection asked for UTF-8)
+     */
+    private static boolean[] reencode(ResultSetMetaData metadata, Kind[] kinds) throws SQLException
+    {
+        boolean[] reencode = new boolean[kinds.length];
+        if(!metadata.isWrapperFor(com.mysql.cj.jdbc.result.ResultSetMetaData.class)){
+            return reencode;
+        }
+
+        com.mysql.cj.jdbc.result.ResultSetMetaData mysqlMetadata = metadata.unwrap(com.mysql.cj.jdbc.result.ResultSetMetaData.class);
+        for(int i = 0; i < kinds.length; i++){
+            String encoding = mysqlMetadata.getColumnCharacterEncoding(i + 1);
+            reencode[i] = (kinds[i] == Kind.TEXT) && encoding != null
+                    && !encoding.equalsIgnoreCase("UTF-8") && !encoding.equalsIgnoreCase("UTF8");
+        }
+
+        return reencode;
+    }
+
+    private static Kind kind(int sqlType)
+    {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return Kind.BOOLEAN;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return Kind.NUMBER;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return Kind.BINARY;
+            default:
+                return Kind.TEXT;
+        }
+    }
+
+    /**
+     * CSV: the column names line - BINARY: the file header (see ExportFormat)
+     */
+    private void writeHeader(String[] names, ResultSetMetaData metadata) throws SQLException, IOException
+    {
+        if(this.format == ExportFormat.CSV){
+            for(int i = 0; i < names.length; i++){
+                if(i > 0){
+                    this.put((byte) ',');
+                }
+                this.putCsvText(names[i].getBytes(StandardCharsets.UTF_8));
+            }
+            this.put((byte) '\n');
+
+        } else if(this.format == ExportFormat.BINARY){
+            this.put(MAGIC);
+            this.put(VERSION);
+            this.ensure(4);
+            this.buffer.putInt(names.length);
+            for(int i = 0; i < names.length; i++){
+                byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+                this.ensure(2);
+                this.buffer.putShort((short) name.length);
+                this.put(name);
+                this.ensure(4);
+                this.buffer.putInt(metadata.getColumnType(i + 1));
+            }
+        }
+    }
+
+    void writeRow(ResultSet resultset) throws SQLException, IOException
+    {
+        switch (this.format) {
+            case CSV:
+                for(int i = 0; i < this.kinds.length; i++){
+                    if(i > 0){
+                        this.put((byte) ',');
+                    }
+                    byte[] value = this.value(resultset, i, ONE, ZERO);
+                    if(value == null){
+                        continue;
+                    }
+                    if(this.kinds[i] == Kind.BINARY){
+                        this.putHex(value, this.valueLength);
+                    } else if(this.kinds[i] == Kind.TEXT){
+                        this.putCsvText(value, this.valueLength);
+                    } else {
+                        this.put(value, this.valueLength);
+                    }
+                }
+                this.put((byte) '\n');
+                break;
+
+            case JSON_LINES:
+                this.put((byte) '{');
+                for(int i = 0; i < this.kinds.length; i++){
+                    if(i > 0){
+                        this.put((byte) ',');
+                    }
+                    this.put(this.keys[i]);
+                    byte[] value = this.value(resultset, i, TRUE, FALSE);
+                    if(value == null){
+                        this.put(NULL);
+                    } else if(this.kinds[i] == Kind.BINARY){
+                        this.put((byte) '"');
+                        this.putHex(value, this.valueLength);
+                        this.put((byte) '"');
+                    } else if(this.kinds[i] == Kind.TEXT){
+                        this.putJsonText(value, this.valueLength);
+                    } else {
+                        this.put(value, this.valueLength);
+                    }
+                }
+                this.put((byte) '}');
+                this.put((byte) '\n');
+                break;
+
+            case BINARY:
+                for(int i = 0; i < this.kinds.length; i++){
+                    byte[] value = this.value(resultset, i, ONE, ZERO);
+                    this.ensure(4);
+                    if(value == null){
+                        this.buffer.putInt(-1);
+                    } else {
+                        this.buffer.putInt(this.valueLength);
+                        this.put(value, this.valueLength);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * the bytes of column i (from 0) of the current row (the first valueLength of them), or null for NULL
+     */
+    private byte[] value(ResultSet resultset, int i, byte[] whenTrue, byte[] whenFalse) throws SQLException
+    {
+        if(this.kinds[i] == Kind.BOOLEAN){
+            boolean value = resultset.getBoolean(i + 1);
+            byte[] bytes = resultset.wasNull() ? null : (value ? whenTrue : whenFalse);
+            this.valueLength = (bytes == null) ? 0 : bytes.length;
+            return bytes;
+        }
+
+        byte[] value = resultset.getBytes(i + 1);
+        this.valueLength = (value == null) ? 0 : value.length;
+        if(value != null && this.reencode[i]){
+            // plain ASCII is the same in UTF-8 (and the character sets a client can receive all contain it)
+            for(byte b : value){
+                if(b < 0){
+                    return this.reencode(resultset.getString(i + 1));
+                }
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * the text as UTF-8, in the reused re-encoding buffer (grown if it is too small)
+     */
+    private byte[] reencode(String text)
+    {
+        int maxLength = (int) Math.min(Integer.MAX_VALUE, (long) text.length() * (long) this.utf8.maxBytesPerChar());
+        if(this.reencoded.capacity() < maxLength){
+            this.reencoded = ByteBuffer.allocate(Math.max(maxLength, this.reencoded.capacity() * 2));
+        }
+
+        this.reencoded.clear();
+        this.utf8.reset();
+        this.utf8.encode(CharBuffer.wrap(text), this.reencoded, true);
+        this.utf8.flush(this.reencoded);
+
+        this.valueLength = this.reencoded.position();
+        return this.reencoded.array();
+    }
+
+    /**
+     * write out whatever is left in the buffer
+     */
+    void finish() throws IOException
+    {
+        this.flush();
+    }
+
+    /**
+     * quoted (with quotes doubled) if it contains a comma, quote or line break - or is empty, to tell it from NULL
+     */
+    private void putCsvText(byte[] value) throws IOException
+    {
+        this.putCsvText(value, value.length);
+    }
+
+    private void putCsvText(byte[] value, int length) throws IOException
+    {
+        boolean quote = (length == 0);
+        for(int i = 0; i < length; i++){
+            byte b = value[i];
+            if(b == ',' || b == '"' || b == '\n' || b == '\r'){
+                quote = true;
+                break;
+            }
+        }
+
+        if(!quote){
+            this.put(value, length);
+            return;
+        }
+
+        this.put((byte) '"');
+        for(int i = 0; i < length; i++){
+            byte b = value[i];
+            if(b == '"'){
+                this.put((byte) '"');
+            }
+            this.put(b);
+        }
+        this.put((byte) '"');
+    }
+
+    /**
+     * a JSON string - UTF-8 bytes are copied as they are, with quotes, backslashes and control characters escaped
+     */
+    private void putJsonText(byte[] value, int length) throws IOException
+    {
+        this.put((byte) '"');
+        for(int i = 0; i < length; i++){
+            byte b = value[i];
+            switch (b) {
+                case '"':
+                case '\\':
+                    this.put((byte) '\\');
+                    this.put(b);
+                    break;
+                case '\n':
+                    this.put((byte) '\\');
+                    this.put((byte) 'n');
+                    break;
+                case '\r':
+                    this.put((byte) '\\');
+                    this.put((byte) 'r');
+                    break;
+                case '\t':
+                    this.put((byte) '\\');
+                    this.put((byte) 't');
+                    break;
+                default:
+                    if(b >= 0 && b < 0x20){
+                        this.put((byte) '\\');
+                        this.put((byte) 'u');
+                        this.put((byte) '0');
+                        this.put((byte) '0');
+                        this.put(HEX[b >> 4]);
+                        this.put(HEX[b & 0xf]);
+                    } else {
+                        this.put(b);
+                    }
+            }
+        }
+        this.put((byte) '"');
+    }
+
+    private void putHex(byte[] value, int length) throws IOException
+    {
+        for(int i = 0; i < length; i++){
+            byte b = value[i];
+            this.ensure(2);
+            this.buffer.put(HEX[(b >> 4) & 0xf]);
+            this.buffer.put(HEX[b & 0xf]);
+        }
+    }
+
+    private void put(byte b) throws IOException
+    {
+        if(!this.buffer.hasRemaining()){
+            this.flush();
+        }
+        this.buffer.put(b);
+    }
+
+    private void put(byte[] bytes) throws IOException
+    {
+        this.put(bytes, bytes.length);
+    }
+
+    /**
+     * the first length bytes
+     */
+    private void put(byte[] bytes, int length) throws IOException
+    {
+        // (a value bigger than the buffer goes out in pieces)
+        int offset = 0;
+        while(offset < length){
+            if(!this.buffer.hasRemaining()){
+                this.flush();
+            }
+            int n = Math.min(this.buffer.remaining(), length - offset);
+            this.buffer.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    /**
+     * make room for n more bytes
+     */
+    private void ensure(int n) throws IOException
+    {
+        if(this.buffer.remaining() < n){
+            this.flush();
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        this.buffer.flip();
+        while(this.buffer.hasRemaining()){
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+}
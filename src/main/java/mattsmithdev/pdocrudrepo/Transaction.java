@@ -0,0 +1,282 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * one DB transaction, shared by every repository call made by the thread inside DatabaseManager.inTransaction()
+ *
+ * repositories get a wrapper of the transaction's connection from DatabaseManager.getConnection(),
+ * on which close(), commit(), rollback() and setAutoCommit() don't end the transaction -
+ * it is committed once, when the inTransaction() body returns
+ *
+ * if any statement fails the transaction is marked rollback-only, and is rolled back instead of committed -
+ * even if the body catches the DatabaseException the repository method threw, and carries on
+ *
+ * with write-behind on, update() and delete() calls are queued rather than sent,
+ * and are sent as JDBC batches (updateMany() / deleteMany()) just before the commit
+ * NOTE: reads inside the transaction don't see queued writes
+ *
+ * e.g.
+ *      DatabaseManager.inTransaction(tx -> {
+ *          tx.setWriteBehind(true);
+ *          for(Module module : modules){
+ *              moduleRepository.update(module);   // queued
+ *          }
+ *      }); // one batch of UPDATEs, then one COMMIT
+ */
+public class Transaction
+{
+    private final Connection connection;
+    private final Connection sharedConnection;
+
+    private boolean writeBehind = false;
+    private boolean rollbackOnly = false;
+    private SQLException failure;
+
+    /**
+     * queued updates by repository and entity class (each object queued once), and queued deletes by repository
+     */
+    private final Map<DatabaseTableRepository, Map<Class<?>, List<Object>>> queuedUpdates = new LinkedHashMap<>();
+    private final Set<Object> queuedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<DatabaseTableRepository, LinkedHashSet<Integer>> queuedDeletes = new LinkedHashMap<>();
+
+    /**
+     * undo in-memory state (e.g. cache entries) if the transaction is rolled back
+     */
+    private final List<Runnable> rollbackActions = new ArrayList<>();
+
+    Transaction(Connection connection)
+    {
+        this.connection = connection;
+        this.sharedConnection = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{ Connection.class },
+                new SharedConnectionHandler());
+    }
+
+    /**
+     * the transaction's connection, for running your own SQL inside the transaction (don't close it)
+     */
+    public Connection getConnection()
+    {
+        return this.sharedConnection;
+    }
+
+    public boolean isWriteBehind()
+    {
+        return writeBehind;
+    }
+
+    /**
+     * queue update() and delete() calls until the commit, then send them as batches
+     */
+    public void setWriteBehind(boolean writeBehind)
+    {
+        this.writeBehind = writeBehind;
+    }
+
+    public boolean isRollbackOnly()
+    {
+        return rollbackOnly;
+    }
+
+    /**
+     * roll back, rather than commit, when the inTransaction() body returns
+     */
+    public void setRollbackOnly()
+    {
+        this.rollbackOnly = true;
+    }
+
+    void fail(SQLException e)
+    {
+        this.rollbackOnly = true;
+        if(this.failure == null){
+            this.failure = e;
+        }
+    }
+
+    SQLException getFailure()
+    {
+        return failure;
+    }
+
+    void queueUpdate(DatabaseTableRepository repository, Object object)
+    {
+        if(this.queuedObjects.add(object)){
+            this.queuedUpdates
+                    .computeIfAbsent(repository, key -> new LinkedHashMap<>())
+                    .computeIfAbsent(object.getClass(), key -> new ArrayList<>())
+                    .add(object);
+        }
+    }
+
+    void queueDelete(DatabaseTableRepository repository, int id)
+    {
+        this.queuedDeletes.computeIfAbsent(repository, key -> new LinkedHashSet<>()).add(id);
+    }
+
+    void onRollback(Runnable action)
+    {
+        this.rollbackActions.add(action);
+    }
+
+    /**
+     * send the queued writes - updates first, so an object both updated and deleted ends up deleted
+     */
+    void flush()
+    {
+        boolean wasWriteBehind = this.writeBehind;
+        this.writeBehind = false;
+        try {
+            for(Map.Entry<DatabaseTableRepository, Map<Class<?>, List<Object>>> entry : this.queuedUpdates.entrySet()){
+                for(List<Object> objects : entry.getValue().values()){
+                    entry.getKey().updateMany(objects.toArray());
+                }
+            }
+
+            for(Map.Entry<DatabaseTableRepository, LinkedHashSet<Integer>> entry : this.queuedDeletes.entrySet()){
+                int[] ids = new int[entry.getValue().size()];
+                int i = 0;
+                for(Integer id : entry.getValue()){
+                    ids[i++] = id;
+                }
+                entry.getKey().deleteMany(ids);
+            }
+        } finally {
+            this.queuedUpdates.clear();
+            this.queuedObjects.clear();
+            this.queuedDeletes.clear();
+            this.writeBehind = wasWriteBehind;
+        }
+    }
+
+    void commit() throws SQLException
+    {
+        this.connection.commit();
+        this.rollbackActions.clear();
+    }
+
+    void rollback() throws SQLException
+    {
+        try {
+            this.connection.rollback();
+        } finally {
+            for(Runnable action : this.rollbackActions){
+                action.run();
+            }
+            this.rollbackActions.clear();
+        }
+    }
+
+    /**
+     * the connection as seen by repositories inside the transaction
+     */
+    private class SharedConnectionHandler implements InvocationHandler
+    {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName()) {
+                case "close":
+                case "commit":
+                case "setAutoCommit":
+                    // the transaction decides when these happen
+                    return null;
+                case "rollback":
+                    if(args == null){
+                        // e.g. insertMany() giving up - the whole transaction must be rolled back
+                        setRollbackOnly();
+                        return null;
+                    }
+                    break;
+                case "getAutoCommit":
+                    return false;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Transaction[" + connection + "]";
+                default:
+                    break;
+            }
+
+            Object result;
+            try {
+                result = Transaction.invoke(method, connection, args);
+            } catch (SQLException e) {
+                fail(e);
+                throw e;
+            }
+
+            if(result instanceof Statement){
+                Class<?> statementInterface = (result instanceof CallableStatement) ? CallableStatement.class
+                        : (result instanceof PreparedStatement) ? PreparedStatement.class
+                        : Statement.class;
+
+                return Proxy.newProxyInstance(
+                        Connection.class.getClassLoader(),
+                        new Class<?>[]{ statementInterface },
+                        new StatementHandler((Statement) result, proxy));
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * marks the transaction rollback-only when a statement fails
+     */
+    private class StatementHandler implements InvocationHandler
+    {
+        private final Statement statement;
+        private final Object connectionProxy;
+
+        StatementHandler(Statement statement, Object connectionProxy)
+        {
+            this.statement = statement;
+            this.connectionProxy = connectionProxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName()) {
+                case "getConnection":
+                    return this.connectionProxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            try {
+                return Transaction.invoke(method, this.statement, args);
+            } catch (SQLException e) {
+                fail(e);
+                throw e;
+            }
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable
+    {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package mattsmithdev.pdocrudrepo;
+
+/**
+ * the body of a DatabaseManager.inTransaction() call
+ *
+ * e.g.
+ *      DatabaseManager.inTransaction(tx -> {
+ *          moduleRepository.insert(module);
+ *          studentRepository.update(student);
+ *      });
+ */
+@FunctionalInterface
+public interface TransactionWork
+{
+    void run(Transaction tx) throws Exception;
+}
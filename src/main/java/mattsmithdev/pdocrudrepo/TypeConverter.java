@@ -0,0 +1,43 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * maps one Java property type to and from a MySQL column type
+ * (other databases translate the column type - see Dialect.columnType())
+ *
+ * built-in converters cover primitives, boxed types, String, BigDecimal, java.time, UUID, enums and byte[] -
+ * register your own with TypeConverters.register()
+ *
+ * e.g. a converter storing java.awt.Color as an int:
+ *      TypeConverters.register(Color.class, new TypeConverter<Color>()
+ *      {
+ *          public String getSqlType() { return "int"; }
+ *          public void bind(PreparedStatement statement, int index, Color value) throws SQLException {
+ *              if(value == null) statement.setNull(index, Types.INTEGER); else statement.setInt(index, value.getRGB());
+ *          }
+ *          public Color read(ResultSet resultset, int index) throws SQLException {
+ *              int rgb = resultset.getInt(index);
+ *              return resultset.wasNull() ? null : new Color(rgb);
+ *          }
+ *      });
+ */
+public interface TypeConverter<J>
+{
+    /**
+     * column type for CREATE TABLE, e.g. "bigint"
+     */
+    String getSqlType();
+
+    /**
+     * bind the value (which may be null) to the given '?' parameter
+     */
+    void bind(PreparedStatement statement, int index, J value) throws SQLException;
+
+    /**
+     * read the given column of the current row (null for SQL NULL, unless the Java type is primitive)
+     */
+    J read(ResultSet resultset, int index) throws SQLException;
+}
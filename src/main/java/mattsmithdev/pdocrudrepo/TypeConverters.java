@@ -0,0 +1,623 @@
+package mattsmithdev.pdocrudrepo;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * registry of TypeConverters, by Java type
+ *
+ *      Java type                   MySQL type
+ *      int / Integer               int
+ *      long / Long                 bigint
+ *      short / Short               smallint
+ *      byte / Byte                 tinyint
+ *      boolean / Boolean           tinyint (1/0)
+ *      double / Double             double
+ *      float / Float               float
+ *      String                      text (or varchar(n) - see @Column)
+ *      BigDecimal                  decimal(19,4)
+ *      LocalDateTime / Instant     datetime(6)
+ *      LocalDate                   date
+ *      LocalTime                   time(6)
+ *      UUID                        binary(16)
+ *      enum                        enum('A', 'B', ...) - or tinyint ordinal with enumOrdinal()
+ *      byte[]                      blob
+ *
+ * (primitive properties read SQL NULL as 0 / false; boxed ones as null)
+ *
+ * e.g.
+ *      TypeConverters.register(Level.class, TypeConverters.enumOrdinal(Level.class));
+ */
+public class TypeConverters
+{
+    private static final ConcurrentHashMap<Class<?>, TypeConverter<?>> CONVERTERS = new ConcurrentHashMap<>();
+
+    static {
+        register(int.class, new IntConverter(false));
+        register(Integer.class, new IntConverter(true));
+        register(long.class, new LongConverter(false));
+        register(Long.class, new LongConverter(true));
+        register(short.class, new ShortConverter(false));
+        register(Short.class, new ShortConverter(true));
+        register(byte.class, new ByteConverter(false));
+        register(Byte.class, new ByteConverter(true));
+        register(boolean.class, new BooleanConverter(false));
+        register(Boolean.class, new BooleanConverter(true));
+        register(double.class, new DoubleConverter(false));
+        register(Double.class, new DoubleConverter(true));
+        register(float.class, new FloatConverter(false));
+        register(Float.class, new FloatConverter(true));
+        register(String.class, new StringConverter());
+        register(BigDecimal.class, new BigDecimalConverter());
+        register(LocalDateTime.class, new LocalDateTimeConverter());
+        register(Instant.class, new InstantConverter());
+        register(LocalDate.class, new LocalDateConverter());
+        register(LocalTime.class, new LocalTimeConverter());
+        register(UUID.class, new UuidConverter());
+        register(byte[].class, new BytesConverter());
+    }
+
+    /**
+     * use the given converter for properties of the given type (replacing any existing one)
+     * NOTE: register converters before reading any rows, as row mappers are built once per entity class
+     */
+    public static <J> void register(Class<J> type, TypeConverter<J> converter)
+    {
+        CONVERTERS.put(type, converter);
+        RowMappers.clearCache();
+    }
+
+    /**
+     * the converter for the given type, or null if there is none
+     * (enums without a registered converter get an enum(..) converter)
+     */
+    @SuppressWarnings("unchecked")
+    public static <J> TypeConverter<J> forType(Class<J> type)
+    {
+        TypeConverter<?> converter = CONVERTERS.get(type);
+        if(converter == null && type.isEnum()){
+            converter = CONVERTERS.computeIfAbsent(type, enumType -> new EnumNameConverter(enumType));
+        }
+
+        return (TypeConverter<J>) converter;
+    }
+
+    /**
+     * converter for the type of the given value (e.g. a query parameter), or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public static TypeConverter<Object> forValue(Object value)
+    {
+        Class<?> type = (value instanceof Enum) ? ((Enum<?>) value).getDeclaringClass() : value.getClass();
+        return (TypeConverter<Object>) TypeConverters.forType(type);
+    }
+
+    /**
+     * bind a query parameter - with its converter if there is one (e.g. a UUID as 16 bytes), otherwise with setObject()
+     */
+    public static void bindParameter(PreparedStatement statement, int index, Object value) throws SQLException
+    {
+        TypeConverter<Object> converter = (value == null) ? null : TypeConverters.forValue(value);
+        if(converter != null){
+            converter.bind(statement, index, value);
+        } else {
+            statement.setObject(index, value);
+        }
+    }
+
+    /**
+     * an enum stored as its ordinal in a tinyint - smaller than enum(..), but re-ordering the constants changes the meaning of stored rows
+     */
+    public static <E extends Enum<E>> TypeConverter<E> enumOrdinal(Class<E> enumType)
+    {
+        final E[] constants = enumType.getEnumConstants();
+
+        return new TypeConverter<E>()
+        {
+            public String getSqlType()
+            {
+                return (constants.length <= 127) ? "tinyint" : "smallint";
+            }
+
+            public void bind(PreparedStatement statement, int index, E value) throws SQLException
+            {
+                if(value == null){
+                    statement.setNull(index, Types.SMALLINT);
+                } else {
+                    statement.setInt(index, value.ordinal());
+                }
+            }
+
+            public E read(ResultSet resultset, int index) throws SQLException
+            {
+                int ordinal = resultset.getInt(index);
+                return resultset.wasNull() ? null : constants[ordinal];
+            }
+        };
+    }
+
+    // ------------------- built-in converters -------------------
+
+    private static class IntConverter implements TypeConverter<Integer>
+    {
+        private final boolean nullable;
+
+        IntConverter(boolean nullable)
+        {
+            this.nullable = nullable;
+        }
+
+        public String getSqlType()
+        {
+            return "int";
+        }
+
+        public void bind(PreparedStatement statement, int index, Integer value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.INTEGER);
+            } else {
+                statement.setInt(index, value);
+            }
+        }
+
+        public Integer read(ResultSet resultset, int index) throws SQLException
+        {
+            int value = resultset.getInt(index);
+            return (this.nullable && resultset.wasNull()) ? null : value;
+        }
+    }
+
+    private static class LongConverter implements TypeConverter<Long>
+    {
+        private final boolean nullable;
+
+        LongConverter(boolean nullable)
+        {
+            this.nullable = nullable;
+        }
+
+        public String getSqlType()
+        {
+            return "bigint";
+        }
+
+        public void bind(PreparedStatement statement, int index, Long value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.BIGINT);
+            } else {
+                statement.setLong(index, value);
+            }
+        }
+
+        public Long read(ResultSet resultset, int index) throws SQLException
+        {
+            long value = resultset.getLong(index);
+            return (this.nullable && resultset.wasNull()) ? null : value;
+        }
+    }
+
+    private static class ShortConverter implements TypeConverter<Short>
+    {
+        private final boolean nullable;
+
+        ShortConverter(boolean nullable)
+        {
+            this.nullable = nullable;
+        }
+
+        public String getSqlType()
+        {
+            return "smallint";
+        }
+
+        public void bind(PreparedStatement statement, int index, Short value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.SMALLINT);
+            } else {
+                statement.setShort(index, value);
+            }
+        }
+
+        public Short read(ResultSet resultset, int index) throws SQLException
+        {
+            short value = resultset.getShort(index);
+            return (this.nullable && resultset.wasNull()) ? null : value;
+        }
+    }
+
+    private static class ByteConverter implements TypeConverter<Byte>
+    {
+        private final boolean nullable;
+
+        ByteConverter(boolean nullable)
+        {
+            this.nullable = nullable;
+        }
+
+        public String getSqlType()
+        {
+            return "tinyint";
+        }
+
+        public void bind(PreparedStatement statement, int index, Byte value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.TINYINT);
+            } else {
+                statement.setByte(index, value);
+            }
+        }
+
+        public Byte read(ResultSet resultset, int index) throws SQLException
+        {
+            byte value = resultset.getByte(index);
+            return (this.nullable && resultset.wasNull()) ? null : value;
+        }
+    }
+
+    /**
+     * booleans are stored as tinyint 1/0
+     */
+    private static class BooleanConverter implements TypeConverter<Boolean>
+    {
+        private final boolean nullable;
+
+        BooleanConverter(boolean nullable)
+        {
+            this.nullable = nullable;
+        }
+
+        public String getSqlType()
+        {
+            return "tinyint";
+        }
+
+        public void bind(PreparedStatement statement, int index, Boolean value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.TINYINT);
+            } else {
+                statement.setInt(index, value ? 1 : 0);
+            }
+        }
+
+        public Boolean read(ResultSet resultset, int index) throws SQLException
+        {
+            int value = resultset.getInt(index);
+            return (this.nullable && resultset.wasNull()) ? null : (value == 1);
+        }
+    }
+
+    private static class DoubleConverter implements TypeConverter<Double>
+    {
+        private final boolean nullable;
+
+        DoubleConverter(boolean nullable)
+        {
+            this.nullable = nullable;
+        }
+
+        public String getSqlType()
+        {
+            return "double";
+        }
+
+        public void bind(PreparedStatement statement, int index, Double value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.DOUBLE);
+            } else {
+                statement.setDouble(index, value);
+            }
+        }
+
+        public Double read(ResultSet resultset, int index) throws SQLException
+        {
+            double value = resultset.getDouble(index);
+            return (this.nullable && resultset.wasNull()) ? null : value;
+        }
+    }
+
+    private static class FloatConverter implements TypeConverter<Float>
+    {
+        private final boolean nullable;
+
+        FloatConverter(boolean nullable)
+        {
+            this.nullable = nullable;
+        }
+
+        public String getSqlType()
+        {
+            return "float";
+        }
+
+        public void bind(PreparedStatement statement, int index, Float value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.FLOAT);
+            } else {
+                statement.setFloat(index, value);
+            }
+        }
+
+        public Float read(ResultSet resultset, int index) throws SQLException
+        {
+            float value = resultset.getFloat(index);
+            return (this.nullable && resultset.wasNull()) ? null : value;
+        }
+    }
+
+    private static class StringConverter implements TypeConverter<String>
+    {
+        public String getSqlType()
+        {
+            return "text";
+        }
+
+        public void bind(PreparedStatement statement, int index, String value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.VARCHAR);
+            } else {
+                statement.setString(index, value);
+            }
+        }
+
+        public String read(ResultSet resultset, int index) throws SQLException
+        {
+            return resultset.getString(index);
+        }
+    }
+
+    private static class BigDecimalConverter implements TypeConverter<BigDecimal>
+    {
+        public String getSqlType()
+        {
+            return "decimal(19,4)";
+        }
+
+        public void bind(PreparedStatement statement, int index, BigDecimal value) throws SQLException
+        {
+            statement.setBigDecimal(index, value);
+        }
+
+        public BigDecimal read(ResultSet resultset, int index) throws SQLException
+        {
+            return resultset.getBigDecimal(index);
+        }
+    }
+
+    /**
+     * (sent and read as text, e.g. '2024-01-02 03:04:05.123456' - some drivers drop the fraction of a second from setTimestamp()
+     * when they don't recognise the server version, e.g. Connector/J talking to MariaDB, and SQLite has no datetime type)
+     */
+    private static class LocalDateTimeConverter implements TypeConverter<LocalDateTime>
+    {
+        public String getSqlType()
+        {
+            return "datetime(6)";
+        }
+
+        public void bind(PreparedStatement statement, int index, LocalDateTime value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.TIMESTAMP);
+            } else {
+                statement.setString(index, Timestamp.valueOf(value).toString());
+            }
+        }
+
+        public LocalDateTime read(ResultSet resultset, int index) throws SQLException
+        {
+            String value = resultset.getString(index);
+            return (value == null) ? null : Timestamp.valueOf(value).toLocalDateTime();
+        }
+    }
+
+    /**
+     * stored as the UTC date-time, e.g. '2024-10-27 00:30:00.123456' (sent as text, like LocalDateTime) -
+     * so the JVM and DB time zones don't matter, and nothing is shifted in the hour repeated when the clocks go back
+     */
+    private static class InstantConverter implements TypeConverter<Instant>
+    {
+        private static final DateTimeFormatter UTC_DATE_TIME = new DateTimeFormatterBuilder()
+                .append(DateTimeFormatter.ISO_LOCAL_DATE)
+                .appendLiteral(' ')
+                .append(DateTimeFormatter.ISO_LOCAL_TIME)
+                .toFormatter()
+                .withZone(ZoneOffset.UTC);
+
+        /**
+         * (also reads ISO text, e.g. '2024-10-27T00:30:00.123456' - the fraction is optional)
+         */
+        private static final DateTimeFormatter UTC_DATE_TIME_READER = new DateTimeFormatterBuilder()
+                .append(DateTimeFormatter.ISO_LOCAL_DATE)
+                .optionalStart().appendLiteral(' ').optionalEnd()
+                .optionalStart().appendLiteral('T').optionalEnd()
+                .append(DateTimeFormatter.ISO_LOCAL_TIME)
+                .toFormatter()
+                .withZone(ZoneOffset.UTC);
+
+        public String getSqlType()
+        {
+            return "datetime(6)";
+        }
+
+        public void bind(PreparedStatement statement, int index, Instant value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.TIMESTAMP);
+            } else {
+                statement.setString(index, UTC_DATE_TIME.format(value));
+            }
+        }
+
+        public Instant read(ResultSet resultset, int index) throws SQLException
+        {
+            String value = resultset.getString(index);
+            return (value == null) ? null : UTC_DATE_TIME_READER.parse(value, Instant::from);
+        }
+    }
+
+    /**
+     * (sent and read as text, e.g. '2024-01-02' - so it is stored the same way in SQLite, which has no date type)
+     */
+    private static class LocalDateConverter implements TypeConverter<LocalDate>
+    {
+        public String getSqlType()
+        {
+            return "date";
+        }
+
+        public void bind(PreparedStatement statement, int index, LocalDate value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.DATE);
+            } else {
+                statement.setString(index, value.toString());
+            }
+        }
+
+        public LocalDate read(ResultSet resultset, int index) throws SQLException
+        {
+            String value = resultset.getString(index);
+            return (value == null) ? null : LocalDate.parse(value);
+        }
+    }
+
+    /**
+     * (java.sql.Time has no fraction of a second - so the value is sent as text, e.g. '10:15:30.123456')
+     */
+    private static class LocalTimeConverter implements TypeConverter<LocalTime>
+    {
+        public String getSqlType()
+        {
+            return "time(6)";
+        }
+
+        public void bind(PreparedStatement statement, int index, LocalTime value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.TIME);
+            } else {
+                statement.setString(index, value.toString());
+            }
+        }
+
+        public LocalTime read(ResultSet resultset, int index) throws SQLException
+        {
+            String value = resultset.getString(index);
+            return (value == null) ? null : LocalTime.parse(value);
+        }
+    }
+
+    /**
+     * a UUID as its 16 bytes (most significant first), rather than 36 characters of text
+     */
+    private static class UuidConverter implements TypeConverter<UUID>
+    {
+        public String getSqlType()
+        {
+            return "binary(16)";
+        }
+
+        public void bind(PreparedStatement statement, int index, UUID value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.BINARY);
+            } else {
+                ByteBuffer bytes = ByteBuffer.allocate(16);
+                bytes.putLong(value.getMostSignificantBits());
+                bytes.putLong(value.getLeastSignificantBits());
+                statement.setBytes(index, bytes.array());
+            }
+        }
+
+        public UUID read(ResultSet resultset, int index) throws SQLException
+        {
+            byte[] value = resultset.getBytes(index);
+            if(value == null){
+                return null;
+            }
+
+            ByteBuffer bytes = ByteBuffer.wrap(value);
+            return new UUID(bytes.getLong(), bytes.getLong());
+        }
+    }
+
+    private static class BytesConverter implements TypeConverter<byte[]>
+    {
+        public String getSqlType()
+        {
+            return "blob";
+        }
+
+        public void bind(PreparedStatement statement, int index, byte[] value) throws SQLException
+        {
+            statement.setBytes(index, value);
+        }
+
+        public byte[] read(ResultSet resultset, int index) throws SQLException
+        {
+            return resultset.getBytes(index);
+        }
+    }
+
+    /**
+     * an enum stored by name in a MySQL enum('A', 'B', ...) column (1 or 2 bytes per row)
+     */
+    private static class EnumNameConverter implements TypeConverter<Object>
+    {
+        private final Class<?> enumType;
+        private final String sqlType;
+
+        EnumNameConverter(Class<?> enumType)
+        {
+            this.enumType = enumType;
+
+            StringBuilder names = new StringBuilder();
+            for(Object constant : enumType.getEnumConstants()){
+                if(names.length() > 0){
+                    names.append(", ");
+                }
+                names.append("'").append(((Enum<?>) constant).name().replace("'", "''")).append("'");
+            }
+            this.sqlType = "enum(" + names + ")";
+        }
+
+        public String getSqlType()
+        {
+            return sqlType;
+        }
+
+        public void bind(PreparedStatement statement, int index, Object value) throws SQLException
+        {
+            if(value == null){
+                statement.setNull(index, Types.VARCHAR);
+            } else {
+                statement.setString(index, ((Enum<?>) value).name());
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Object read(ResultSet resultset, int index) throws SQLException
+        {
+            String value = resultset.getString(index);
+            return (value == null || value.isEmpty()) ? null : Enum.valueOf((Class) this.enumType, value);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * count(), exists() and the Query aggregates, against an embedded SQLite file
+ */
+public class AggregatesTest
+{
+    public enum Category { ART, MATHS }
+
+    public static class Course
+    {
+        private int id;
+        private Category category;
+        private int credits;
+        private BigDecimal price;
+        private LocalDate due;
+
+        public Course() { }
+
+        public Course(Category category, int credits, String price, LocalDate due)
+        {
+            this.category = category;
+            this.credits = credits;
+            this.price = new BigDecimal(price);
+            this.due = due;
+        }
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public Category getCategory() { return category; }
+        public void setCategory(Category category) { this.category = category; }
+        public int getCredits() { return credits; }
+        public void setCredits(int credits) { this.credits = credits; }
+        public BigDecimal getPrice() { return price; }
+        public void setPrice(BigDecimal price) { this.price = price; }
+        public LocalDate getDue() { return due; }
+        public void setDue(LocalDate due) { this.due = due; }
+    }
+
+    public static class CourseRepository extends DatabaseTableRepository
+    {
+    }
+
+    private File file;
+    private CourseRepository repo;
+
+    @Before
+    public void openDatabase() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+
+        this.repo = new CourseRepository();
+        this.repo.createTable();
+    }
+
+    @After
+    public void closeDatabase()
+    {
+        DatabaseManager.configure(null);
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void emptyTable()
+    {
+        Query<Course> query = this.repo.query(Course.class);
+        assertEquals(0, this.repo.count());
+        assertFalse(this.repo.exists(1));
+        assertFalse(query.exists());
+        assertEquals(BigDecimal.ZERO, query.sum("price"));
+        assertEquals(OptionalDouble.empty(), query.avg("credits"));
+        assertNull(query.min("credits"));
+        assertTrue(query.groupBy("category").isEmpty());
+    }
+
+    @Test
+    public void aggregatesAreTypedByProperty()
+    {
+        this.repo.insertMany(new Course[]{
+                new Course(Category.MATHS, 10, "5.25", LocalDate.of(2024, 3, 1)),
+                new Course(Category.ART, 20, "10", LocalDate.of(2024, 1, 15)),
+                new Course(Category.MATHS, 30, "1.5", null) });
+
+        assertEquals(3, this.repo.count());
+        assertEquals(2, this.repo.count(Course.class, "credits", Operator.GE, 20));
+        assertTrue(this.repo.exists(3));
+        assertFalse(this.repo.exists(4));
+
+        Query<Course> maths = this.repo.query(Course.class).where("category", Category.MATHS);
+        assertEquals(2, maths.count());
+        assertTrue(maths.exists());
+        assertEquals(0, new BigDecimal("6.75").compareTo(maths.sum("price")));
+        assertEquals(20.0, maths.avg("credits").getAsDouble(), 0.0);
+
+        Query<Course> all = this.repo.query(Course.class);
+        LocalDate firstDue = all.min("due");
+        int mostCredits = all.<Integer>max("credits");
+        assertEquals(LocalDate.of(2024, 1, 15), firstDue);
+        assertEquals(30, mostCredits);
+
+        Map<Category, Long> perCategory = new LinkedHashMap<>();
+        perCategory.put(Category.ART, 1L);
+        perCategory.put(Category.MATHS, 2L);
+        assertEquals(perCategory, all.groupBy("category"));
+    }
+}
@@ -0,0 +1,63 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AsyncDatabaseTableRepositoryTest
+{
+    public static class ModuleRepository extends DatabaseTableRepository
+    {
+    }
+
+    @Test
+    public void noMoreThanMaxConcurrencyRunAtOnce() throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        AsyncDatabaseTableRepository async = new AsyncDatabaseTableRepository(new ModuleRepository(), executor, 3);
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+
+        for(int i = 0; i < 50; i++){
+            int n = i;
+            futures.add(async.submit(() -> {
+                maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                inFlight.decrementAndGet();
+                return n;
+            }));
+        }
+
+        for(int i = 0; i < 50; i++){
+            assertEquals(i, (int) futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertTrue(maxSeen.get() <= 3);
+        assertEquals(0, async.getQueuedCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public void workBeyondQueueLimitIsRejected() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        AsyncDatabaseTableRepository async = new AsyncDatabaseTableRepository(new ModuleRepository(), executor, 1, 1);
+
+        CompletableFuture<Boolean> running = async.submit(() -> release.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> waiting = async.submit(() -> true);
+        CompletableFuture<Boolean> rejected = async.submit(() -> true);
+
+        assertTrue(rejected.isCompletedExceptionally());
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(waiting.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,147 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * insertMany(), findByIds() and stream(), against an embedded SQLite file
+ */
+public class BulkReadWriteTest
+{
+    public static class Item
+    {
+        private int id;
+        @Column(unique = true, length = 20)
+        private String code;
+
+        public Item() { }
+
+        public Item(String code)
+        {
+            this.code = code;
+        }
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getCode() { return code; }
+        public void setCode(String code) { this.code = code; }
+    }
+
+    public static class ItemRepository extends DatabaseTableRepository
+    {
+    }
+
+    private File file;
+    private ItemRepository repo;
+
+    @Before
+    public void openDatabase() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+
+        this.repo = new ItemRepository();
+        this.repo.createTable();
+    }
+
+    @After
+    public void closeDatabase()
+    {
+        DatabaseManager.configure(null);
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+    }
+
+    private static Item[] items(int count, String prefix)
+    {
+        Item[] items = new Item[count];
+        for(int i = 0; i < count; i++){
+            items[i] = new Item(prefix + i);
+        }
+        return items;
+    }
+
+    @Test
+    public void insertManySetsIdsInOrder()
+    {
+        this.repo.setBatchSize(3);
+        this.repo.insert(new Item("first"));
+
+        Item[] items = items(7, "item");
+        boolean[] inserted = this.repo.insertMany(items);
+
+        for(int i = 0; i < items.length; i++){
+            assertTrue(inserted[i]);
+            assertEquals(i + 2, items[i].getId());
+            assertEquals("item" + i, this.repo.find(Item.class, items[i].getId()).getCode());
+        }
+    }
+
+    @Test
+    public void insertManyRollsBackEveryRowOnFailure()
+    {
+        Item[] items = { new Item("a"), new Item("b"), new Item("a") };
+        try {
+            this.repo.insertMany(items);
+            fail("duplicate code inserted");
+        } catch (ConstraintViolationException e) {
+            // expected
+        }
+
+        assertEquals(0, this.repo.count());
+    }
+
+    @Test
+    public void findByIdsKeepsOrderWithNullsForMissingIds()
+    {
+        this.repo.insertMany(items(3, "item"));
+
+        Item[] found = this.repo.findByIds(Item.class, new int[]{ 3, 99, 1, 3, -1 });
+
+        assertEquals(5, found.length);
+        assertEquals("item2", found[0].getCode());
+        assertNull(found[1]);
+        assertEquals("item0", found[2].getCode());
+        assertEquals("item2", found[3].getCode());
+        assertNotSame(found[0], found[3]);
+        assertNull(found[4]);
+
+        assertEquals(0, this.repo.findByIds(Item.class, new int[0]).length);
+    }
+
+    @Test
+    public void streamClosesItsConnectionOnEarlyTermination()
+    {
+        this.repo.insertMany(items(10, "item"));
+        ConnectionPool pool = DatabaseManager.getPool(true);
+
+        try (Stream<Item> stream = this.repo.stream(Item.class)) {
+            assertEquals("item0", stream.findFirst().get().getCode());
+            assertEquals(1, pool.getActiveConnections());
+        }
+        assertEquals(0, pool.getActiveConnections());
+
+        // an iterator abandoned part way is closed with the stream too
+        try (Stream<Item> stream = this.repo.stream(Item.class)) {
+            Iterator<Item> iterator = stream.iterator();
+            iterator.next();
+            iterator.next();
+        }
+        assertEquals(0, pool.getActiveConnections());
+
+        // a stream read to the end gives its connection back without close()
+        assertEquals(10, this.repo.stream(Item.class).count());
+        assertEquals(0, pool.getActiveConnections());
+    }
+}
@@ -0,0 +1,209 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * batching of concurrent load(id) calls, against an embedded SQLite file
+ */
+public class CoalescingLoaderTest
+{
+    public static class Item
+    {
+        private int id;
+        private String code;
+
+        public Item() { }
+
+        public Item(String code)
+        {
+            this.code = code;
+        }
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getCode() { return code; }
+        public void setCode(String code) { this.code = code; }
+    }
+
+    /**
+     * records the ids of each findByIds() call
+     */
+    public static class ItemRepository extends DatabaseTableRepository
+    {
+        final List<int[]> calls = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public <T> T[] findByIds(Class<T> clazz, int[] ids)
+        {
+            this.calls.add(ids.clone());
+            return super.findByIds(clazz, ids);
+        }
+    }
+
+    private File file;
+    private ItemRepository repo;
+
+    @Before
+    public void openDatabase() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+
+        this.repo = new ItemRepository();
+        this.repo.createTable();
+        this.repo.insertMany(new Item[]{ new Item("a"), new Item("b"), new Item("c"), new Item("d") });
+    }
+
+    @After
+    public void closeDatabase()
+    {
+        DatabaseManager.configure(null);
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+    }
+
+    /**
+     * load the ids from one thread each, all at once
+     */
+    private static List<CompletableFuture<Item>> loadConcurrently(CoalescingLoader<Item> loader, int... ids) throws Exception
+    {
+        ExecutorService threads = Executors.newFixedThreadPool(ids.length);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<Item>>> loads = new ArrayList<>();
+        for(int id : ids){
+            loads.add(threads.submit(() -> {
+                start.await();
+                return loader.load(id);
+            }));
+        }
+        start.countDown();
+
+        List<CompletableFuture<Item>> futures = new ArrayList<>();
+        for(Future<CompletableFuture<Item>> load : loads){
+            futures.add(load.get());
+        }
+        threads.shutdown();
+        return futures;
+    }
+
+    @Test
+    public void loadsInTheWindowAreOneQuery() throws Exception
+    {
+        CoalescingLoader<Item> loader = this.repo.coalescingLoader(Item.class, 500);
+
+        List<CompletableFuture<Item>> futures = loadConcurrently(loader, 3, 1, 99, 3, 2);
+
+        assertEquals("c", futures.get(0).get(5, TimeUnit.SECONDS).getCode());
+        assertEquals("a", futures.get(1).get(5, TimeUnit.SECONDS).getCode());
+        assertNull(futures.get(2).get(5, TimeUnit.SECONDS));
+        assertEquals("c", futures.get(3).get(5, TimeUnit.SECONDS).getCode());
+        assertNotSame(futures.get(0).get(), futures.get(3).get());
+        assertEquals("b", futures.get(4).get(5, TimeUnit.SECONDS).getCode());
+
+        assertEquals(1, this.repo.calls.size());
+        int[] ids = this.repo.calls.get(0).clone();
+        Arrays.sort(ids);
+        assertArrayEquals(new int[]{ 1, 2, 3, 99 }, ids);
+    }
+
+    @Test
+    public void aFullBatchIsFetchedWithoutWaitingForTheWindow() throws Exception
+    {
+        this.repo.setIdsPerQuery(2);
+        CoalescingLoader<Item> loader = this.repo.coalescingLoader(Item.class, 60000);
+
+        CompletableFuture<Item> first = loader.load(1);
+        CompletableFuture<Item> second = loader.load(2);
+
+        assertEquals("a", first.get(5, TimeUnit.SECONDS).getCode());
+        assertEquals("b", second.get(5, TimeUnit.SECONDS).getCode());
+    }
+
+    @Test
+    public void windowAfterAFullBatchStillWaitsItsFullDelay() throws Exception
+    {
+        this.repo.setIdsPerQuery(2);
+        CoalescingLoader<Item> loader = this.repo.coalescingLoader(Item.class, 1000);
+
+        // fills its window - fetched at once (its timer is still due at 1000ms)
+        CompletableFuture<Item> first = loader.load(1);
+        loader.load(2);
+        assertEquals("a", first.get(5, TimeUnit.SECONDS).getCode());
+
+        Thread.sleep(500);
+        long start = System.nanoTime();
+        CompletableFuture<Item> next = loader.load(3);
+        assertEquals("c", next.get(5, TimeUnit.SECONDS).getCode());
+
+        // not flushed early by the first window's timer (~500ms in)
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 950);
+        assertEquals(2, this.repo.calls.size());
+    }
+
+    @Test
+    public void anErrorReachesEveryWaiter() throws Exception
+    {
+        this.repo.dropTable();
+        CoalescingLoader<Item> loader = this.repo.coalescingLoader(Item.class, 500);
+
+        List<CompletableFuture<Item>> futures = loadConcurrently(loader, 1, 2, 2, 3);
+
+        for(CompletableFuture<Item> future : futures){
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("load from a dropped table succeeded");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof DatabaseException);
+            }
+        }
+        assertEquals(1, this.repo.calls.size());
+    }
+
+    @Test
+    public void batchesRunOnTheGivenExecutor() throws Exception
+    {
+        List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService fetchers = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+            threadNames.add(Thread.currentThread().getName());
+            runnable.run();
+        }, "test-fetcher"));
+        try {
+            CoalescingLoader<Item> loader = this.repo.coalescingLoader(Item.class, 1, fetchers);
+            assertEquals("d", loader.load(4).get(5, TimeUnit.SECONDS).getCode());
+            assertEquals(Collections.singletonList("test-fetcher"), threadNames);
+        } finally {
+            fetchers.shutdown();
+        }
+
+        // a shut down executor fails the batch rather than losing it
+        CoalescingLoader<Item> loader = this.repo.coalescingLoader(Item.class, 1, fetchers);
+        try {
+            loader.load(1).get(5, TimeUnit.SECONDS);
+            fail("load on a shut down executor succeeded");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * the pool's borrow/return, reset and housekeeping, over an embedded SQLite file
+ */
+public class ConnectionPoolTest
+{
+    private File file;
+    private DatabaseConfig config;
+    private ConnectionPool pool;
+
+    @Before
+    public void createConfig() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        this.config = new DatabaseConfig();
+        this.config.setDialect(Dialect.SQLITE);
+        this.config.setSqliteFile(this.file.getPath());
+        this.config.setPoolMinSize(0);
+        this.config.setPoolMaxSize(2);
+        this.config.setConnectionTimeoutMillis(100);
+    }
+
+    @After
+    public void closePool()
+    {
+        if(this.pool != null){
+            this.pool.close();
+        }
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+    }
+
+    private ConnectionPool start()
+    {
+        this.pool = new ConnectionPool(this.config.getDsn(), this.config.getConnectionProperties(), this.config);
+        return this.pool;
+    }
+
+    @Test
+    public void borrowTimesOutWhenAllConnectionsAreInUse() throws Exception
+    {
+        ConnectionPool pool = this.start();
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            long start = System.currentTimeMillis();
+            try {
+                pool.getConnection();
+                fail("borrowed more than poolMaxSize connections");
+            } catch (SQLTimeoutException e) {
+                assertEquals(ConnectionPool.SQLSTATE_NO_CONNECTION, e.getSQLState());
+                assertTrue(System.currentTimeMillis() - start >= 100);
+            }
+            assertEquals(2, pool.getActiveConnections());
+        }
+    }
+
+    @Test
+    public void closeReleasesThePermit() throws Exception
+    {
+        ConnectionPool pool = this.start();
+        for(int i = 0; i < 10; i++){
+            Connection connection = pool.getConnection();
+            connection.close();
+            // (a second close() must not release a second permit)
+            connection.close();
+        }
+
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(1, pool.getTotalConnections());
+
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            try {
+                pool.getConnection();
+                fail("a double close() released an extra permit");
+            } catch (SQLTimeoutException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void returnedConnectionIsRolledBackAndBackInAutoCommit() throws Exception
+    {
+        ConnectionPool pool = this.start();
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE item (id integer PRIMARY KEY, title text)");
+        }
+
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO item (title) VALUES ('uncommitted')");
+        }
+        connection.close();
+
+        try (Connection again = pool.getConnection(); Statement statement = again.createStatement();
+             ResultSet resultset = statement.executeQuery("SELECT COUNT(*) FROM item")) {
+            assertTrue(again.getAutoCommit());
+            resultset.next();
+            assertEquals(0, resultset.getInt(1));
+        }
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception
+    {
+        this.config.setIdleTimeoutMillis(50);
+        this.config.setHousekeepingIntervalMillis(25);
+        ConnectionPool pool = this.start();
+
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        first.close();
+        second.close();
+        assertEquals(2, pool.getIdleConnections());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(pool.getTotalConnections() > 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, pool.getTotalConnections());
+        assertEquals(0, pool.getIdleConnections());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void legacyDatabaseManagerHoldsNoPermit() throws Exception
+    {
+        this.config.setPoolMaxSize(1);
+        DatabaseManager.configure(this.config);
+        try {
+            for(int i = 0; i < 3; i++){
+                // (never closed - as older callers did)
+                assertNotNull(new DatabaseManager(true).getDbh());
+            }
+
+            try (Connection connection = DatabaseManager.getConnection(true)) {
+                assertEquals(1, DatabaseManager.getPool(true).getActiveConnections());
+            }
+        } finally {
+            DatabaseManager.configure(null);
+        }
+    }
+}
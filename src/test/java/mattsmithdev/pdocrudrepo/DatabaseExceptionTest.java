@@ -0,0 +1,52 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+import org.junit.Test;
+
+public class DatabaseExceptionTest
+{
+    private static final String SQL = "INSERT INTO module (code) VALUES (?)";
+
+    @Test
+    public void classifiesBySqlState()
+    {
+        RuntimeException connection = DatabaseException.translate("trying to INSERT into table module", SQL,
+                new SQLException("Communications link failure", "08S01"));
+        assertTrue(connection instanceof DatabaseConnectionException);
+
+        RuntimeException duplicate = DatabaseException.translate("trying to INSERT into table module", SQL,
+                new SQLException("Duplicate entry 'CS101' for key 'uq_code'", "23000", 1062));
+        assertTrue(duplicate instanceof ConstraintViolationException);
+        assertEquals("23000", ((DatabaseException) duplicate).getSqlState());
+        assertEquals(1062, ((DatabaseException) duplicate).getErrorCode());
+        assertEquals(SQL, ((DatabaseException) duplicate).getSql());
+        assertEquals("trying to INSERT into table module :: Duplicate entry 'CS101' for key 'uq_code'", duplicate.getMessage());
+
+        RuntimeException other = DatabaseException.translate("trying to SELECT from table module", SQL,
+                new SQLException("Table 'evote.module' doesn't exist", "42S02"));
+        assertEquals(DatabaseException.class, other.getClass());
+    }
+
+    @Test
+    public void classifiesByType()
+    {
+        assertTrue(DatabaseException.translate("x", SQL, new SQLIntegrityConstraintViolationException("fk"))
+                instanceof ConstraintViolationException);
+        assertTrue(DatabaseException.translate("x", null, new InstantiationException("no no-args constructor"))
+                instanceof MappingException);
+    }
+
+    @Test
+    public void runtimeExceptionsPassThrough()
+    {
+        IllegalArgumentException notFromTheDb = new IllegalArgumentException("unknown column");
+        assertSame(notFromTheDb, DatabaseException.translate("x", SQL, notFromTheDb));
+
+        MappingException mapping = new MappingException("unable to map column");
+        assertSame(mapping, DatabaseException.translate("x", SQL, mapping));
+    }
+}
@@ -0,0 +1,44 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class DirtyTrackerTest
+{
+    @Test
+    public void onlyChangedColumnsAreReported()
+    {
+        DirtyTracker tracker = new DirtyTracker();
+        EntityMetadataTest.Module module = new EntityMetadataTest.Module();
+        module.setId(3);
+        module.setTitle("java");
+
+        assertNull(tracker.changedColumns(module));
+
+        tracker.snapshot(module);
+        assertTrue(tracker.changedColumns(module).isEmpty());
+
+        module.setPrice(9.5);
+        BitSet changed = tracker.changedColumns(module);
+        assertEquals(1, changed.cardinality());
+        assertTrue(changed.get(EntityMetadata.of(EntityMetadataTest.Module.class).getColumn("price").getIndex()));
+    }
+
+    @Test
+    public void objectsAreTrackedByIdentity()
+    {
+        DirtyTracker tracker = new DirtyTracker();
+        EntityMetadataTest.Module module = new EntityMetadataTest.Module();
+        module.setId(3);
+        tracker.snapshot(module);
+
+        EntityMetadataTest.Module copy = EntityMetadata.of(EntityMetadataTest.Module.class).copy(module);
+        assertNull(tracker.changedColumns(copy));
+
+        module.setId(4);
+        assertNull(tracker.changedColumns(module));
+    }
+}
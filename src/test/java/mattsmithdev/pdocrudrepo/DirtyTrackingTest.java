@@ -0,0 +1,187 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * which reads are snapshotted for update(), against an embedded SQLite file
+ */
+public class DirtyTrackingTest
+{
+    public static class Item
+    {
+        private int id;
+        private String title;
+        private double price;
+        private byte[] data;
+
+        public Item() { }
+
+        public Item(String title, double price)
+        {
+            this.title = title;
+            this.price = price;
+            this.data = new byte[]{ 1, 2, 3 };
+        }
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getTitle() { return title; }
+        public void setTitle(String title) { this.title = title; }
+        public double getPrice() { return price; }
+        public void setPrice(double price) { this.price = price; }
+        public byte[] getData() { return data; }
+        public void setData(byte[] data) { this.data = data; }
+    }
+
+    public static class ItemRepository extends DatabaseTableRepository
+    {
+    }
+
+    private File file;
+    private ItemRepository repo;
+
+    @Before
+    public void openDatabase() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+
+        this.repo = new ItemRepository();
+        this.repo.setDirtyTracking(true);
+        this.repo.createTable();
+
+        Item[] items = new Item[20];
+        for(int i = 0; i < items.length; i++){
+            items[i] = new Item("item" + i, i);
+        }
+        this.repo.insertMany(items);
+        this.repo.getDirtyTracker().clear();
+    }
+
+    @After
+    public void closeDatabase()
+    {
+        DatabaseManager.configure(null);
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+    }
+
+    /**
+     * change a row behind the repository's back
+     */
+    private static void execute(String sql) throws Exception
+    {
+        try (Connection connection = DatabaseManager.getConnection(true); Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    @Test
+    public void bulkReadPathsLeaveNoSnapshots() throws Exception
+    {
+        DirtyTracker tracker = this.repo.getDirtyTracker();
+        // (the entities are kept, so their snapshots - if any - can't be garbage collected)
+        List<Item> kept = Collections.synchronizedList(new ArrayList<>());
+
+        try (Stream<Item> stream = this.repo.stream(Item.class)) {
+            kept.addAll(stream.collect(Collectors.toList()));
+        }
+        this.repo.forEach(Item.class, kept::add);
+        this.repo.setScanPageSize(3);
+        this.repo.parallelScan(Item.class, 4, kept::add);
+        kept.addAll(this.repo.parallelStream(Item.class).collect(Collectors.toList()));
+        Path export = File.createTempFile("pdocrudrepo", ".csv").toPath();
+        try {
+            assertEquals(20, this.repo.exportTo(export, ExportFormat.CSV));
+        } finally {
+            export.toFile().delete();
+        }
+
+        assertEquals(80, kept.size());
+        assertEquals(0, tracker.size());
+
+        Item[] all = this.repo.findAll(Item.class);
+        assertEquals(20, tracker.size());
+        assertEquals(20, all.length);
+    }
+
+    @Test
+    public void updateWritesOnlyColumnsChangedSinceRead() throws Exception
+    {
+        Item item = this.repo.findAll(Item.class)[2];
+        execute("UPDATE item SET title = 'changed elsewhere' WHERE id = 3");
+
+        item.setPrice(99.5);
+        item.getData()[0] = 9;
+        this.repo.update(item);
+
+        Item saved = this.repo.find(Item.class, 3);
+        assertEquals("changed elsewhere", saved.getTitle());
+        assertEquals(99.5, saved.getPrice(), 0);
+        assertArrayEquals(new byte[]{ 9, 2, 3 }, saved.getData());
+    }
+
+    @Test
+    public void columnsNotSelectedAreNotWritten() throws Exception
+    {
+        Item item = this.repo.query(Item.class).select("id", "title").where("id", Operator.EQ, 5).list().get(0);
+        assertEquals(0, item.getPrice(), 0);
+
+        item.setTitle("renamed");
+        this.repo.update(item);
+
+        Item saved = this.repo.find(Item.class, 5);
+        assertEquals("renamed", saved.getTitle());
+        assertEquals(4, saved.getPrice(), 0);
+        assertArrayEquals(new byte[]{ 1, 2, 3 }, saved.getData());
+    }
+
+    @Test
+    public void repeatedIdsFromFindByIdsAreTrackedSeparately() throws Exception
+    {
+        Item[] items = this.repo.findByIds(Item.class, new int[]{ 7, 7 });
+        execute("UPDATE item SET price = 0 WHERE id = 7");
+
+        items[1].setTitle("second copy");
+        this.repo.update(items[1]);
+
+        Item saved = this.repo.find(Item.class, 7);
+        assertEquals("second copy", saved.getTitle());
+        assertEquals(0, saved.getPrice(), 0);
+    }
+
+    @Test
+    public void untrackedRepositoryWritesEveryColumn() throws Exception
+    {
+        ItemRepository untracked = new ItemRepository();
+        assertFalse(untracked.isDirtyTracking());
+        assertNull(untracked.getDirtyTracker());
+
+        Item item = untracked.findAll(Item.class)[2];
+        execute("UPDATE item SET title = 'changed elsewhere' WHERE id = 3");
+        item.setPrice(99.5);
+        untracked.update(item);
+
+        Item saved = untracked.find(Item.class, 3);
+        assertEquals("item2", saved.getTitle());
+        assertEquals(99.5, saved.getPrice(), 0);
+    }
+}
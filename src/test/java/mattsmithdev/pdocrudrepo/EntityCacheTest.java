@@ -0,0 +1,122 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class EntityCacheTest
+{
+    private static EntityMetadataTest.Module module(int id, String title)
+    {
+        EntityMetadataTest.Module module = new EntityMetadataTest.Module();
+        module.setId(id);
+        module.setTitle(title);
+        return module;
+    }
+
+    @Test
+    public void getReturnsDefensiveCopies()
+    {
+        EntityCache cache = new EntityCache(10, 0);
+        EntityMetadataTest.Module original = module(1, "java");
+        cache.put(original);
+        original.setTitle("changed after put");
+
+        EntityMetadataTest.Module first = cache.get(EntityMetadataTest.Module.class, 1);
+        first.setTitle("changed after get");
+
+        assertEquals("java", cache.get(EntityMetadataTest.Module.class, 1).getTitle());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted()
+    {
+        EntityCache cache = new EntityCache(2, 0);
+        cache.put(module(1, "a"));
+        cache.put(module(2, "b"));
+        cache.get(EntityMetadataTest.Module.class, 1);
+        cache.put(module(3, "c"));
+
+        assertNull(cache.get(EntityMetadataTest.Module.class, 2));
+        assertNotNull(cache.get(EntityMetadataTest.Module.class, 1));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void invalidateRemovesEntry()
+    {
+        EntityCache cache = new EntityCache(10, 60000);
+        cache.put(module(5, "x"));
+        cache.invalidate(5);
+
+        assertNull(cache.get(EntityMetadataTest.Module.class, 5));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void readInvalidatedSinceItsStampIsNotCached()
+    {
+        EntityCache cache = new EntityCache(10, 0);
+        long stamp = cache.stamp(5);
+        // e.g. a delete() commits while find(5) is reading the old row
+        cache.invalidate(5);
+
+        assertFalse(cache.put(module(5, "deleted"), stamp));
+        assertNull(cache.get(EntityMetadataTest.Module.class, 5));
+
+        long cleared = cache.stamp(6);
+        cache.clear();
+        assertFalse(cache.put(module(6, "stale"), cleared));
+
+        assertTrue(cache.put(module(5, "current"), cache.stamp(5)));
+        assertEquals("current", cache.get(EntityMetadataTest.Module.class, 5).getTitle());
+    }
+
+    public static class Photo
+    {
+        private int id;
+        private byte[] data;
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public byte[] getData() { return data; }
+        public void setData(byte[] data) { this.data = data; }
+    }
+
+    @Test
+    public void readRacingAWriteDoesNotReplaceIt()
+    {
+        EntityCache cache = new EntityCache(10, 0);
+
+        // reader: misses, takes its stamp, reads the old row ...
+        long stamp = cache.stamp(7);
+        EntityMetadataTest.Module readBeforeTheWrite = module(7, "old");
+        // ... writer: UPDATEs the row and caches the new state ...
+        cache.put(module(7, "new"));
+        // ... reader: tries to cache what it read
+        assertFalse(cache.put(readBeforeTheWrite, stamp));
+
+        assertEquals("new", cache.get(EntityMetadataTest.Module.class, 7).getTitle());
+
+        // a read started after the write is cached as usual
+        assertTrue(cache.put(module(7, "newer"), cache.stamp(7)));
+    }
+
+    @Test
+    public void arraysAreCopied()
+    {
+        EntityCache cache = new EntityCache(10, 0);
+        Photo original = new Photo();
+        original.setId(1);
+        original.setData(new byte[]{ 1, 2, 3 });
+        cache.put(original);
+        original.getData()[0] = 9;
+
+        Photo first = cache.get(Photo.class, 1);
+        first.getData()[1] = 9;
+
+        assertArrayEquals(new byte[]{ 1, 2, 3 }, cache.get(Photo.class, 1).getData());
+    }
+}
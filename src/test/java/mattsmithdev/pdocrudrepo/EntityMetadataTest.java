@@ -0,0 +1,93 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class EntityMetadataTest
+{
+    public static class Module
+    {
+        public static final int MAX_CREDITS = 20;
+
+        private int id;
+        private String title;
+        private double price;
+        private boolean core;
+        private transient String notPersisted;
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getTitle() { return title; }
+        public void setTitle(String title) { this.title = title; }
+        public double getPrice() { return price; }
+        public void setPrice(double price) { this.price = price; }
+        public boolean isCore() { return core; }
+        public void setCore(boolean core) { this.core = core; }
+    }
+
+    @Index(columns = {"category", "credits"})
+    public static class Course
+    {
+        private int id;
+        @Column(length = 20, unique = true)
+        private String code;
+        private String category;
+        private int credits;
+        private String description;
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getCode() { return code; }
+        public void setCode(String code) { this.code = code; }
+        public String getCategory() { return category; }
+        public void setCategory(String category) { this.category = category; }
+        public int getCredits() { return credits; }
+        public void setCredits(int credits) { this.credits = credits; }
+        public String getDescription() { return description; }
+        public void setDescription(String description) { this.description = description; }
+    }
+
+    public static class CourseRepository extends DatabaseTableRepository
+    {
+    }
+
+    @Test
+    public void createTableIncludesDeclaredIndexes() throws Exception
+    {
+        assertEquals("CREATE TABLE IF NOT EXISTS course (id integer PRIMARY KEY AUTO_INCREMENT, "
+                + "code varchar(20), category varchar(255), credits int, description text, "
+                + "UNIQUE KEY uq_code (code), KEY idx_category_credits (category(255), credits))",
+                new CourseRepository().inferSqlFromPropertyTypes());
+    }
+
+    @Test
+    public void columnsAreCachedInDeclarationOrder()
+    {
+        EntityMetadata<Module> metadata = EntityMetadata.of(Module.class);
+
+        assertSame(metadata, EntityMetadata.of(Module.class));
+        assertEquals(4, metadata.getColumns().size());
+        assertArrayEquals(new String[]{"title", "price", "core"}, metadata.getColumnNamesLessId());
+        assertEquals("id", metadata.getIdColumn().getName());
+    }
+
+    @Test
+    public void idCanBeSetAndRead()
+    {
+        Module module = new Module();
+        DatabaseUtility.setId(module, 42);
+
+        assertEquals(42, DatabaseUtility.getId(module));
+    }
+
+    @Test
+    public void objectToMapLessIdQuotesStrings()
+    {
+        Module module = new Module();
+        module.setTitle("java");
+        module.setPrice(9.5);
+
+        assertEquals("{title='java', price=9.5, core=false}", DatabaseUtility.objectToMapLessId(module).toString());
+    }
+}
@@ -0,0 +1,102 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+public class IdRangeSpliteratorTest
+{
+    /**
+     * ids 1..1000 (densely packed), then 1,000,000 - nearly every row is in the lowest part of the id range
+     */
+    private static final List<Integer> IDS = new ArrayList<>();
+    static {
+        for(int id = 1; id <= 1000; id++){
+            IDS.add(id);
+        }
+        IDS.add(1000000);
+    }
+
+    private final AtomicInteger queries = new AtomicInteger();
+
+    private List<Integer> read(int afterId, int lastId, int limit)
+    {
+        this.queries.incrementAndGet();
+        return IDS.stream().filter(id -> id > afterId && id <= lastId).limit(limit).collect(Collectors.toList());
+    }
+
+    private IdRangeSpliterator<Integer> all(int pageSize)
+    {
+        return new IdRangeSpliterator<>(this::read, Integer::intValue, pageSize, 0, 1000000);
+    }
+
+    @Test
+    public void readsEachIdOncePageByPage()
+    {
+        List<Integer> ids = new ArrayList<>();
+        IdRangeSpliterator<Integer> range = this.all(300);
+        range.forEachRemaining(ids::add);
+
+        assertEquals(IDS, ids);
+        // 300 + 300 + 300 + 101 (short, so the last)
+        assertEquals(4, this.queries.get());
+    }
+
+    @Test
+    public void splitsTheIdsNotReadYet()
+    {
+        IdRangeSpliterator<Integer> lower = this.all(10);
+        List<Integer> ids = new ArrayList<>();
+        lower.tryAdvance(ids::add);
+
+        IdRangeSpliterator<Integer> upper = lower.trySplit();
+        assertNotNull(upper);
+        lower.forEachRemaining(ids::add);
+        upper.forEachRemaining(ids::add);
+        assertEquals(IDS, ids);
+
+        assertNull(new IdRangeSpliterator<>(this::read, Integer::intValue, 10, 0, 10).trySplit());
+    }
+
+    @Test
+    public void parallelStreamReadsEveryId()
+    {
+        Set<Integer> ids = StreamSupport.stream(this.all(7), true).collect(Collectors.toCollection(TreeSet::new));
+        assertEquals(new TreeSet<>(IDS), ids);
+    }
+
+    @Test
+    public void skewedRangesAreSharedOut()
+    {
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        IdRangeSpliterator<Integer> lower = this.all(5);
+        IdRangeSpliterator<Integer> upper = lower.trySplit();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            pool.invoke(new ParallelScanTask<>(lower, id -> {
+                assertTrue("read twice: " + id, ids.add(id));
+                threads.add(Thread.currentThread().getName());
+                // slow enough for the other workers to want some of this range
+                try { Thread.sleep(1); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }));
+            pool.invoke(new ParallelScanTask<>(upper, ids::add));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(IDS.size(), ids.size());
+        assertTrue("one worker did it all", threads.size() > 1);
+    }
+}
@@ -0,0 +1,82 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class InMemoryInstrumentationTest
+{
+    @Test
+    public void disabledInstrumentationSharesOneTimer()
+    {
+        OperationTimer timer = OperationTimer.start(Instrumentation.NONE, "module", "find");
+        assertSame(OperationTimer.DISABLED, timer);
+        assertSame(timer, OperationTimer.start(Instrumentation.NONE, "module", "findAll"));
+
+        assertEquals(3, timer.executed(3));
+        timer.mapped(10);
+        timer.end("SELECT * from module");
+        assertEquals(0, timer.getRows());
+        assertEquals(0, timer.getTotalNanos());
+    }
+
+    @Test
+    public void recordsPerTableAndOperation()
+    {
+        InMemoryInstrumentation metrics = new InMemoryInstrumentation();
+
+        OperationTimer find = OperationTimer.start(metrics, "module", "find");
+        find.connected("connection");
+        find.prepared("statement");
+        find.executed("resultset");
+        find.mapped(1);
+        find.end("SELECT * from module WHERE id = ?");
+
+        OperationTimer update = OperationTimer.start(metrics, "module", "updateMany");
+        update.executed(new int[]{ 1, 1, 0 });
+        update.failed(new SQLException("deadlock"));
+        update.end("UPDATE module SET title = ? WHERE id = ?");
+
+        OperationMetrics findMetrics = metrics.getMetrics("module", "find");
+        assertEquals(1, findMetrics.getCount());
+        assertEquals(1, findMetrics.getRows());
+        assertEquals(0, findMetrics.getErrorCount());
+        assertTrue(findMetrics.getPercentileMillis(99) > 0);
+
+        OperationMetrics updateMetrics = metrics.getMetrics("module", "updateMany");
+        assertEquals(2, updateMetrics.getRows());
+        assertEquals(1, updateMetrics.getErrorCount());
+
+        assertNull(metrics.getMetrics("module", "delete"));
+        assertEquals(2, metrics.getAllMetrics().size());
+    }
+
+    @Test
+    public void slowOperationsAreLogged() throws InterruptedException
+    {
+        final List<String> logged = new ArrayList<>();
+        InMemoryInstrumentation metrics = new InMemoryInstrumentation(50)
+        {
+            @Override
+            protected void slowQuery(OperationTimer operation)
+            {
+                logged.add(operation.getSql());
+            }
+        };
+
+        OperationTimer fast = OperationTimer.start(metrics, "module", "find");
+        fast.end("SELECT 1");
+
+        OperationTimer slow = OperationTimer.start(metrics, "module", "find");
+        Thread.sleep(60);
+        slow.end("SELECT SLEEP(1)");
+
+        assertEquals(1, logged.size());
+        assertEquals("SELECT SLEEP(1)", logged.get(0));
+        assertEquals(1, metrics.getMetrics("module", "find").getSlowCount());
+    }
+}
@@ -0,0 +1,93 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class LoadDataStreamTest
+{
+    public static class Row
+    {
+        private int id;
+        private String title;
+        private Integer count;
+        private boolean active;
+        private BigDecimal price;
+        private UUID uuid;
+
+        public Row() { }
+
+        public Row(String title, Integer count, boolean active, String price, UUID uuid)
+        {
+            this.title = title;
+            this.count = count;
+            this.active = active;
+            this.price = new BigDecimal(price);
+            this.uuid = uuid;
+        }
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getTitle() { return title; }
+        public void setTitle(String title) { this.title = title; }
+        public Integer getCount() { return count; }
+        public void setCount(Integer count) { this.count = count; }
+        public boolean getActive() { return active; }
+        public void setActive(boolean active) { this.active = active; }
+        public BigDecimal getPrice() { return price; }
+        public void setPrice(BigDecimal price) { this.price = price; }
+        public UUID getUuid() { return uuid; }
+        public void setUuid(UUID uuid) { this.uuid = uuid; }
+    }
+
+    private static String read(LoadDataStream stream) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int n;
+        while((n = stream.read(buffer, 0, buffer.length)) > 0){
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void rowsAreEscapedTabSeparatedText() throws Exception
+    {
+        UUID uuid = new UUID(0x0123456789abcdefL, 0xfedcba9876543210L);
+        Iterator<Row> rows = Arrays.asList(
+                new Row("tab\there\nback\\slash \u00e9\ud83d\ude00", null, true, "1E+3", uuid),
+                new Row("plain", 42, false, "9.99", null)).iterator();
+
+        String text = read(new LoadDataStream(EntityMetadata.of(Row.class), rows, Long.MAX_VALUE));
+
+        assertEquals("tab\\there\\nback\\\\slash \u00e9\ud83d\ude00\t\\N\t1\t1000\t0123456789ABCDEFFEDCBA9876543210\n"
+                + "plain\t42\t0\t9.99\t\\N\n", text);
+    }
+
+    @Test
+    public void stopsAfterMaxRows() throws Exception
+    {
+        Iterator<Row> rows = Arrays.asList(new Row("a", 1, true, "1", null), new Row("b", 2, true, "2", null),
+                new Row("c", 3, true, "3", null)).iterator();
+
+        LoadDataStream first = new LoadDataStream(EntityMetadata.of(Row.class), rows, 2);
+        assertEquals("a\t1\t1\t1\t\\N\nb\t2\t1\t2\t\\N\n", read(first));
+        assertEquals(2, first.getRowCount());
+        assertEquals("c\t3\t1\t3\t\\N\n", read(new LoadDataStream(EntityMetadata.of(Row.class), rows, 2)));
+    }
+
+    @Test
+    public void binaryColumnsAreUnhexed()
+    {
+        assertEquals("(title, count, active, price, @uuid) SET uuid = UNHEX(@uuid)",
+                LoadDataStream.getColumnList(EntityMetadata.of(Row.class)));
+    }
+}
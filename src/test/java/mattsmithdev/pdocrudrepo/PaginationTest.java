@@ -0,0 +1,158 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * findPage() / findPageByOffset() and their cursors, against an embedded SQLite file
+ */
+public class PaginationTest
+{
+    public static class Item
+    {
+        private int id;
+        private String code;
+
+        public Item() { }
+
+        public Item(String code)
+        {
+            this.code = code;
+        }
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getCode() { return code; }
+        public void setCode(String code) { this.code = code; }
+    }
+
+    public static class ItemRepository extends DatabaseTableRepository
+    {
+    }
+
+    private File file;
+    private ItemRepository repo;
+
+    @Before
+    public void openDatabase() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+
+        this.repo = new ItemRepository();
+        this.repo.createTable();
+
+        Item[] items = new Item[7];
+        for(int i = 0; i < items.length; i++){
+            items[i] = new Item("item" + i);
+        }
+        this.repo.insertMany(items);
+        // (a gap in the ids)
+        this.repo.delete(4);
+    }
+
+    @After
+    public void closeDatabase()
+    {
+        DatabaseManager.configure(null);
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+    }
+
+    private static List<Integer> ids(Page<Item> page)
+    {
+        List<Integer> ids = new ArrayList<>();
+        for(Item item : page.getItems()){
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void keysetPagesCoverEveryRowOnce()
+    {
+        List<Integer> seen = new ArrayList<>();
+        Page<Item> page = this.repo.findPage(Item.class, (String) null, 2);
+        int pages = 1;
+        seen.addAll(ids(page));
+        while(page.hasMore()){
+            page = this.repo.findPage(Item.class, page.getNextCursor(), 2);
+            seen.addAll(ids(page));
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(Arrays.asList(1, 2, 3, 5, 6, 7), seen);
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void lastPageHasNoCursor()
+    {
+        Page<Item> page = this.repo.findPage(Item.class, 5, 2);
+        assertEquals(Arrays.asList(6, 7), ids(page));
+        assertFalse(page.hasMore());
+        assertNull(page.getNextCursor());
+
+        Page<Item> empty = this.repo.findPage(Item.class, 7, 2);
+        assertEquals(0, empty.size());
+        assertNull(empty.getNextCursor());
+
+        Page<Item> all = this.repo.findPage(Item.class, 0, Integer.MAX_VALUE);
+        assertEquals(6, all.size());
+        assertFalse(all.hasMore());
+    }
+
+    @Test
+    public void offsetCursorsContinueInOffsetMode()
+    {
+        Page<Item> page = this.repo.findPageByOffset(Item.class, 0, 4);
+        assertEquals(Arrays.asList(1, 2, 3, 5), ids(page));
+        assertTrue(page.hasMore());
+
+        page = this.repo.findPage(Item.class, page.getNextCursor(), 4);
+        assertEquals(Arrays.asList(6, 7), ids(page));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void invalidArgumentsAreRejected()
+    {
+        for(Runnable call : new Runnable[]{
+                () -> this.repo.findPage(Item.class, 0, 0),
+                () -> this.repo.findPage(Item.class, 0, -1),
+                () -> this.repo.findPageByOffset(Item.class, -1, 10),
+                () -> this.repo.findPageByOffset(Item.class, 0, 0),
+                () -> this.repo.findPage(Item.class, "not a cursor!", 10),
+                () -> this.repo.findPage(Item.class, Page.offsetCursor(-5), 10) }){
+            try {
+                call.run();
+                fail("invalid page arguments accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        // valid base64, but not a cursor - or a cursor with no number
+        for(String cursor : new String[]{ "aGVsbG8", "aWQ6YWJj" }){
+            try {
+                this.repo.findPage(Item.class, cursor, 10);
+                fail("invalid cursor accepted: " + cursor);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith("invalid page cursor"));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class QueryTest
+{
+    public static class ModuleRepository extends DatabaseTableRepository
+    {
+    }
+
+    @Test
+    public void buildsParameterizedSql()
+    {
+        Query<EntityMetadataTest.Module> query = new ModuleRepository().query(EntityMetadataTest.Module.class)
+                .select("id", "title")
+                .where("price", Operator.GT, 10)
+                .whereNotNull("title")
+                .orderByDescending("price")
+                .limit(100)
+                .offset(200);
+
+        assertEquals("SELECT id, title from module WHERE price > ? AND title IS NOT NULL ORDER BY price DESC LIMIT ? OFFSET ?",
+                query.getSql());
+        assertArrayEquals(new Object[]{ 10, 100, 200 }, query.getParameters());
+    }
+
+    @Test
+    public void offsetWithoutLimitSkipsRows()
+    {
+        Query<EntityMetadataTest.Module> query = new ModuleRepository().query(EntityMetadataTest.Module.class)
+                .orderBy("id")
+                .offset(20);
+
+        assertEquals("SELECT * from module ORDER BY id LIMIT 18446744073709551615 OFFSET ?", query.getSql());
+        assertArrayEquals(new Object[]{ 20 }, query.getParameters());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownColumnsAreRejected()
+    {
+        new ModuleRepository().query(EntityMetadataTest.Module.class).where("price; DROP TABLE module", 1);
+    }
+}
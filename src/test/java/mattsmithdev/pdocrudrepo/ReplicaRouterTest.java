@@ -0,0 +1,148 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ReplicaRouterTest
+{
+    private final ReplicaRouter.Replica first = new ReplicaRouter.Replica("127.0.0.1:3307", null);
+    private final ReplicaRouter.Replica second = new ReplicaRouter.Replica("127.0.0.1:3308", null);
+
+    private final List<ConnectionPool> pools = new ArrayList<>();
+    private final List<File> files = new ArrayList<>();
+
+    @After
+    public void closePools()
+    {
+        for(ConnectionPool pool : this.pools){
+            pool.close();
+        }
+        for(File file : this.files){
+            for(String suffix : new String[]{ "", "-wal", "-shm" }){
+                new File(file.getPath() + suffix).delete();
+            }
+        }
+    }
+
+    /**
+     * a replica over an embedded SQLite file, with a one-connection pool that waits up to 30s to borrow
+     */
+    private ReplicaRouter.Replica sqliteReplica(String endpoint) throws Exception
+    {
+        File file = File.createTempFile("pdocrudrepo", ".db");
+        this.files.add(file);
+        return this.replica(endpoint, "jdbc:sqlite:" + file.getPath());
+    }
+
+    private ReplicaRouter.Replica replica(String endpoint, String dsn)
+    {
+        DatabaseConfig config = new DatabaseConfig();
+        config.setPoolMinSize(0);
+        config.setPoolMaxSize(1);
+        config.setConnectionTimeoutMillis(30000);
+        ConnectionPool pool = new ConnectionPool(dsn, new Properties(), config);
+        this.pools.add(pool);
+        return new ReplicaRouter.Replica(endpoint, pool);
+    }
+
+    @Test
+    public void roundRobinSkipsReplicasThatAreDown()
+    {
+        ReplicaRouter router = new ReplicaRouter(Arrays.asList(first, second), ReplicaRouter.Selection.ROUND_ROBIN);
+        assertSame(first, router.choose());
+        assertSame(second, router.choose());
+        assertSame(first, router.choose());
+
+        second.failed("Communications link failure");
+        assertSame(first, router.choose());
+        assertSame(first, router.choose());
+
+        first.failed("Communications link failure");
+        assertNull(router.choose());
+
+        second.pinged(1000);
+        assertSame(second, router.choose());
+    }
+
+    @Test
+    public void leastLatencyPicksTheFastestHealthyReplica()
+    {
+        ReplicaRouter router = new ReplicaRouter(Arrays.asList(first, second), ReplicaRouter.Selection.LEAST_LATENCY);
+        first.pinged(900000);
+        second.pinged(300000);
+        assertSame(second, router.choose());
+        assertSame(second, router.choose());
+
+        second.failed("timed out");
+        assertSame(first, router.choose());
+    }
+
+    @Test
+    public void replicaDsnComesFromTheDialect()
+    {
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.MYSQL);
+        config.setDbname("evote");
+        assertEquals("jdbc:mysql://127.0.0.1:3307/evote", config.getReplicaDsn("127.0.0.1:3307"));
+        assertEquals("jdbc:mysql://replica1:3306/evote", config.getReplicaDsn("replica1"));
+    }
+
+    @Test
+    public void replicaThatCannotConnectIsMarkedDownAndSkipped() throws Exception
+    {
+        ReplicaRouter.Replica down = this.replica("down", "jdbc:sqlite:/no/such/directory/replica.db");
+        ReplicaRouter.Replica up = this.sqliteReplica("up");
+        ReplicaRouter router = new ReplicaRouter(Arrays.asList(down, up), ReplicaRouter.Selection.ROUND_ROBIN);
+
+        try (Connection connection = router.getConnection()) {
+            assertNotNull(connection);
+            assertFalse(down.isHealthy());
+            assertTrue(up.isHealthy());
+            assertEquals(1, up.getPool().getActiveConnections());
+        }
+
+        router.healthCheck();
+        assertFalse(down.isHealthy());
+        assertTrue(up.isHealthy());
+        assertTrue(up.getLatencyNanos() > 0);
+    }
+
+    @Test
+    public void busyReplicasAreNotMarkedDown() throws Exception
+    {
+        ReplicaRouter.Replica busy = this.sqliteReplica("busy");
+        ReplicaRouter.Replica other = this.sqliteReplica("other");
+        ReplicaRouter router = new ReplicaRouter(Arrays.asList(busy, other), ReplicaRouter.Selection.ROUND_ROBIN);
+
+        try (Connection held = busy.getPool().getConnection()) {
+            // the busy replica's turn - its pool is all in use, so the other one is used, without waiting
+            long start = System.currentTimeMillis();
+            try (Connection connection = router.getConnection()) {
+                assertNotNull(connection);
+                assertEquals(1, other.getPool().getActiveConnections());
+
+                // both busy - null (read from the primary), rather than waiting for a connection
+                assertNull(router.getConnection());
+            }
+            assertTrue(System.currentTimeMillis() - start < 5000);
+
+            router.healthCheck();
+            assertTrue(busy.isHealthy());
+            assertTrue(other.isHealthy());
+        }
+
+        assertTrue(busy.isHealthy());
+        try (Connection connection = router.getConnection()) {
+            assertNotNull(connection);
+        }
+    }
+}
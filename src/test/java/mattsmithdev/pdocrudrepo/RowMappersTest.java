@@ -0,0 +1,65 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import org.junit.Test;
+
+public class RowMappersTest
+{
+    /**
+     * single-row result set with columns (id, title, price, core) - in a different order to the entity's fields
+     */
+    private static ResultSet resultSet()
+    {
+        final String[] labels = {"core", "id", "title", "price"};
+        final Object[] values = {1, 7, "java", 9.5};
+
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+                RowMappersTest.class.getClassLoader(), new Class<?>[]{ ResultSetMetaData.class },
+                (proxy, method, args) -> {
+                    if(method.getName().equals("getColumnCount")){
+                        return labels.length;
+                    }
+                    return labels[(int) args[0] - 1];
+                });
+
+        return (ResultSet) Proxy.newProxyInstance(
+                RowMappersTest.class.getClassLoader(), new Class<?>[]{ ResultSet.class },
+                (proxy, method, args) -> {
+                    if(method.getName().equals("getMetaData")){
+                        return metaData;
+                    }
+                    Object value = values[(int) args[0] - 1];
+                    switch(method.getName()){
+                        case "getInt": return ((Number) value).intValue();
+                        case "getDouble": return ((Number) value).doubleValue();
+                        case "getFloat": return ((Number) value).floatValue();
+                        default: return value;
+                    }
+                });
+    }
+
+    @Test
+    public void mapperIsGeneratedForPublicEntity()
+    {
+        assertTrue(RowMappers.isGenerated(EntityMetadataTest.Module.class));
+    }
+
+    @Test
+    public void columnsAreMatchedByLabel() throws Exception
+    {
+        ResultSet resultset = resultSet();
+        RowMapper<EntityMetadataTest.Module> mapper = RowMappers.forResultSet(EntityMetadataTest.Module.class, resultset);
+
+        EntityMetadataTest.Module module = mapper.mapRow(resultset);
+
+        assertEquals(7, module.getId());
+        assertEquals("java", module.getTitle());
+        assertEquals(9.5, module.getPrice(), 0.0);
+        assertTrue(module.isCore());
+    }
+}
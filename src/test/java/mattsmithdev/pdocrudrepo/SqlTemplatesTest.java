@@ -0,0 +1,27 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class SqlTemplatesTest
+{
+    @Test
+    public void templatesUsePlaceholders()
+    {
+        SqlTemplates templates = new SqlTemplates("module", EntityMetadata.of(EntityMetadataTest.Module.class));
+
+        assertEquals("SELECT * from module WHERE id = ?", templates.getFind());
+        assertEquals("INSERT into module (title, price, core) VALUES (?, ?, ?)", templates.getInsert());
+        assertEquals("UPDATE module SET title = ?, price = ?, core = ? WHERE id = ?", templates.getUpdate());
+        assertEquals("INSERT into module (id, title, price, core) VALUES (?, ?, ?, ?), (?, ?, ?, ?)"
+                + " ON DUPLICATE KEY UPDATE title = VALUES(title), price = VALUES(price), core = VALUES(core)",
+                templates.getUpsert(2));
+
+        BitSet priceOnly = new BitSet();
+        priceOnly.set(EntityMetadata.of(EntityMetadataTest.Module.class).getColumn("price").getIndex());
+        assertEquals("UPDATE module SET price = ? WHERE id = ?", templates.getUpdate(priceOnly));
+    }
+}
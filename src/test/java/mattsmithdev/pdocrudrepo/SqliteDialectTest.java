@@ -0,0 +1,186 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * repositories against an embedded SQLite file - no server needed
+ */
+public class SqliteDialectTest
+{
+    public static class Note
+    {
+        private int id;
+        @Column(length = 20, unique = true)
+        private String code;
+        @Column(index = true)
+        private String title;
+        private BigDecimal price;
+        private LocalDate due;
+        private LocalDateTime created;
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getCode() { return code; }
+        public void setCode(String code) { this.code = code; }
+        public String getTitle() { return title; }
+        public void setTitle(String title) { this.title = title; }
+        public BigDecimal getPrice() { return price; }
+        public void setPrice(BigDecimal price) { this.price = price; }
+        public LocalDate getDue() { return due; }
+        public void setDue(LocalDate due) { this.due = due; }
+        public LocalDateTime getCreated() { return created; }
+        public void setCreated(LocalDateTime created) { this.created = created; }
+    }
+
+    public static class NoteRepository extends DatabaseTableRepository
+    {
+    }
+
+    private File file;
+    private NoteRepository repo;
+
+    @Before
+    public void openDatabase() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+
+        this.repo = new NoteRepository();
+        this.repo.createTable();
+    }
+
+    @After
+    public void closeDatabase()
+    {
+        DatabaseManager.configure(null);
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+    }
+
+    private static Note note(String code, String title, String price)
+    {
+        Note note = new Note();
+        note.setCode(code);
+        note.setTitle(title);
+        note.setPrice(new BigDecimal(price));
+        note.setDue(LocalDate.of(2024, 2, 29));
+        note.setCreated(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123456000));
+        return note;
+    }
+
+    @Test
+    public void crudRoundTrip() throws Exception
+    {
+        Note[] notes = { note("A1", "alpha", "9.99"), note("B2", "beta", "20.5"), note("C3", "gamma", "1") };
+        boolean[] inserted = this.repo.insertMany(notes);
+        assertTrue(inserted[0] && inserted[1] && inserted[2]);
+        assertEquals(Arrays.asList(1, 2, 3), Arrays.asList(notes[0].getId(), notes[1].getId(), notes[2].getId()));
+
+        Note found = this.repo.find(Note.class, 2);
+        assertEquals("beta", found.getTitle());
+        assertEquals(0, new BigDecimal("20.5").compareTo(found.getPrice()));
+        assertEquals(LocalDate.of(2024, 2, 29), found.getDue());
+        assertEquals(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123456000), found.getCreated());
+
+        found.setTitle("beta 2");
+        this.repo.update(found);
+        notes[2].setTitle("gamma 2");
+        Note added = note("D4", "delta", "4");
+        assertEquals(2, this.repo.saveAll(new Note[]{ notes[2], added }));
+        assertEquals(4, added.getId());
+
+        List<Note> cheap = this.repo.query(Note.class).where("price", Operator.LT, 10).orderBy("id").limit(2).list();
+        assertEquals(2, cheap.size());
+        assertEquals("alpha", cheap.get(0).getTitle());
+        assertEquals("gamma 2", cheap.get(1).getTitle());
+        List<Note> skipped = this.repo.query(Note.class).orderBy("id").offset(2).list();
+        assertEquals(Arrays.asList("gamma 2", "delta"), Arrays.asList(skipped.get(0).getTitle(), skipped.get(1).getTitle()));
+        assertEquals(2, skipped.size());
+
+        Page<Note> page = this.repo.findPage(Note.class, 1, 2);
+        assertEquals(2, page.size());
+        assertTrue(page.hasMore());
+
+        this.repo.delete(1);
+        assertEquals(3, this.repo.findAll(Note.class).length);
+        this.repo.deleteAll();
+        assertEquals(0, this.repo.findAll(Note.class).length);
+    }
+
+    @Test
+    public void uniqueIndexViolationIsAConstraintViolation() throws Exception
+    {
+        this.repo.insert(note("A1", "alpha", "1"));
+        try {
+            this.repo.insert(note("A1", "again", "2"));
+            fail("duplicate code inserted");
+        } catch (ConstraintViolationException e) {
+            assertTrue(e.getMessage().contains("UNIQUE"));
+        }
+    }
+
+    @Test
+    public void indexesAreCreatedOnce() throws Exception
+    {
+        assertTrue(this.repo.ensureIndexes().isEmpty());
+
+        this.repo.addIndex("idx_due", false, "due");
+        assertEquals(Arrays.asList("idx_due"), this.repo.ensureIndexes());
+        assertTrue(this.repo.ensureIndexes().isEmpty());
+    }
+
+    @Test
+    public void replicasAreRejected() throws Exception
+    {
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        config.setReplicas(Arrays.asList("127.0.0.1:3307"));
+        DatabaseManager.configure(config);
+
+        for(int attempt = 0; attempt < 2; attempt++){
+            try {
+                DatabaseManager.getConnection(true).close();
+                fail("SQLite config with replicas accepted");
+            } catch (UnsupportedOperationException e) {
+                assertTrue(e.getMessage().contains("no read replicas"));
+            }
+        }
+    }
+
+    @Test
+    public void reconfiguringRebuildsTheSql() throws Exception
+    {
+        Note existing = note("A1", "alpha", "1");
+        this.repo.insert(existing);
+
+        // (no connection is needed to build the SQL)
+        DatabaseManager.configure(new DatabaseConfig());
+        assertTrue(this.repo.sqlTemplates(Note.class).getUpsert(1).contains("ON DUPLICATE KEY UPDATE"));
+
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+        assertTrue(this.repo.sqlTemplates(Note.class).getUpsert(1).contains("ON CONFLICT(id)"));
+
+        existing.setTitle("alpha 2");
+        assertEquals(2, this.repo.saveAll(new Note[]{ existing, note("B2", "beta", "2") }));
+        assertEquals("alpha 2", this.repo.find(Note.class, existing.getId()).getTitle());
+    }
+}
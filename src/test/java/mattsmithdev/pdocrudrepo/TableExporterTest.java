@@ -0,0 +1,164 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * exportTo() from an embedded SQLite file
+ */
+public class TableExporterTest
+{
+    public static class Item
+    {
+        private int id;
+        private String title;
+        private Integer count;
+        private UUID uuid;
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getTitle() { return title; }
+        public void setTitle(String title) { this.title = title; }
+        public Integer getCount() { return count; }
+        public void setCount(Integer count) { this.count = count; }
+        public UUID getUuid() { return uuid; }
+        public void setUuid(UUID uuid) { this.uuid = uuid; }
+    }
+
+    public static class ItemRepository extends DatabaseTableRepository
+    {
+    }
+
+    private File file;
+    private File export;
+    private ItemRepository repo;
+
+    @Before
+    public void openDatabase() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        this.export = File.createTempFile("pdocrudrepo", ".export");
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+
+        this.repo = new ItemRepository();
+        this.repo.createTable();
+
+        Item quoted = new Item();
+        quoted.setTitle("say \"hi\", then\nleave");
+        quoted.setCount(3);
+        quoted.setUuid(new UUID(1, 2));
+        this.repo.insert(quoted);
+        this.repo.insert(new Item());
+    }
+
+    @After
+    public void closeDatabase()
+    {
+        DatabaseManager.configure(null);
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+        this.export.delete();
+    }
+
+    private String exported(ExportFormat format)
+    {
+        assertEquals(2, this.repo.exportTo(this.export.toPath(), format));
+        try {
+            return new String(Files.readAllBytes(this.export.toPath()), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void csv()
+    {
+        assertEquals("id,title,count,uuid\n"
+                + "1,\"say \"\"hi\"\", then\nleave\",3,00000000000000010000000000000002\n"
+                + "2,,,\n", this.exported(ExportFormat.CSV));
+    }
+
+    @Test
+    public void jsonLines()
+    {
+        assertEquals("{\"id\":1,\"title\":\"say \\\"hi\\\", then\\nleave\",\"count\":3,\"uuid\":\"00000000000000010000000000000002\"}\n"
+                + "{\"id\":2,\"title\":null,\"count\":null,\"uuid\":null}\n", this.exported(ExportFormat.JSON_LINES));
+    }
+
+    @Test
+    public void binary() throws Exception
+    {
+        this.exported(ExportFormat.BINARY);
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(this.export.toPath()))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            assertEquals("PDOX", new String(magic, StandardCharsets.US_ASCII));
+            assertEquals(1, in.readByte());
+            assertEquals(4, in.readInt());
+            for(String name : new String[]{ "id", "title", "count", "uuid" }){
+                byte[] bytes = new byte[in.readShort()];
+                in.readFully(bytes);
+                assertEquals(name, new String(bytes, StandardCharsets.UTF_8));
+                in.readInt();
+            }
+
+            byte[] id = new byte[in.readInt()];
+            in.readFully(id);
+            assertEquals("1", new String(id, StandardCharsets.UTF_8));
+            in.skipBytes(in.readInt());
+            in.skipBytes(in.readInt());
+            assertEquals(16, in.readInt());
+        }
+    }
+
+    @Test
+    public void reencodedTextIsWrittenTheSame() throws Exception
+    {
+        StringBuilder title = new StringBuilder("caf\u00e9, \"cr\u00e8me\"\n");
+        for(int i = 0; i < 2000; i++){
+            title.append('\u00e9');
+        }
+        Item item = new Item();
+        item.setTitle(title.toString());
+        this.repo.insert(item);
+
+        for(ExportFormat format : ExportFormat.values()){
+            this.repo.exportTo(this.export.toPath(), format);
+            byte[] expected = Files.readAllBytes(this.export.toPath());
+
+            // (SQLite gives UTF-8 already - so re-encoding the title column must change nothing)
+            try (Connection connection = DatabaseManager.getConnection(true);
+                 Statement statement = connection.createStatement();
+                 ResultSet resultset = statement.executeQuery("SELECT * from item");
+                 FileChannel channel = FileChannel.open(this.export.toPath(), StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                TableExporter exporter = new TableExporter(channel, format, resultset.getMetaData(), new boolean[]{ false, true, false, false });
+                while(resultset.next()){
+                    exporter.writeRow(resultset);
+                }
+                exporter.finish();
+            }
+
+            assertTrue(format.name(), Arrays.equals(expected, Files.readAllBytes(this.export.toPath())));
+        }
+    }
+}
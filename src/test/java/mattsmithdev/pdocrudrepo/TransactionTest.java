@@ -0,0 +1,234 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * DatabaseManager.inTransaction(), against an embedded SQLite file
+ */
+public class TransactionTest
+{
+    public static class Item
+    {
+        private int id;
+        @Column(unique = true, length = 20)
+        private String code;
+        private int stock;
+
+        public Item() { }
+
+        public Item(String code, int stock)
+        {
+            this.code = code;
+            this.stock = stock;
+        }
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public String getCode() { return code; }
+        public void setCode(String code) { this.code = code; }
+        public int getStock() { return stock; }
+        public void setStock(int stock) { this.stock = stock; }
+    }
+
+    public static class ItemRepository extends DatabaseTableRepository
+    {
+    }
+
+    private File file;
+    private ItemRepository repo;
+
+    @Before
+    public void openDatabase() throws Exception
+    {
+        this.file = File.createTempFile("pdocrudrepo", ".db");
+        DatabaseConfig config = new DatabaseConfig();
+        config.setDialect(Dialect.SQLITE);
+        config.setSqliteFile(this.file.getPath());
+        DatabaseManager.configure(config);
+
+        this.repo = new ItemRepository();
+        this.repo.createTable();
+    }
+
+    @After
+    public void closeDatabase()
+    {
+        DatabaseManager.setInstrumentation(null);
+        DatabaseManager.configure(null);
+        for(String suffix : new String[]{ "", "-wal", "-shm" }){
+            new File(this.file.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void workIsCommittedTogether() throws Exception
+    {
+        DatabaseManager.inTransaction(tx -> {
+            this.repo.insert(new Item("a", 1));
+            this.repo.insert(new Item("b", 2));
+            assertSame(tx, DatabaseManager.currentTransaction());
+        });
+
+        assertNull(DatabaseManager.currentTransaction());
+        assertEquals(2, this.repo.count());
+        assertEquals(0, DatabaseManager.getPool(true).getActiveConnections());
+    }
+
+    @Test
+    public void exceptionRollsBackAndIsRethrown() throws Exception
+    {
+        IllegalStateException thrown = new IllegalStateException("stop");
+        try {
+            DatabaseManager.inTransaction(tx -> {
+                this.repo.insert(new Item("a", 1));
+                throw thrown;
+            });
+            fail("exception swallowed");
+        } catch (IllegalStateException e) {
+            assertSame(thrown, e);
+        }
+        assertEquals(0, this.repo.count());
+
+        // a checked exception comes back as an SQLException
+        try {
+            DatabaseManager.inTransaction(tx -> {
+                this.repo.insert(new Item("a", 1));
+                throw new IOException("disk full");
+            });
+            fail("exception swallowed");
+        } catch (SQLException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(0, this.repo.count());
+        assertNull(DatabaseManager.currentTransaction());
+    }
+
+    @Test
+    public void failedStatementMakesTheTransactionRollbackOnly() throws Exception
+    {
+        try {
+            DatabaseManager.inTransaction(tx -> {
+                this.repo.insert(new Item("a", 1));
+                try {
+                    this.repo.insert(new Item("a", 2));
+                    fail("duplicate code inserted");
+                } catch (ConstraintViolationException e) {
+                    // carry on regardless
+                }
+                assertTrue(tx.isRollbackOnly());
+                this.repo.insert(new Item("b", 3));
+            });
+            fail("transaction with a failed statement committed");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage().startsWith("transaction rolled back - a statement failed"));
+        }
+
+        assertEquals(0, this.repo.count());
+    }
+
+    @Test
+    public void nestedTransactionJoinsTheOuterOne() throws Exception
+    {
+        try {
+            DatabaseManager.inTransaction(outer -> {
+                DatabaseManager.inTransaction(inner -> {
+                    assertSame(outer, inner);
+                    this.repo.insert(new Item("a", 1));
+                });
+                // the inner one's work isn't committed on its own
+                assertEquals(1, this.repo.count());
+                throw new IllegalStateException("stop");
+            });
+            fail("exception swallowed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, this.repo.count());
+
+        // an exception the outer body catches from a nested one still rolls back everything
+        try {
+            DatabaseManager.inTransaction(outer -> {
+                this.repo.insert(new Item("a", 1));
+                try {
+                    DatabaseManager.inTransaction(inner -> {
+                        throw new IllegalStateException("inner");
+                    });
+                } catch (IllegalStateException e) {
+                    // carry on regardless
+                }
+            });
+            fail("transaction with a failed nested transaction committed");
+        } catch (SQLException e) {
+            assertEquals("transaction rolled back", e.getMessage());
+        }
+        assertEquals(0, this.repo.count());
+    }
+
+    @Test
+    public void writeBehindSendsQueuedWritesAsBatchesAtCommit() throws Exception
+    {
+        Item[] items = { new Item("a", 1), new Item("b", 2), new Item("c", 3) };
+        this.repo.insertMany(items);
+        InMemoryInstrumentation metrics = new InMemoryInstrumentation();
+        DatabaseManager.setInstrumentation(metrics);
+
+        DatabaseManager.inTransaction(tx -> {
+            tx.setWriteBehind(true);
+            items[0].setStock(10);
+            items[1].setStock(20);
+            this.repo.update(items[0]);
+            this.repo.update(items[1]);
+            this.repo.update(items[0]);
+            this.repo.delete(items[2].getId());
+
+            // nothing sent yet
+            try (Statement statement = tx.getConnection().createStatement();
+                 ResultSet resultset = statement.executeQuery("SELECT SUM(stock), COUNT(*) FROM item")) {
+                resultset.next();
+                assertEquals(6, resultset.getInt(1));
+                assertEquals(3, resultset.getInt(2));
+            }
+        });
+
+        assertEquals(1, metrics.getMetrics("item", "updateMany").getCount());
+        assertEquals(1, metrics.getMetrics("item", "deleteMany").getCount());
+        assertNull(metrics.getMetrics("item", "update"));
+        assertNull(metrics.getMetrics("item", "delete"));
+
+        assertEquals(10, this.repo.find(Item.class, items[0].getId()).getStock());
+        assertEquals(20, this.repo.find(Item.class, items[1].getId()).getStock());
+        assertFalse(this.repo.exists(items[2].getId()));
+    }
+
+    @Test
+    public void failedFlushRollsBackEverything() throws Exception
+    {
+        Item[] items = { new Item("a", 1), new Item("b", 2) };
+        this.repo.insertMany(items);
+
+        try {
+            DatabaseManager.inTransaction(tx -> {
+                tx.setWriteBehind(true);
+                this.repo.insert(new Item("c", 3));
+                items[1].setCode("a");
+                this.repo.update(items[1]);
+            });
+            fail("duplicate code committed");
+        } catch (ConstraintViolationException e) {
+            // expected
+        }
+
+        assertEquals(2, this.repo.count());
+        assertEquals("b", this.repo.find(Item.class, items[1].getId()).getCode());
+    }
+}
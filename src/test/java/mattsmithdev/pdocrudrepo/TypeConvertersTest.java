@@ -0,0 +1,97 @@
+package mattsmithdev.pdocrudrepo;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TypeConvertersTest
+{
+    public enum Level { BEGINNER, ADVANCED }
+
+    @Test
+    public void sqlTypesAreCompact()
+    {
+        DatabaseUtility dbUtility = new DatabaseUtility();
+
+        assertEquals("double", dbUtility.dbDataType(double.class));
+        assertEquals("bigint", dbUtility.dbDataType(Long.class));
+        assertEquals("decimal(19,4)", dbUtility.dbDataType(BigDecimal.class));
+        assertEquals("date", dbUtility.dbDataType(LocalDate.class));
+        assertEquals("binary(16)", dbUtility.dbDataType(UUID.class));
+        assertEquals("enum('BEGINNER', 'ADVANCED')", dbUtility.dbDataType(Level.class));
+        assertEquals("tinyint", TypeConverters.enumOrdinal(Level.class).getSqlType());
+        assertEquals("text", dbUtility.dbDataType(Object.class));
+    }
+
+    @Test
+    public void uuidRoundTripsAsSixteenBytes() throws Exception
+    {
+        final Map<Integer, Object> bound = new HashMap<>();
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ PreparedStatement.class },
+                (proxy, method, args) -> bound.put((Integer) args[0], args[1]));
+        ResultSet resultset = (ResultSet) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ ResultSet.class },
+                (proxy, method, args) -> bound.get(args[0]));
+
+        UUID uuid = UUID.randomUUID();
+        TypeConverter<UUID> converter = TypeConverters.forType(UUID.class);
+        converter.bind(statement, 1, uuid);
+
+        assertEquals(16, ((byte[]) bound.get(1)).length);
+        assertEquals(uuid, converter.read(resultset, 1));
+    }
+
+    @Test
+    public void instantIsStoredAsUtcWhateverTheDefaultZone() throws Exception
+    {
+        final Map<Integer, Object> bound = new HashMap<>();
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ PreparedStatement.class },
+                (proxy, method, args) -> bound.put((Integer) args[0], args[1]));
+        ResultSet resultset = (ResultSet) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ ResultSet.class },
+                (proxy, method, args) -> bound.get(args[0]));
+        TypeConverter<Instant> converter = TypeConverters.forType(Instant.class);
+
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/London"));
+        try {
+            // both 01:30 in London - the hour repeated when the clocks go back
+            Instant beforeClocksGoBack = Instant.parse("2024-10-27T00:30:00Z");
+            Instant afterClocksGoBack = Instant.parse("2024-10-27T01:30:00.123456Z");
+            // 01:30 local doesn't exist - the clocks go forward from 01:00 to 02:00
+            Instant clocksGoForward = Instant.parse("2024-03-31T01:30:00Z");
+
+            converter.bind(statement, 1, beforeClocksGoBack);
+            converter.bind(statement, 2, afterClocksGoBack);
+            converter.bind(statement, 3, clocksGoForward);
+            assertEquals("2024-10-27 00:30:00", bound.get(1));
+            assertEquals("2024-10-27 01:30:00.123456", bound.get(2));
+
+            assertEquals(beforeClocksGoBack, converter.read(resultset, 1));
+            assertEquals(afterClocksGoBack, converter.read(resultset, 2));
+            assertEquals(clocksGoForward, converter.read(resultset, 3));
+
+            // read back the same in another zone
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            assertEquals(afterClocksGoBack, converter.read(resultset, 2));
+
+            bound.put(4, "2024-10-27T01:30:00");
+            assertEquals(Instant.parse("2024-10-27T01:30:00Z"), converter.read(resultset, 4));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+}